@@ -0,0 +1,99 @@
+#!/usr/bin/env bash
+#
+# Write throughput of a partitioned deployment against the number of instances. For each count in
+# INSTANCES, that many instances are started on localhost, each with its own in-memory database and
+# the same member list, seeded with CUSTOMERS customers through one of them, and driven by LoadTest
+# with saves only. Each count is measured once per route in ROUTES:
+#
+#   owner  every save is sent straight to the instance owning the customer
+#   any    saves are spread over the instances round-robin, which forward most of them to the owner
+#
+#   ./partition-benchmark.sh
+#   INSTANCES="1 2 4 8" ROUTES=owner DURATION=60s CONCURRENCY=64 ./partition-benchmark.sh
+#
+# Reports go to target/partition-benchmark, one LoadTest report per run, with the achieved rate and
+# the latency percentiles. The instances and the driver share this machine: for throughput to scale
+# with the instance count it needs at least as many free cores as instances, plus the driver's.
+set -euo pipefail
+
+cd "$(dirname "$0")"
+
+INSTANCES=${INSTANCES:-1 2 4}
+ROUTES=${ROUTES:-owner any}
+DURATION=${DURATION:-30s}
+WARMUP=${WARMUP:-10s}
+CONCURRENCY=${CONCURRENCY:-32}
+CUSTOMERS=${CUSTOMERS:-100000}
+BASE_PORT=${BASE_PORT:-8100}
+JAVA_OPTS=${JAVA_OPTS:--Xmx512m}
+MVN=${MVN:-mvn}
+JAVA=${JAVA:-java}
+OUT=target/partition-benchmark
+JAR=target/demo-0.0.1-SNAPSHOT.jar
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+
+echo "Building the jar"
+$MVN -B -q -DskipTests package > "$OUT/build.log"
+
+PIDS=()
+
+stop_instances() {
+  for pid in "${PIDS[@]}"; do
+    kill "$pid" 2> /dev/null || true
+  done
+  for pid in "${PIDS[@]}"; do
+    wait "$pid" 2> /dev/null || true
+  done
+  PIDS=()
+}
+trap stop_instances EXIT
+
+# Start $1 partitioned instances and wait until every one answers
+start_instances() {
+  local count=$1
+  local members=()
+  for i in $(seq 0 $(( count - 1 ))); do
+    members+=("http://localhost:$(( BASE_PORT + i ))")
+  done
+  MEMBERS=$(IFS=,; echo "${members[*]}")
+
+  for i in $(seq 0 $(( count - 1 ))); do
+    # shellcheck disable=SC2086
+    $JAVA $JAVA_OPTS -jar "$JAR" --server.port=$(( BASE_PORT + i )) \
+      --customer.import.on-startup=false \
+      --customer.partition.enabled=true \
+      --customer.partition.self="${members[$i]}" \
+      --customer.partition.members="$MEMBERS" \
+      --logging.level.root=WARN > "$OUT/instance-$count-$i.log" 2>&1 &
+    PIDS+=($!)
+  done
+  for member in "${members[@]}"; do
+    until curl -s -o /dev/null "$member/api/customers/partition-benchmark-probe"; do
+      sleep 0.5
+    done
+  done
+}
+
+for count in $INSTANCES; do
+  for route in $ROUTES; do
+    # Every run starts from fresh databases
+    echo "$count instance(s), route $route"
+    start_instances "$count"
+    report="$OUT/instances-$count-$route.json"
+    $MVN -B -q -Pload-test verify -Dloadtest.args="--target=$MEMBERS --route=$route --model=closed \
+--concurrency=$CONCURRENCY --duration=$DURATION --warmup=$WARMUP --read-ratio=0 --customers=$CUSTOMERS \
+--report=$report" | tee "$OUT/instances-$count-$route.txt" | grep -E "Achieved|writes"
+    stop_instances
+  done
+done
+
+echo
+echo "Saves per second:"
+for count in $INSTANCES; do
+  for route in $ROUTES; do
+    rate=$(sed -n 's/.*"achievedRate" : \([0-9.]*\).*/\1/p' "$OUT/instances-$count-$route.json")
+    printf '%2d instance(s), route %-5s %10.1f\n' "$count" "$route" "$rate"
+  done
+done
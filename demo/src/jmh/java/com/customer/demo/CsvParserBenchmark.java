@@ -0,0 +1,138 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+
+// Parsing a whole customer CSV file: opencsv's CSVReader, as the import parsed before, against the
+// memory-mapped CustomerCsvReader on one thread and on line-aligned chunks in parallel. The bytes
+// counter gives the rate in bytes per second; divide by 1e9 for GB/s. The file is generated once
+// and stays in the page cache, so this measures parsing rather than the disk.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CsvParserBenchmark {
+
+	// Size of the generated file in MB
+	@Param("128")
+	private int megabytes;
+
+	private Path file;
+	private long size;
+	private ExecutorService parsers;
+	private int threads;
+
+	// Bytes parsed, reported by JMH as a rate alongside the operations
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Parsed {
+		public long bytes;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = Files.createTempFile("customers", ".csv");
+		StringBuilder rows = new StringBuilder();
+		long target = megabytes * (1L << 20);
+		try (var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 1; size < target; i++) {
+				rows.setLength(0);
+				rows.append(i).append(",Name ").append(i);
+				// Some rows quote a field holding a comma, as exported names often are
+				if (i % 10 == 0) {
+					rows.append(",\"Flat ").append(i % 40).append(", ").append(i % 300).append(" High Street\"");
+				} else {
+					rows.append(',').append(i % 300).append(" High Street");
+				}
+				rows.append(",Spital,Chesterfield,Derbyshire,England,S41 ").append(i % 10).append("HJ\n");
+				writer.append(rows);
+				size += rows.length();
+			}
+		}
+		threads = Runtime.getRuntime().availableProcessors();
+		parsers = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		parsers.shutdownNow();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long openCsvReader(Parsed parsed) throws IOException, CsvValidationException {
+		long records = 0;
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+				CSVReader csvReader = new CSVReader(reader)) {
+			while (csvReader.readNext() != null) {
+				records++;
+			}
+		}
+		parsed.bytes += size;
+		return records;
+	}
+
+	@Benchmark
+	public long mappedReader(Parsed parsed) throws IOException {
+		long records = count(0, Long.MAX_VALUE);
+		parsed.bytes += size;
+		return records;
+	}
+
+	@Benchmark
+	public long mappedChunksInParallel(Parsed parsed) throws Exception {
+		List<Long> starts = CustomerCsvReader.split(file, 0, 4L << 20);
+		List<Future<Long>> chunks = new ArrayList<>();
+		for (int i = 0; i < starts.size(); i++) {
+			long start = starts.get(i);
+			long end = i + 1 < starts.size() ? starts.get(i + 1) : Long.MAX_VALUE;
+			chunks.add(parsers.submit(() -> count(start, end)));
+		}
+		long records = 0;
+		for (Future<Long> chunk : chunks) {
+			records += chunk.get();
+		}
+		parsed.bytes += size;
+		return records;
+	}
+
+	private long count(long start, long end) throws IOException {
+		long records = 0;
+		try (CustomerCsvReader reader = new CustomerCsvReader(file, start, 0, end, Long.MAX_VALUE, 8)) {
+			while (reader.next() != null) {
+				records++;
+			}
+		}
+		return records;
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencsv.CSVParser;
+
+// Per-row costs of the mapping, JSON and CSV code that every request and imported row goes through.
+// Run with -prof gc to see the allocation per operation alongside the time. The *Baseline methods
+// keep the earlier builder mapping for comparison.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerMappingBenchmark {
+
+	// A typical row of customertest.csv
+	private static final String CSV_LINE =
+			"1042,\"Carver, Carl\",12 High Street,Flat 3,Chesterfield,Derbyshire,United Kingdom,s41 0hj";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final CSVParser csvParser = new CSVParser();
+
+	private CustomerDTO customerDTO;
+	private Customer customer;
+	private byte[] customerJson;
+
+	@Setup
+	public void setUp() throws IOException {
+		customerDTO = CustomerDTO.builder()
+				.customerRef("1042")
+				.customerName("Carl Carver")
+				.addressLine1("12 High Street")
+				.addressLine2("Flat 3")
+				.town("Chesterfield")
+				.county("Derbyshire")
+				.country("United Kingdom")
+				.postcode("S410HJ")
+				.build();
+		customer = CustomerMapper.toEntity(customerDTO);
+		customerJson = objectMapper.writeValueAsBytes(customerDTO);
+	}
+
+	@Benchmark
+	public Customer toEntity() {
+		return CustomerMapper.toEntity(customerDTO);
+	}
+
+	@Benchmark
+	public CustomerDTO toDto() {
+		return CustomerMapper.toDto(customer);
+	}
+
+	@Benchmark
+	public Customer toEntityBaseline() {
+		return Customer.builder()
+				.customerRef(customerDTO.getCustomerRef())
+				.customerName(CustomerMapper.trim(customerDTO.getCustomerName()))
+				.addressLine1(customerDTO.getAddressLine1())
+				.addressLine2(customerDTO.getAddressLine2())
+				.town(CustomerMapper.trim(customerDTO.getTown()))
+				.county(customerDTO.getCounty())
+				.country(customerDTO.getCountry())
+				.postcode(normalizePostcodeBaseline(customerDTO.getPostcode()))
+				.build();
+	}
+
+	@Benchmark
+	public CustomerDTO toDtoBaseline() {
+		return CustomerDTO.builder()
+				.customerRef(customer.getCustomerRef())
+				.customerName(customer.getCustomerName())
+				.addressLine1(customer.getAddressLine1())
+				.addressLine2(customer.getAddressLine2())
+				.town(customer.getTown())
+				.county(customer.getCounty())
+				.country(customer.getCountry())
+				.postcode(customer.getPostcode())
+				.build();
+	}
+
+	@Benchmark
+	public byte[] serializeJson() throws IOException {
+		return objectMapper.writeValueAsBytes(customerDTO);
+	}
+
+	@Benchmark
+	public CustomerDTO deserializeJson() throws IOException {
+		return objectMapper.readValue(customerJson, CustomerDTO.class);
+	}
+
+	// Parse one line and map it to an entity, as the import does for each row
+	@Benchmark
+	public Customer parseCsvRow() throws IOException {
+		return CustomerMapper.fromCsvRow(csvParser.parseLine(CSV_LINE));
+	}
+
+	// The postcode normalization before it returned normalized postcodes as they are
+	private static String normalizePostcodeBaseline(String postcode) {
+		StringBuilder normalized = new StringBuilder(postcode.length());
+		for (int i = 0; i < postcode.length(); i++) {
+			char c = postcode.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				normalized.append(Character.toUpperCase(c));
+			}
+		}
+		return normalized.toString();
+	}
+
+}
@@ -0,0 +1,120 @@
+package com.customer.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+// Searches through CustomerService against the in-memory H2 database at several table sizes. The
+// customers come in groups of MATCHES sharing a town, a postcode prefix and a name prefix, so every
+// search matches the same number of rows whatever the size of the table, and fills its page, which
+// also sends the count query. With the indexes answering both statements, the latency should stay
+// about the same from the smallest table to the largest.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CustomerSearchBenchmark {
+
+	private static final int MATCHES = 20;
+
+	@Param({ "10000", "100000", "1000000" })
+	private int customers;
+
+	private ConfigurableApplicationContext context;
+	private CustomerService customerService;
+	private int groups;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(DemoApplication.class)
+				.web(WebApplicationType.NONE)
+				.logStartupInfo(false)
+				.run("--customer.import.on-startup=false",
+						"--logging.level.root=WARN");
+		customerService = context.getBean(CustomerService.class);
+
+		CustomerBatchWriter writer = context.getBean(CustomerBatchWriter.class);
+		groups = customers / MATCHES;
+		List<Customer> batch = new ArrayList<>();
+		for (int i = 0; i < customers; i++) {
+			batch.add(customer(i));
+			if (batch.size() == 1000) {
+				writer.write(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			writer.write(batch);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public CustomerPageResponse searchByPostcode() {
+		return customerService.searchCustomers(postcodePrefix(randomGroup()), null, null, 0, MATCHES);
+	}
+
+	@Benchmark
+	public CustomerPageResponse searchByTown() {
+		return customerService.searchCustomers(null, town(randomGroup()), null, 0, MATCHES);
+	}
+
+	@Benchmark
+	public CustomerPageResponse searchByName() {
+		return customerService.searchCustomers(null, null, namePrefix(randomGroup()), 0, MATCHES);
+	}
+
+	private int randomGroup() {
+		return ThreadLocalRandom.current().nextInt(groups);
+	}
+
+	private static String postcodePrefix(int group) {
+		return String.format("P%06d", group);
+	}
+
+	private static String town(int group) {
+		return String.format("Town %06d", group);
+	}
+
+	private static String namePrefix(int group) {
+		return String.format("Customer %06d ", group);
+	}
+
+	private static Customer customer(int i) {
+		int group = i / MATCHES;
+		return Customer.builder()
+				.customerRef(String.valueOf(i))
+				.customerName(namePrefix(group) + i % MATCHES)
+				.addressLine1("12 High Street")
+				.town(town(group))
+				.county("Derbyshire")
+				.country("United Kingdom")
+				.postcode(postcodePrefix(group) + (char) ('A' + i % MATCHES))
+				.build();
+	}
+
+}
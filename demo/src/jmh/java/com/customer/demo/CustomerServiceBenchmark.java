@@ -0,0 +1,117 @@
+package com.customer.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+// Reads and writes through CustomerService against the in-memory H2 database, with and without the
+// customer cache, plus a read through CustomerController to show what the MVC layer and JSON
+// rendering add on top. The HTTP server itself is not involved.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+	@Param({ "10000" })
+	private int customers;
+
+	@Param({ "true", "false" })
+	private boolean cacheEnabled;
+
+	private ConfigurableApplicationContext context;
+	private CustomerService customerService;
+	private MockMvc mockMvc;
+	private String[] refs;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = new SpringApplicationBuilder(DemoApplication.class)
+				.web(WebApplicationType.NONE)
+				.logStartupInfo(false)
+				.run("--customer.import.on-startup=false",
+						"--customer.cache.enabled=" + cacheEnabled,
+						"--logging.level.root=WARN");
+		customerService = context.getBean(CustomerService.class);
+		mockMvc = MockMvcBuilders.standaloneSetup(context.getBean(CustomerController.class)).build();
+
+		CustomerBatchWriter writer = context.getBean(CustomerBatchWriter.class);
+		refs = new String[customers];
+		List<Customer> batch = new ArrayList<>();
+		for (int i = 0; i < customers; i++) {
+			refs[i] = String.valueOf(i);
+			batch.add(customer(refs[i], "Customer " + i));
+			if (batch.size() == 1000) {
+				writer.write(batch);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			writer.write(batch);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public CustomerDTO getCustomerDTOById() {
+		return customerService.getCustomerDTOById(randomRef());
+	}
+
+	// Update an existing customer, which also invalidates its cache entry
+	@Benchmark
+	public void saveCustomer() {
+		customerService.saveCustomer(CustomerMapper.toDto(customer(randomRef(), "Renamed " + System.nanoTime())));
+	}
+
+	@Benchmark
+	public String getCustomerViaController() throws Exception {
+		MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/api/customers/{customerRef}", randomRef()))
+				.andReturn();
+		return result.getResponse().getContentAsString();
+	}
+
+	private String randomRef() {
+		return refs[ThreadLocalRandom.current().nextInt(refs.length)];
+	}
+
+	private static Customer customer(String ref, String name) {
+		return Customer.builder()
+				.customerRef(ref)
+				.customerName(name)
+				.addressLine1("12 High Street")
+				.town("Chesterfield")
+				.county("Derbyshire")
+				.country("United Kingdom")
+				.postcode("S410HJ")
+				.build();
+	}
+
+}
@@ -0,0 +1,321 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+// Drives mixed read/write HTTP traffic at the customer API and records the latency distributions.
+//
+// In the open model requests are sent on a fixed schedule, whether or not earlier ones have
+// completed, and each response time is measured from when the request was due to be sent. A
+// stalled server therefore shows up as queueing delay in the percentiles instead of silently
+// lowering the send rate (coordinated omission). The service time, from when the request was
+// actually sent, is recorded as well.
+//
+// Without --target the application is started in this JVM with the embedded H2 database on a
+// random port, so the driver and the server share the machine; point --target at a separate
+// instance for numbers that exclude the driver, or at every instance of a partitioned deployment.
+// Their requests are then spread over the instances, or with --route=owner sent straight to the
+// owner of each customer on a PartitionRing of the targets.
+public class LoadTest {
+
+	// Requests are prepared up front and picked at random, to keep the driver's own cost low
+	private static final int PREPARED_REQUESTS = 4096;
+
+	// Latencies are recorded in microseconds, up to one minute, to three significant digits
+	private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final LoadTestOptions options;
+	private final HttpClient client;
+	private final OperationStats reads = new OperationStats();
+	private final OperationStats writes = new OperationStats();
+	private final AtomicLong inFlight = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+
+	private HttpRequest[] readRequests;
+	private HttpRequest[] writeRequests;
+
+	public LoadTest(LoadTestOptions options) {
+		this.options = options;
+		this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTestOptions options = LoadTestOptions.parse(args);
+
+		ConfigurableApplicationContext context = null;
+		List<String> targets = options.targets();
+		if (targets.isEmpty()) {
+			context = new SpringApplicationBuilder(DemoApplication.class)
+					.logStartupInfo(false)
+					.run("--server.port=0", "--customer.import.on-startup=false", "--logging.level.root=WARN",
+							"--spring.profiles.active=" + options.profiles());
+			targets = List.of("http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort());
+		}
+
+		try {
+			new LoadTest(options).run(targets);
+		} finally {
+			if (context != null) {
+				context.close();
+			}
+		}
+	}
+
+	public void run(List<String> targets) throws IOException, InterruptedException {
+		// A partitioned instance sends each seeded customer on to its owner
+		if (options.seed()) {
+			seed(targets.get(0));
+		}
+		prepareRequests(targets);
+
+		System.out.printf("Load test against %s: %s model, %s, %.0f%% reads, %s after %s warm-up%n",
+				targets.size() == 1 ? targets.get(0) : targets + " (route " + options.route() + ")",
+				options.model(), options.open() ? options.rate() + " req/s" : options.concurrency() + " connections",
+				options.readRatio() * 100, options.duration(), options.warmup());
+
+		long start = System.nanoTime();
+		long measureFrom = start + options.warmup().toNanos();
+		long end = measureFrom + options.duration().toNanos();
+		if (options.open()) {
+			runOpen(start, measureFrom, end);
+		} else {
+			runClosed(measureFrom, end);
+		}
+		awaitInFlight();
+
+		writeReport(Math.max(System.nanoTime(), end) - measureFrom);
+	}
+
+	// Insert the customers the reads and writes pick from, in one bulk request
+	private void seed(String baseUrl) throws IOException, InterruptedException {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < options.customers(); i++) {
+			body.append(customerJson(ref(i), "Customer " + i)).append('\n');
+		}
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/customers/bulk"))
+				.header("Content-Type", "application/x-ndjson")
+				.POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+				.build(), HttpResponse.BodyHandlers.ofString());
+		if (response.statusCode() != 200) {
+			throw new IllegalStateException("Seeding failed with " + response.statusCode() + ": " + response.body());
+		}
+		System.out.println("Seeded customers: " + response.body());
+	}
+
+	private void prepareRequests(List<String> targets) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		PartitionRing ring = new PartitionRing(targets, options.virtualNodes());
+		Function<String, String> targetFor = options.route().equals("owner") ? ring::ownerOf
+				: ref -> targets.get(random.nextInt(targets.size()));
+		readRequests = new HttpRequest[PREPARED_REQUESTS];
+		writeRequests = new HttpRequest[PREPARED_REQUESTS];
+		for (int i = 0; i < PREPARED_REQUESTS; i++) {
+			String readRef = ref(random.nextInt(options.customers()));
+			readRequests[i] = HttpRequest.newBuilder(URI.create(targetFor.apply(readRef) + "/api/customers/" + readRef))
+					.timeout(options.requestTimeout())
+					.GET()
+					.build();
+			String writeRef = ref(random.nextInt(options.customers()));
+			writeRequests[i] = HttpRequest.newBuilder(URI.create(targetFor.apply(writeRef) + "/api/customers/saveCustomer"))
+					.timeout(options.requestTimeout())
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(customerJson(writeRef, "Renamed " + i)))
+					.build();
+		}
+	}
+
+	// Send on a fixed schedule and measure each response from when it was due
+	private void runOpen(long start, long measureFrom, long end) {
+		long intervalNanos = Math.max(1, Math.round(1_000_000_000d / options.rate()));
+		for (long n = 0;; n++) {
+			long intended = start + n * intervalNanos;
+			if (intended >= end) {
+				break;
+			}
+			long wait = intended - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+
+			// Bound the backlog so an overloaded server cannot exhaust the driver's memory
+			if (inFlight.incrementAndGet() > options.maxInFlight()) {
+				inFlight.decrementAndGet();
+				if (intended >= measureFrom) {
+					dropped.increment();
+				}
+				continue;
+			}
+			send(intended, intended >= measureFrom);
+		}
+	}
+
+	// Keep a fixed number of requests in flight; each is measured from when it was actually sent
+	private void runClosed(long measureFrom, long end) throws InterruptedException {
+		Thread[] workers = new Thread[options.concurrency()];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(() -> {
+				while (System.nanoTime() < end) {
+					long sent = System.nanoTime();
+					inFlight.incrementAndGet();
+					// Errors are counted by send, so only wait for completion here
+					send(sent, sent >= measureFrom).handle((response, error) -> null).join();
+				}
+			}, "load-test-" + i);
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+	}
+
+	private CompletableFuture<?> send(long intended, boolean measured) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		boolean read = random.nextDouble() < options.readRatio();
+		OperationStats stats = read ? reads : writes;
+		HttpRequest request = (read ? readRequests : writeRequests)[random.nextInt(PREPARED_REQUESTS)];
+
+		long sent = System.nanoTime();
+		return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+				.whenComplete((response, error) -> {
+					long completed = System.nanoTime();
+					inFlight.decrementAndGet();
+					if (measured) {
+						stats.record(intended, sent, completed, error == null && response.statusCode() < 400);
+					}
+				});
+	}
+
+	private void awaitInFlight() {
+		long deadline = System.nanoTime() + options.requestTimeout().toNanos() * 2;
+		while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+	}
+
+	private void writeReport(long measuredNanos) throws IOException {
+		double seconds = measuredNanos / 1e9;
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("timestamp", Instant.now().toString());
+		report.put("options", options);
+		report.put("measuredSeconds", seconds);
+		report.put("achievedRate", (reads.count() + writes.count()) / seconds);
+		report.put("dropped", dropped.sum());
+		report.put("reads", reads.summary(seconds));
+		report.put("writes", writes.summary(seconds));
+
+		Path path = Path.of(options.report());
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		new ObjectMapper().findAndRegisterModules()
+				.disable(SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
+				.enable(SerializationFeature.INDENT_OUTPUT)
+				.writeValue(path.toFile(), report);
+
+		// Full distributions in HdrHistogram's percentile format, for plotting or comparing runs
+		String base = path.toString().replaceFirst("\\.json$", "");
+		writeDistribution(Path.of(base + "-reads.hgrm"), reads.responseTime);
+		writeDistribution(Path.of(base + "-writes.hgrm"), writes.responseTime);
+
+		System.out.printf("Achieved %.1f req/s, %d dropped%n", (reads.count() + writes.count()) / seconds, dropped.sum());
+		print("reads ", reads);
+		print("writes", writes);
+		System.out.println("Report written to " + path.toAbsolutePath());
+	}
+
+	private static void print(String name, OperationStats stats) {
+		Histogram histogram = stats.responseTime;
+		System.out.printf("%s: %d ok, %d errors, response time ms p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+				name, histogram.getTotalCount() - stats.errors.sum(), stats.errors.sum(),
+				millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+				millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+				millis(histogram.getMaxValue()));
+	}
+
+	private static void writeDistribution(Path path, Histogram histogram) throws IOException {
+		try (PrintStream out = new PrintStream(Files.newOutputStream(path))) {
+			histogram.outputPercentileDistribution(out, 1000.0);
+		}
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+
+	private static String ref(int i) {
+		return "LT" + i;
+	}
+
+	private static String customerJson(String ref, String name) {
+		return "{\"customerRef\":\"" + ref + "\",\"customerName\":\"" + name + "\",\"addressLine1\":\"12 High Street\","
+				+ "\"town\":\"Chesterfield\",\"county\":\"Derbyshire\",\"country\":\"United Kingdom\",\"postcode\":\"S41 0HJ\"}";
+	}
+
+	// Latencies of one kind of request
+	private static final class OperationStats {
+
+		private final Histogram responseTime = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+		private final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+		private final LongAdder errors = new LongAdder();
+
+		void record(long intended, long sent, long completed, boolean ok) {
+			responseTime.recordValue(Math.min(HIGHEST_LATENCY_MICROS, (completed - intended) / 1000));
+			serviceTime.recordValue(Math.min(HIGHEST_LATENCY_MICROS, (completed - sent) / 1000));
+			if (!ok) {
+				errors.increment();
+			}
+		}
+
+		long count() {
+			return responseTime.getTotalCount();
+		}
+
+		Map<String, Object> summary(double seconds) {
+			Map<String, Object> summary = new LinkedHashMap<>();
+			summary.put("count", count());
+			summary.put("errors", errors.sum());
+			summary.put("throughput", count() / seconds);
+			summary.put("responseTimeMillis", percentiles(responseTime));
+			summary.put("serviceTimeMillis", percentiles(serviceTime));
+			return summary;
+		}
+
+		private static Map<String, Double> percentiles(Histogram histogram) {
+			Map<String, Double> percentiles = new LinkedHashMap<>();
+			percentiles.put("mean", histogram.getMean() / 1000.0);
+			for (double percentile : new double[] { 50, 90, 99, 99.9, 99.99 }) {
+				percentiles.put("p" + (percentile == Math.floor(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile)),
+						millis(histogram.getValueAtPercentile(percentile)));
+			}
+			percentiles.put("max", millis(histogram.getMaxValue()));
+			return percentiles;
+		}
+	}
+
+}
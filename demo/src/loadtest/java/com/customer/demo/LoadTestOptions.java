@@ -0,0 +1,95 @@
+package com.customer.demo;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Command line options of LoadTest, given as --name=value
+public record LoadTestOptions(
+		// "open" sends at a fixed arrival rate whatever the response times; "closed" keeps a fixed
+		// number of requests in flight and is subject to coordinated omission
+		String model,
+		double rate,
+		int concurrency,
+		Duration duration,
+		Duration warmup,
+		double readRatio,
+		int customers,
+		int maxInFlight,
+		Duration requestTimeout,
+		// Base URL of a running instance, or a comma-separated list of partitioned instances; when empty
+		// the application is started in this JVM on a random port
+		String target,
+		// With several targets, "any" spreads requests over them round-robin and the instances forward
+		// them to the owners; "owner" sends each request straight to the owner of its customer
+		String route,
+		// Virtual nodes of the partition ring, as configured on the instances, for --route=owner
+		int virtualNodes,
+		boolean seed,
+		// Spring profiles to start the application with, such as "virtual"
+		String profiles,
+		String report) {
+
+	public static LoadTestOptions parse(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			if (!arg.startsWith("--") || !arg.contains("=")) {
+				throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+			}
+			int equals = arg.indexOf('=');
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+
+		LoadTestOptions parsed = new LoadTestOptions(
+				options.getOrDefault("model", "open"),
+				Double.parseDouble(options.getOrDefault("rate", "500")),
+				Integer.parseInt(options.getOrDefault("concurrency", "32")),
+				duration(options.getOrDefault("duration", "60s")),
+				duration(options.getOrDefault("warmup", "10s")),
+				Double.parseDouble(options.getOrDefault("read-ratio", "0.8")),
+				Integer.parseInt(options.getOrDefault("customers", "10000")),
+				Integer.parseInt(options.getOrDefault("max-in-flight", "10000")),
+				duration(options.getOrDefault("request-timeout", "10s")),
+				options.getOrDefault("target", ""),
+				options.getOrDefault("route", "any"),
+				Integer.parseInt(options.getOrDefault("virtual-nodes", "256")),
+				Boolean.parseBoolean(options.getOrDefault("seed", "true")),
+				options.getOrDefault("profiles", ""),
+				options.getOrDefault("report", "target/loadtest-report.json"));
+
+		if (!parsed.model.equals("open") && !parsed.model.equals("closed")) {
+			throw new IllegalArgumentException("--model must be open or closed");
+		}
+		if (!parsed.route.equals("any") && !parsed.route.equals("owner")) {
+			throw new IllegalArgumentException("--route must be any or owner");
+		}
+		if (parsed.readRatio < 0 || parsed.readRatio > 1) {
+			throw new IllegalArgumentException("--read-ratio must be between 0 and 1");
+		}
+		return parsed;
+	}
+
+	public boolean open() {
+		return model.equals("open");
+	}
+
+	public List<String> targets() {
+		return Arrays.stream(target.split(",")).map(String::trim).filter(url -> !url.isEmpty()).toList();
+	}
+
+	// Durations such as 500ms, 30s or 5m
+	private static Duration duration(String value) {
+		if (value.endsWith("ms")) {
+			return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+		}
+		long amount = Long.parseLong(value.substring(0, value.length() - 1));
+		return switch (value.charAt(value.length() - 1)) {
+			case 's' -> Duration.ofSeconds(amount);
+			case 'm' -> Duration.ofMinutes(amount);
+			default -> throw new IllegalArgumentException("Unsupported duration: " + value);
+		};
+	}
+
+}
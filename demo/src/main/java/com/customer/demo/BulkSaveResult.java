@@ -0,0 +1,31 @@
+package com.customer.demo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Counts reported back from a bulk write of customers
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkSaveResult {
+
+	private long inserted;
+	private long updated;
+	// Rows identical to the stored ones, which were skipped without a write
+	private long unchanged;
+	private long rejected;
+	// Rows overwritten by a later row with the same reference in the same chunk, and never written
+	private long superseded;
+
+	// Fold the counts of another result into this one
+	public BulkSaveResult add(BulkSaveResult other) {
+		inserted += other.inserted;
+		updated += other.updated;
+		unchanged += other.unchanged;
+		rejected += other.rejected;
+		superseded += other.superseded;
+		return this;
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.customer.demo;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class CacheStatsResponse {
+    private final boolean enabled;
+    private final long size;
+    private final long hitCount;
+    private final long missCount;
+    private final double hitRate;
+    private final long negativeHitCount;
+    private final long evictionCount;
+}
@@ -0,0 +1,301 @@
+package com.customer.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Parses CSV records straight from the bytes of a (memory-mapped) buffer, with the quoting rules of
+// opencsv's default CSVParser read through CSVReader: comma separator, double quote, backslash
+// escape, leading whitespace before a quote dropped, and \n, \r or \r\n ending a line. The special
+// characters are all ASCII, which never occurs inside a multi-byte UTF-8 sequence, so the bytes can
+// be scanned without decoding them, eight at a time: runs of ordinary bytes are skipped a long word
+// at a time with the SWAR (SIMD within a register) test for a zero byte. A String is only created
+// for each field that is kept, decoded from the field's bytes; there is no char[] of the whole line
+// and no line String.
+//
+// The rules, including opencsv's quirks, are those of CSVParser.parseLine in opencsv 5.9, and
+// CustomerCsvReaderTest compares the two on generated input. Positions in a line are counted in
+// UTF-16 chars as CSVParser counts them; invalid UTF-8 may be counted differently.
+public class CsvRecordParser {
+
+	public enum Status { RECORD, END_OF_INPUT, NEEDS_MORE_INPUT }
+
+	private static final byte SEPARATOR = ',';
+	private static final byte QUOTE = '"';
+	private static final byte ESCAPE = '\\';
+
+	// Position after which a quote in the middle of a field is kept, see CSVParser.BEGINNING_OF_LINE
+	private static final int BEGINNING_OF_LINE = 3;
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private final int maxFields;
+
+	// Result of the last parse
+	private String[] fields = new String[8];
+	private int fieldCount;
+	private boolean malformed;
+	private int end;
+	private int lines;
+
+	private byte[] field = new byte[128];
+	private int fieldLength;
+
+	// Fields after the first maxFields are parsed but not turned into Strings
+	public CsvRecordParser(int maxFields) {
+		this.maxFields = maxFields;
+	}
+
+	// Parse the record starting at position start of buffer. NEEDS_MORE_INPUT means the record
+	// runs past limit and endOfInput is false: parse it again from start once more is available.
+	// A quoted field still open at the end of the input gives a malformed RECORD.
+	public Status parse(ByteBuffer buffer, int start, int limit, boolean endOfInput) {
+		if (start >= limit) {
+			return endOfInput ? Status.END_OF_INPUT : Status.NEEDS_MORE_INPUT;
+		}
+		fieldCount = 0;
+		fieldLength = 0;
+		malformed = false;
+		lines = 0;
+
+		boolean inQuotes = false;
+		boolean inField = false;
+		int lineStart = start;
+		// Bytes from literalStart up to the current position belong to the field but are not yet copied
+		int literalStart = start;
+		int i = start;
+
+		while (true) {
+			if (i == limit) {
+				if (!endOfInput) {
+					return Status.NEEDS_MORE_INPUT;
+				}
+				// The last line has no terminator
+				appendLiteral(buffer, literalStart, i);
+				lines++;
+				end = i;
+				if (inQuotes) {
+					malformed = true;
+					return Status.RECORD;
+				}
+				addField();
+				return Status.RECORD;
+			}
+
+			int special = nextSpecial(buffer, i, limit);
+			if (special > i) {
+				inField = true;
+				i = special;
+				continue;
+			}
+
+			byte b = buffer.get(i);
+			if (b == '\n' || b == '\r') {
+				int next = i + 1;
+				if (b == '\r') {
+					if (next == limit && !endOfInput) {
+						return Status.NEEDS_MORE_INPUT;
+					}
+					if (next < limit && buffer.get(next) == '\n') {
+						next++;
+					}
+				}
+				appendLiteral(buffer, literalStart, i);
+				lines++;
+				if (inQuotes) {
+					// A quoted field continues on the next line, or is never closed
+					if (next == limit && endOfInput) {
+						end = next;
+						malformed = true;
+						return Status.RECORD;
+					}
+					append((byte) '\n');
+					i = next;
+					lineStart = next;
+					literalStart = next;
+					continue;
+				}
+				addField();
+				end = next;
+				return Status.RECORD;
+			}
+
+			if (b == ESCAPE) {
+				inField = true;
+				int next = i + 1;
+				if (next == limit && !endOfInput) {
+					return Status.NEEDS_MORE_INPUT;
+				}
+				appendLiteral(buffer, literalStart, i);
+				if (next < limit && isEscapable(buffer.get(next))) {
+					append(buffer.get(next));
+					i = next + 1;
+				} else {
+					// An escape before any other character is dropped
+					i = next;
+				}
+				literalStart = i;
+				continue;
+			}
+
+			if (b == QUOTE) {
+				int next = i + 1;
+				if (next == limit && !endOfInput) {
+					return Status.NEEDS_MORE_INPUT;
+				}
+				boolean nextInLine = next < limit && buffer.get(next) != '\n' && buffer.get(next) != '\r';
+				appendLiteral(buffer, literalStart, i);
+				if ((inQuotes || inField) && nextInLine && buffer.get(next) == QUOTE) {
+					// A doubled quote stands for one quote
+					append(QUOTE);
+					i = next + 1;
+				} else {
+					inQuotes = !inQuotes;
+					// A quote in the middle of an unquoted field is kept, unless only whitespace
+					// precedes it, which is dropped instead
+					if (nextInLine && buffer.get(next) != SEPARATOR && i - lineStart >= BEGINNING_OF_LINE
+							&& buffer.get(i - 1) != SEPARATOR && charsBefore(buffer, lineStart, i) >= BEGINNING_OF_LINE) {
+						if (fieldLength > 0 && isWhitespace(field, fieldLength)) {
+							fieldLength = 0;
+						} else {
+							append(QUOTE);
+						}
+					}
+					i = next;
+				}
+				inField = !inField;
+				literalStart = i;
+				continue;
+			}
+
+			if (inQuotes) {
+				// A separator inside quotes is part of the field
+				inField = true;
+				i++;
+				continue;
+			}
+			appendLiteral(buffer, literalStart, i);
+			addField();
+			inField = false;
+			i++;
+			literalStart = i;
+		}
+	}
+
+	// Position of the first line end, separator, quote or escape from i, or limit if there is none
+	private static int nextSpecial(ByteBuffer buffer, int i, int limit) {
+		boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+		while (i + Long.BYTES <= limit) {
+			long word = buffer.getLong(i);
+			if (!littleEndian) {
+				word = Long.reverseBytes(word);
+			}
+			long found = zeroBytes(word ^ (ONES * '\n')) | zeroBytes(word ^ (ONES * '\r'))
+					| zeroBytes(word ^ (ONES * SEPARATOR)) | zeroBytes(word ^ (ONES * QUOTE)) | zeroBytes(word ^ (ONES * ESCAPE));
+			if (found != 0) {
+				// Only bytes after a real match can be false matches, so the lowest one is real
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+			i += Long.BYTES;
+		}
+		while (i < limit && !isSpecial(buffer.get(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	// High bit set in each byte of word that is zero
+	private static long zeroBytes(long word) {
+		return (word - ONES) & ~word & HIGH_BITS;
+	}
+
+	private static boolean isSpecial(byte b) {
+		return b == '\n' || b == '\r' || b == SEPARATOR || b == QUOTE || b == ESCAPE;
+	}
+
+	// Fields of the last record, up to maxFields of them. Only valid until the next parse.
+	public String[] fields() {
+		return Arrays.copyOf(fields, Math.min(fieldCount, maxFields));
+	}
+
+	public int fieldCount() {
+		return fieldCount;
+	}
+
+	// Whether the last record has a quoted field that is never closed
+	public boolean isMalformed() {
+		return malformed;
+	}
+
+	// Position just after the last record, including its line terminator
+	public int end() {
+		return end;
+	}
+
+	// Physical lines the last record spans
+	public int lines() {
+		return lines;
+	}
+
+	private static boolean isEscapable(byte b) {
+		return b == QUOTE || b == ESCAPE || b == SEPARATOR;
+	}
+
+	// Chars before position i of the line, as Java counts them: continuation bytes do not count
+	// and four-byte sequences count as two chars (a surrogate pair)
+	private static int charsBefore(ByteBuffer buffer, int lineStart, int i) {
+		int chars = 0;
+		for (int j = lineStart; j < i && chars < BEGINNING_OF_LINE; j++) {
+			int b = buffer.get(j) & 0xff;
+			if (b < 0x80 || b >= 0xc0) {
+				chars += b >= 0xf0 ? 2 : 1;
+			}
+		}
+		return chars;
+	}
+
+	private static boolean isWhitespace(byte[] bytes, int length) {
+		String value = new String(bytes, 0, length, StandardCharsets.UTF_8);
+		for (int i = 0; i < value.length(); i++) {
+			if (!Character.isWhitespace(value.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void appendLiteral(ByteBuffer buffer, int from, int to) {
+		int length = to - from;
+		if (length <= 0) {
+			return;
+		}
+		ensureCapacity(length);
+		buffer.get(from, field, fieldLength, length);
+		fieldLength += length;
+	}
+
+	private void append(byte b) {
+		ensureCapacity(1);
+		field[fieldLength++] = b;
+	}
+
+	private void ensureCapacity(int additional) {
+		if (fieldLength + additional > field.length) {
+			field = Arrays.copyOf(field, Math.max(field.length * 2, fieldLength + additional));
+		}
+	}
+
+	private void addField() {
+		if (fieldCount < maxFields) {
+			if (fieldCount == fields.length) {
+				fields = Arrays.copyOf(fields, fields.length * 2);
+			}
+			fields[fieldCount] = new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+		}
+		fieldCount++;
+		fieldLength = 0;
+	}
+
+}
@@ -1,7 +1,13 @@
 package com.customer.demo;
 
+import org.hibernate.annotations.ColumnDefault;
+
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -12,6 +18,10 @@ import lombok.Builder;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@Table(indexes = {
+		@Index(name = "idx_customer_postcode", columnList = "postcode"),
+		@Index(name = "idx_customer_town", columnList = "town"),
+		@Index(name = "idx_customer_name", columnList = "customerName") })
 public class Customer {
     
 
@@ -24,5 +34,12 @@ public class Customer {
     private String county;
     private String country;
     private String postcode;	
+
+	// Incremented by every update, which only applies if the row still has the version it was read
+	// at. The column default gives rows written before the column existed version 0.
+	@Version
+	@ColumnDefault("0")
+	@Column(nullable = false)
+	private Long version;
 	
 }
\ No newline at end of file
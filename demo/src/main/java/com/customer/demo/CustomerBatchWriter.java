@@ -0,0 +1,111 @@
+package com.customer.demo;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.hibernate.StaleStateException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceContext;
+
+// Writes a chunk of customers using Hibernate JDBC batching
+@Component
+public class CustomerBatchWriter {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final CustomerRepository customerRepository;
+	private final CustomerCache customerCache;
+	private final CustomerSuggestIndex customerSuggestIndex;
+
+	public CustomerBatchWriter(CustomerRepository customerRepository, CustomerCache customerCache,
+			CustomerSuggestIndex customerSuggestIndex) {
+		this.customerRepository = customerRepository;
+		this.customerCache = customerCache;
+		this.customerSuggestIndex = customerSuggestIndex;
+	}
+
+	// Insert or update every customer in the chunk, skipping the ones identical to the stored row.
+	// Refs must be unique within the chunk. Bulk saves and imports overwrite the stored customers,
+	// so any version they carry is ignored.
+	@Transactional
+	public BulkSaveResult write(Collection<Customer> customers) {
+		// Load the rows that already exist with one IN query, so that new rows can be
+		// persisted directly instead of paying a SELECT each through merge()
+		List<String> refs = customers.stream().map(Customer::getCustomerRef).toList();
+		Map<String, Customer> existing = customerRepository.findAllById(refs).stream()
+				.collect(Collectors.toMap(Customer::getCustomerRef, Function.identity()));
+
+		BulkSaveResult result = new BulkSaveResult();
+		List<String> changed = new ArrayList<>(refs.size());
+		for (Customer customer : customers) {
+			Customer managed = existing.get(customer.getCustomerRef());
+			if (managed != null && CustomerMapper.sameContent(customer, managed)) {
+				// Nothing to write, and nothing for the flush to dirty-check either
+				entityManager.detach(managed);
+				result.setUnchanged(result.getUnchanged() + 1);
+				continue;
+			}
+
+			changed.add(customer.getCustomerRef());
+			if (managed == null) {
+				customer.setVersion(null);
+				entityManager.persist(customer);
+				customerSuggestIndex.update(customer.getCustomerRef(), null, null,
+						customer.getCustomerName(), customer.getPostcode());
+				result.setInserted(result.getInserted() + 1);
+			} else {
+				customerSuggestIndex.update(customer.getCustomerRef(), managed.getCustomerName(), managed.getPostcode(),
+						customer.getCustomerName(), customer.getPostcode());
+				CustomerMapper.copyInto(customer, managed);
+				result.setUpdated(result.getUpdated() + 1);
+			}
+		}
+
+		customerCache.invalidateAll(changed);
+
+		// Send the batched statements and release the chunk from the persistence context
+		entityManager.flush();
+		entityManager.clear();
+		return result;
+	}
+
+	// A constraint violation or invalid data (SQLState class 23 or 22), which retrying cannot fix,
+	// unlike a lost connection
+	static boolean isRefused(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DataIntegrityViolationException) {
+				return true;
+			}
+			if (cause instanceof SQLException sql && sql.getSQLState() != null
+					&& (sql.getSQLState().startsWith("22") || sql.getSQLState().startsWith("23"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Another save of a customer in the chunk committed between loading and updating it, so the
+	// UPDATE matched no row. Writing the chunk again loads the new version. The writer is not a
+	// repository, so its failures arrive untranslated.
+	static boolean isConflict(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if (cause instanceof OptimisticLockingFailureException || cause instanceof OptimisticLockException
+					|| cause instanceof StaleStateException) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
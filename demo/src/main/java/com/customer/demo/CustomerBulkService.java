@@ -0,0 +1,109 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+@Service
+public class CustomerBulkService {
+
+	private final CustomerBatchWriter customerBatchWriter;
+	private final ObjectReader customerReader;
+	private final TransactionTemplate transactionTemplate;
+	private final int chunkSize;
+	private final boolean singleTransaction;
+
+	public CustomerBulkService(CustomerBatchWriter customerBatchWriter,
+			ObjectMapper objectMapper,
+			PlatformTransactionManager transactionManager,
+			@Value("${customer.bulk.chunk-size:500}") int chunkSize,
+			@Value("${customer.bulk.single-transaction:false}") boolean singleTransaction) {
+		this.customerBatchWriter = customerBatchWriter;
+		this.customerReader = objectMapper.readerFor(CustomerDTO.class);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.chunkSize = chunkSize;
+		this.singleTransaction = singleTransaction;
+	}
+
+	// Save customers read from a JSON array or an NDJSON stream, without buffering the whole body
+	public BulkSaveResult saveCustomers(InputStream body) throws IOException {
+		try (MappingIterator<CustomerDTO> customers = customerReader.readValues(body)) {
+			return saveCustomers(customers);
+		}
+	}
+
+	// Save customers in chunks, each chunk written with JDBC batch inserts/updates
+	public BulkSaveResult saveCustomers(Iterator<CustomerDTO> customers) {
+		if (singleTransaction) {
+			return transactionTemplate.execute(status -> writeChunks(customers));
+		}
+		return writeChunks(customers);
+	}
+
+	private BulkSaveResult writeChunks(Iterator<CustomerDTO> customers) {
+		BulkSaveResult result = new BulkSaveResult();
+		Map<String, Customer> chunk = new LinkedHashMap<>();
+
+		while (customers.hasNext()) {
+			CustomerDTO customerDTO = customers.next();
+			if (customerDTO == null || customerDTO.getCustomerRef() == null || customerDTO.getCustomerRef().isBlank()) {
+				result.setRejected(result.getRejected() + 1);
+				continue;
+			}
+
+			// A ref repeated within a chunk overwrites the earlier row, last one wins
+			if (chunk.put(customerDTO.getCustomerRef(), CustomerMapper.toEntity(customerDTO)) != null) {
+				result.setSuperseded(result.getSuperseded() + 1);
+			}
+
+			if (chunk.size() >= chunkSize) {
+				result.add(writeChunk(chunk.values()));
+				chunk = new LinkedHashMap<>();
+			}
+		}
+
+		if (!chunk.isEmpty()) {
+			result.add(writeChunk(chunk.values()));
+		}
+		return result;
+	}
+
+	// A chunk the database refuses is retried row by row, as the import does, so that only the rows it
+	// still refuses are rejected and the counts cover every row. In a single transaction the refused
+	// chunk has already doomed the transaction, so the request fails and nothing is written.
+	private BulkSaveResult writeChunk(Collection<Customer> chunk) {
+		try {
+			return customerBatchWriter.write(chunk);
+		} catch (RuntimeException chunkFailure) {
+			if (singleTransaction || !CustomerBatchWriter.isRefused(chunkFailure)) {
+				throw chunkFailure;
+			}
+			BulkSaveResult result = new BulkSaveResult();
+			for (Customer customer : chunk) {
+				try {
+					result.add(customerBatchWriter.write(List.of(customer)));
+				} catch (RuntimeException rowFailure) {
+					if (!CustomerBatchWriter.isRefused(rowFailure)) {
+						throw rowFailure;
+					}
+					result.setRejected(result.getRejected() + 1);
+				}
+			}
+			return result;
+		}
+	}
+
+}
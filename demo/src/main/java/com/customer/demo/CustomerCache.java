@@ -0,0 +1,227 @@
+package com.customer.demo;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+// Bounded read-through cache of CustomerDTOs keyed by customerRef. Eviction is size-based
+// (W-TinyLFU, which keeps the hot refs) and time-based. An empty Optional records a ref that is
+// known not to exist, when negative caching is enabled.
+//
+// Beside it is a larger index of the customers' ETags, so a conditional GET is answered 304 without
+// loading or copying the customer. It is invalidated with the cache. An ETag is only added if its
+// ref has not been invalidated since the generation read before loading the customer, so a load
+// racing with a write cannot index the old ETag.
+@Component
+public class CustomerCache implements MeterBinder {
+
+	private final boolean enabled;
+	private final boolean negativeCaching;
+	private final Cache<String, Optional<CustomerDTO>> cache;
+	private final LongAdder negativeHits = new LongAdder();
+
+	private static final int GENERATION_STRIPES = 1024;
+
+	private final Cache<String, String> etags;
+	// Bumped for a ref's stripe whenever it is invalidated, between the cache and the ETag index
+	private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+	public CustomerCache(@Value("${customer.cache.enabled:true}") boolean enabled,
+			@Value("${customer.cache.maximum-size:100000}") long maximumSize,
+			@Value("${customer.cache.expire-after-write:10m}") Duration expireAfterWrite,
+			@Value("${customer.cache.negative.enabled:false}") boolean negativeCaching,
+			@Value("${customer.cache.negative.expire-after-write:30s}") Duration negativeExpireAfterWrite,
+			@Value("${customer.cache.etag.maximum-size:1000000}") long etagMaximumSize) {
+		this.enabled = enabled;
+		this.negativeCaching = negativeCaching;
+		this.cache = Caffeine.newBuilder()
+				.maximumSize(enabled ? maximumSize : 0)
+				.expireAfter(new EntryExpiry(expireAfterWrite, negativeExpireAfterWrite))
+				.recordStats()
+				.build();
+		this.etags = Caffeine.newBuilder()
+				.maximumSize(enabled ? etagMaximumSize : 0)
+				.expireAfterWrite(expireAfterWrite)
+				.recordStats()
+				.build();
+	}
+
+	// Return the cached customer, loading it with loader on a miss. A loader that runs while the
+	// ref is invalidated is discarded, so a stale read cannot overwrite a newer write.
+	public Optional<CustomerDTO> get(String customerRef, Function<String, Optional<CustomerDTO>> loader) {
+		if (!enabled) {
+			return loader.apply(customerRef);
+		}
+		boolean[] loaded = new boolean[1];
+		Optional<CustomerDTO> customer = cache.get(customerRef, ref -> {
+			loaded[0] = true;
+			Optional<CustomerDTO> result = loader.apply(ref);
+			return result.isPresent() || negativeCaching ? result : null;
+		});
+		if (customer == null) {
+			return Optional.empty();
+		}
+		if (customer.isEmpty() && !loaded[0]) {
+			negativeHits.increment();
+		}
+		return customer;
+	}
+
+	// Cached entries for the refs that are present, including known-missing refs as empty
+	// Optionals. Nothing is loaded on a miss.
+	public Map<String, Optional<CustomerDTO>> getAllPresent(Collection<String> customerRefs) {
+		return enabled ? cache.getAllPresent(customerRefs) : Map.of();
+	}
+
+	// Generation of the ref, to read before loading a customer whose ETag is then put
+	public long etagGeneration(String customerRef) {
+		return generations.get(stripe(customerRef));
+	}
+
+	// Indexed ETag of the customer, or null
+	public String getETag(String customerRef) {
+		return enabled ? etags.getIfPresent(customerRef) : null;
+	}
+
+	// Index the ETag of a customer loaded after reading generation, unless the ref has been
+	// invalidated since
+	public void putETag(String customerRef, String etag, long generation) {
+		if (!enabled || etag.equals(etags.getIfPresent(customerRef))) {
+			return;
+		}
+		etags.asMap().compute(customerRef,
+				(ref, current) -> generations.get(stripe(ref)) == generation ? etag : current);
+	}
+
+	// Drop the entry now, and again once the surrounding transaction commits so that a read
+	// racing with the commit cannot cache the old row
+	public void invalidate(String customerRef) {
+		invalidateAll(List.of(customerRef));
+	}
+
+	public void invalidateAll(Collection<String> customerRefs) {
+		if (!enabled) {
+			return;
+		}
+		evict(customerRefs);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					evict(customerRefs);
+				}
+			});
+		}
+	}
+
+	// The generation is bumped before the ETags are dropped: a putETag that read the old generation
+	// either sees the new one and skips, or completes first and is dropped
+	private void evict(Collection<String> customerRefs) {
+		cache.invalidateAll(customerRefs);
+		for (String ref : customerRefs) {
+			generations.incrementAndGet(stripe(ref));
+		}
+		etags.invalidateAll(customerRefs);
+	}
+
+	private static int stripe(String customerRef) {
+		return Math.floorMod(customerRef.hashCode(), GENERATION_STRIPES);
+	}
+
+	// Add customers read outside get(), such as when warming the cache on startup
+	public void putAll(Collection<CustomerDTO> customers) {
+		if (!enabled) {
+			return;
+		}
+		for (CustomerDTO customer : customers) {
+			cache.put(customer.getCustomerRef(), Optional.of(customer));
+		}
+	}
+
+	// Refs of up to limit cached customers, most likely to be retained first. Known-missing refs
+	// are left out.
+	public List<String> hottestRefs(int limit) {
+		if (!enabled) {
+			return List.of();
+		}
+		return cache.policy().eviction()
+				.map(eviction -> eviction.hottest(limit).entrySet().stream()
+						.filter(entry -> entry.getValue().isPresent())
+						.map(Map.Entry::getKey)
+						.toList())
+				.orElse(List.of());
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+		for (int i = 0; i < GENERATION_STRIPES; i++) {
+			generations.incrementAndGet(i);
+		}
+		etags.invalidateAll();
+	}
+
+	// Publish hits, misses, evictions and size as cache.* metrics tagged cache=customer, and
+	// cache=customer-etag for the ETag index
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, cache, "customer");
+		CaffeineCacheMetrics.monitor(registry, etags, "customer-etag");
+		FunctionCounter.builder("customer.cache.negative.hits", negativeHits, LongAdder::sum)
+				.description("Lookups answered from a cached known-missing ref")
+				.register(registry);
+	}
+
+	public CacheStatsResponse stats() {
+		CacheStats stats = cache.stats();
+		return new CacheStatsResponse(enabled, cache.estimatedSize(), stats.hitCount(), stats.missCount(),
+				stats.hitRate(), negativeHits.sum(), stats.evictionCount());
+	}
+
+	// Found customers and known-missing refs live for different times
+	private static final class EntryExpiry implements Expiry<String, Optional<CustomerDTO>> {
+
+		private final long presentNanos;
+		private final long missingNanos;
+
+		EntryExpiry(Duration present, Duration missing) {
+			this.presentNanos = present.toNanos();
+			this.missingNanos = missing.toNanos();
+		}
+
+		@Override
+		public long expireAfterCreate(String key, Optional<CustomerDTO> value, long currentTime) {
+			return value.isPresent() ? presentNanos : missingNanos;
+		}
+
+		@Override
+		public long expireAfterUpdate(String key, Optional<CustomerDTO> value, long currentTime, long currentDuration) {
+			return expireAfterCreate(key, value, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(String key, Optional<CustomerDTO> value, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+	}
+
+}
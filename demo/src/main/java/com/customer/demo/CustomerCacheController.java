@@ -0,0 +1,31 @@
+package com.customer.demo;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/customers/cache")
+public class CustomerCacheController {
+
+    private final CustomerCache customerCache;
+
+    public CustomerCacheController(CustomerCache customerCache) {
+    	this.customerCache = customerCache;
+    }
+
+    // Endpoint to retrieve hit, miss and eviction counters of the customer cache
+    @GetMapping("/stats")
+	public ResponseEntity<CacheStatsResponse> getStats() {
+			return ResponseEntity.ok(customerCache.stats());
+	}
+
+    // Endpoint to empty the customer cache
+    @DeleteMapping
+	public ResponseEntity<Void> clear() {
+			customerCache.clear();
+			return ResponseEntity.noContent().build();
+	}
+}
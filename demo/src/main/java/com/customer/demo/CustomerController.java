@@ -1,12 +1,23 @@
 package com.customer.demo;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.customer.demo.CustomerDTO;
 import com.customer.demo.CustomerService;
@@ -17,23 +28,187 @@ import com.customer.demo.CustomerService;
 @RequestMapping("/api/customers")
 public class CustomerController {
 
+    // Largest page a client can ask for when browsing
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final CustomerService customerService;
+    private final CustomerBulkService customerBulkService;
+    private final CustomerExporter customerExporter;
+    // Only present with customer.write-coalescing.enabled=true
+    private final CustomerWriteCoalescer customerWriteCoalescer;
+    // Only present with customer.write-behind.enabled=true
+    private final CustomerWriteBehind customerWriteBehind;
+    // Only present with customer.partition.enabled=true
+    private final CustomerPartitionRouter customerPartitionRouter;
 
-    public CustomerController(CustomerService customerService) {
+    public CustomerController(CustomerService customerService, CustomerBulkService customerBulkService,
+    		CustomerExporter customerExporter, @Autowired(required = false) CustomerWriteCoalescer customerWriteCoalescer,
+    		@Autowired(required = false) CustomerWriteBehind customerWriteBehind,
+    		@Autowired(required = false) CustomerPartitionRouter customerPartitionRouter) {
     	this.customerService = customerService; 
+    	this.customerBulkService = customerBulkService;
+    	this.customerExporter = customerExporter;
+    	this.customerWriteCoalescer = customerWriteCoalescer;
+    	this.customerWriteBehind = customerWriteBehind;
+    	this.customerPartitionRouter = customerPartitionRouter;
     }
 	
-    // Endpoint to save customer data
+    // Endpoint to save customer data. A customer sent with a version is only saved if it is still at
+    // that version, otherwise the response is 409 Conflict. With write-behind enabled a save without
+    // a version is answered 202 Accepted once it is in the write-ahead log, before the database.
+    // Partitioned, a customer owned by another instance is forwarded to it.
     @PostMapping("/saveCustomer")
-	public ResponseEntity<String> saveCustomer(@RequestBody CustomerDTO customerDTO) {
-			customerService.saveCustomer(customerDTO);
+	public ResponseEntity<String> saveCustomer(@RequestBody CustomerDTO customerDTO,
+			@RequestHeader(value = CustomerPartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+			String owner = remoteOwner(customerDTO.getCustomerRef(), forwardedBy);
+			if (owner != null) {
+				return customerPartitionRouter.saveCustomer(owner, customerDTO);
+			}
+			if (customerWriteBehind != null && customerDTO.getVersion() == null) {
+				customerWriteBehind.saveCustomer(customerDTO);
+				return ResponseEntity.accepted().body("Customer accepted");
+			}
+			if (customerWriteCoalescer != null) {
+				customerWriteCoalescer.saveCustomer(customerDTO);
+			} else {
+				customerService.saveCustomer(customerDTO);
+			}
 			return ResponseEntity.ok("Customer saved successfully");
 	}
     
-    // Endpoint to retrieve customer data by customer reference
+    // Endpoint to save many customers at once, sent as a JSON array or as NDJSON. Partitioned, each
+    // customer is sent on to the instance owning it.
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public ResponseEntity<BulkSaveResult> saveCustomers(InputStream body,
+			@RequestHeader(value = CustomerPartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) throws IOException {
+			if (routed(forwardedBy)) {
+				return ResponseEntity.ok(customerPartitionRouter.saveCustomers(body));
+			}
+			return ResponseEntity.ok(customerBulkService.saveCustomers(body));
+	}
+    
+    // Endpoint to retrieve many customers by reference in one call, reporting the ones not found.
+    // Partitioned, the customers are looked up on the instances owning them.
+    @PostMapping("/lookup")
+	public ResponseEntity<CustomerLookupResponse> lookupCustomers(@RequestBody List<String> customerRefs,
+			@RequestHeader(value = CustomerPartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+			CustomerLookupResponse response = lookup(customerRefs, forwardedBy);
+			return ResponseEntity.ok().eTag(CustomerETag.of(response)).body(response);
+	}
+    
+    // Endpoint to poll many customers by reference (?ref=1&ref=2), answered 304 Not Modified while
+    // none of them has changed since the ETag sent in If-None-Match
+    @GetMapping("/lookup")
+	public ResponseEntity<CustomerLookupResponse> pollCustomers(@RequestParam("ref") List<String> customerRefs,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@RequestHeader(value = CustomerPartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+			// Partitioned, the ETag index only holds this instance's customers
+			if (ifNoneMatch != null && !routed(forwardedBy)) {
+				String etag = customerService.getLookupETag(customerRefs);
+				if (matches(ifNoneMatch, etag)) {
+					return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+				}
+			}
+			CustomerLookupResponse response = lookup(customerRefs, forwardedBy);
+			String etag = CustomerETag.of(response);
+			if (ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+				return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+			}
+			return ResponseEntity.ok().eTag(etag).body(response);
+	}
+    
+    // Endpoint to browse customers by page number, in customerRef order
+    @GetMapping
+	public ResponseEntity<CustomerPageResponse> getCustomerPage(@RequestParam(defaultValue = "0") int page,
+			@RequestParam(defaultValue = "50") int size) {
+			return ResponseEntity.ok(customerService.getCustomerPage(Math.max(page, 0), pageSize(size)));
+	}
+    
+    // Endpoint to browse customers with a cursor, pass the returned nextCursor as "after" for the next page
+    @GetMapping(params = "limit")
+	public ResponseEntity<CustomerCursorResponse> browseCustomers(@RequestParam(required = false) String after,
+			@RequestParam int limit) {
+			return ResponseEntity.ok(customerService.browseCustomers(after, pageSize(limit)));
+	}
+    
+    // Endpoint to search customers by postcode prefix, town and/or name prefix
+    @GetMapping("/search")
+	public ResponseEntity<CustomerPageResponse> searchCustomers(@RequestParam(required = false) String postcode,
+			@RequestParam(required = false) String town, @RequestParam(required = false) String name,
+			@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "50") int size) {
+			return ResponseEntity.ok(customerService.searchCustomers(postcode, town, name, Math.max(page, 0), pageSize(size)));
+	}
+    
+    // Endpoint to stream every customer as NDJSON or CSV
+    @GetMapping("/export")
+	public ResponseEntity<StreamingResponseBody> exportCustomers(@RequestParam(defaultValue = "NDJSON") ExportFormat format) {
+			return ResponseEntity.ok()
+					.contentType(format.getMediaType())
+					.body(out -> customerExporter.export(format, out));
+	}
+    
+    // Endpoint to retrieve customer data by customer reference. The response carries an ETag; a
+    // request sending it back in If-None-Match is answered 304 Not Modified while the customer is
+    // unchanged, from the ETag index without loading the customer when it is indexed. Partitioned, a
+    // customer owned by another instance is read from it.
     @GetMapping("/{customerRef}")
-	public ResponseEntity<CustomerDTO> getCustomer(@PathVariable String customerRef) {
+	public ResponseEntity<CustomerDTO> getCustomer(@PathVariable String customerRef,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@RequestHeader(value = CustomerPartitionRouter.FORWARDED_HEADER, required = false) String forwardedBy) {
+			String owner = remoteOwner(customerRef, forwardedBy);
+			if (owner != null) {
+				return customerPartitionRouter.getCustomer(owner, customerRef, ifNoneMatch);
+			}
+			if (ifNoneMatch != null) {
+				String etag = customerService.getCustomerETag(customerRef);
+				if (matches(ifNoneMatch, etag)) {
+					return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+				}
+			}
 			CustomerDTO customerDTO = customerService.getCustomerDTOById(customerRef);
-			return ResponseEntity.ok(customerDTO);
+			// Compared with If-None-Match again by Spring, so a customer not yet indexed is also a 304
+			return ResponseEntity.ok().eTag(CustomerETag.of(customerDTO)).body(customerDTO);
 	}
+
+    // Whether the request is to be routed to the owners of its customers: partitioning is on and
+    // the request was not already forwarded by another instance
+    private boolean routed(String forwardedBy) {
+    	return customerPartitionRouter != null && forwardedBy == null;
+    }
+
+    // The instance owning the ref when the request is routed and it is not this one, otherwise null
+    private String remoteOwner(String customerRef, String forwardedBy) {
+    	if (!routed(forwardedBy)) {
+    		return null;
+    	}
+    	String owner = customerPartitionRouter.ownerOf(customerRef);
+    	return customerPartitionRouter.isSelf(owner) ? null : owner;
+    }
+
+    private CustomerLookupResponse lookup(List<String> customerRefs, String forwardedBy) {
+    	return routed(forwardedBy) ? customerPartitionRouter.lookupCustomers(customerRefs)
+    			: customerService.lookupCustomers(customerRefs);
+    }
+
+    // Whether an If-None-Match header lists the ETag, compared weakly as the header requires
+    private static boolean matches(String ifNoneMatch, String etag) {
+    	if (etag == null) {
+    		return false;
+    	}
+    	String quoted = "\"" + etag + "\"";
+    	for (String tag : ifNoneMatch.split(",")) {
+    		tag = tag.trim();
+    		if (tag.startsWith("W/")) {
+    			tag = tag.substring(2);
+    		}
+    		if (tag.equals("*") || tag.equals(quoted)) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    private static int pageSize(int requested) {
+    	return Math.min(Math.max(requested, 1), MAX_PAGE_SIZE);
+    }
 }
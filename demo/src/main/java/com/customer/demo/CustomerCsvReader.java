@@ -0,0 +1,187 @@
+package com.customer.demo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads CSV records from any record boundary of a file, keeping track of the byte offset and the
+// number of lines read after each record, so that an import can later be resumed from there
+// instead of parsing the file again from the start.
+//
+// The file is memory-mapped a window at a time and parsed in place by CsvRecordParser, which
+// follows opencsv's CSVReader: quoted fields may span lines, lines end with \n, \r or \r\n, and
+// bytes that are not valid UTF-8 are replaced rather than failing the file.
+//
+// A reader can also be limited to part of the file, so that line-aligned chunks from split() are
+// parsed in parallel. A chunk boundary may fall inside a quoted field spanning lines; the import
+// checks that each chunk starts where the one before it really ended.
+public class CustomerCsvReader implements Closeable {
+
+	// Most of the file mapped at once; a window only grows beyond it for a record that is longer
+	private static final long WINDOW_SIZE = 1L << 28;
+
+	// Mapped past the end of a bounded reader, for the record that starts before the end
+	private static final long READ_AHEAD = 1L << 16;
+
+	private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	// One CSV record. fields is null for a record that could not be parsed, which then has its raw
+	// text. endOffset and linesRead give the position just after the record.
+	public record Record(long lineNumber, String[] fields, String text, long endOffset, long linesRead) {
+	}
+
+	private final FileChannel channel;
+	private final CsvRecordParser parser;
+	private final long size;
+	private final long end;
+	private final long limit;
+
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long windowSize;
+
+	private long offset;
+	private long linesRead;
+
+	// Start reading at offset, a record boundary after linesRead lines, or at 0 for the whole file
+	public CustomerCsvReader(Path path, long offset, long linesRead) throws IOException {
+		this(path, offset, linesRead, Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	// Read the records that start before end and finish before limit; reading stops at the first
+	// record that runs past limit, with getOffset() at its start. Only the first maxFields fields
+	// of a record are kept.
+	public CustomerCsvReader(Path path, long offset, long linesRead, long end, long limit, int maxFields)
+			throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.parser = new CsvRecordParser(maxFields);
+		this.size = channel.size();
+		this.end = Math.min(end, size);
+		this.limit = limit;
+		this.offset = offset;
+		this.linesRead = linesRead;
+		this.windowSize = Math.min(WINDOW_SIZE, Math.max(this.end - offset, 0) + READ_AHEAD);
+	}
+
+	// Offsets at which to split the file from offset into chunks of about chunkSize bytes. Each
+	// one starts a line, just after a \n; a file with only \r line endings is not split.
+	public static List<Long> split(Path path, long offset, long chunkSize) throws IOException {
+		List<Long> starts = new ArrayList<>();
+		starts.add(offset);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate((int) READ_AHEAD);
+			long next = offset + chunkSize;
+			while (next < size) {
+				long lineStart = nextLineStart(channel, buffer, next);
+				if (lineStart >= size) {
+					break;
+				}
+				starts.add(lineStart);
+				next = lineStart + chunkSize;
+			}
+		}
+		return starts;
+	}
+
+	private static long nextLineStart(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+	}
+
+	// The next record, or null at the end of the file or of the part being read
+	public Record next() throws IOException {
+		if (offset >= end) {
+			return null;
+		}
+		while (true) {
+			if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+				map();
+			}
+			int start = (int) (offset - windowStart);
+			boolean endOfInput = windowStart + window.limit() == size;
+
+			CsvRecordParser.Status status = parser.parse(window, start, window.limit(), endOfInput);
+			if (status == CsvRecordParser.Status.END_OF_INPUT) {
+				return null;
+			}
+			if (status == CsvRecordParser.Status.NEEDS_MORE_INPUT) {
+				if (windowStart + window.limit() >= limit) {
+					return null;
+				}
+				// Map again from the start of the record, in a larger window if it fills this one
+				if (start == 0) {
+					if (windowSize == MAX_WINDOW_SIZE) {
+						throw new IOException("CSV record at offset " + offset + " is longer than " + MAX_WINDOW_SIZE + " bytes");
+					}
+					windowSize = Math.min(windowSize * 2, MAX_WINDOW_SIZE);
+				}
+				map();
+				continue;
+			}
+
+			long lineNumber = linesRead + 1;
+			String[] fields = parser.isMalformed() ? null : parser.fields();
+			String text = parser.isMalformed() ? text(start, parser.end()) : null;
+			offset = windowStart + parser.end();
+			linesRead += parser.lines();
+			return new Record(lineNumber, fields, text, offset, linesRead);
+		}
+	}
+
+	// Offset just after the last record returned
+	public long getOffset() {
+		return offset;
+	}
+
+	public long getLinesRead() {
+		return linesRead;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	private void map() throws IOException {
+		windowStart = offset;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+		// The parser reads eight bytes at a time, in file order in the low bits first
+		window.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	// Text of a record without its final line terminator
+	private String text(int start, int recordEnd) {
+		int length = recordEnd - start;
+		if (length > 0 && window.get(start + length - 1) == '\n') {
+			length--;
+		}
+		if (length > 0 && window.get(start + length - 1) == '\r') {
+			length--;
+		}
+		byte[] bytes = new byte[length];
+		window.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
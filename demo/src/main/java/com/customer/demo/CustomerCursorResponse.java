@@ -0,0 +1,14 @@
+package com.customer.demo;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// One page of customers and the cursor to pass as "after" for the next one, null on the last page
+@Getter
+@RequiredArgsConstructor
+public class CustomerCursorResponse {
+    private final List<CustomerDTO> content;
+    private final String nextCursor;
+}
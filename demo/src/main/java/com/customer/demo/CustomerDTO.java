@@ -22,5 +22,8 @@ public class CustomerDTO {
     private String county;
     private String country;
     private String postcode;	
+    // Version of the stored customer. A save that carries one only applies if the customer is still
+    // at that version; a save without one overwrites whatever is stored.
+    private Long version;
     
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.customer.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+// Strong ETags for conditional GETs. A customer's ETag is its version followed by a 128-bit hash of
+// its content, the leading half of a SHA-256 digest of its fields in UTF-8: the version alone changes
+// with every write, but repeats when a customer is created again, such as when the in-memory database
+// is imported afresh from a different file. A save not yet written by the write-behind buffer has no
+// version, and only the hash.
+public final class CustomerETag {
+
+	private static final int HASH_BYTES = 16;
+	private static final HexFormat HEX = HexFormat.of();
+
+	private CustomerETag() {
+	}
+
+	public static String of(CustomerDTO customer) {
+		String content = new Digest()
+				.add(customer.getCustomerRef())
+				.add(customer.getCustomerName())
+				.add(customer.getAddressLine1())
+				.add(customer.getAddressLine2())
+				.add(customer.getTown())
+				.add(customer.getCounty())
+				.add(customer.getCountry())
+				.add(customer.getPostcode())
+				.finish();
+		return customer.getVersion() == null ? content : customer.getVersion() + "-" + content;
+	}
+
+	// ETag of a lookup response, from the ETags of the customers found, in order, and the missing refs
+	public static String of(CustomerLookupResponse response) {
+		return combine(response.getCustomers().stream().map(CustomerETag::of).toList(), response.getMissing());
+	}
+
+	public static String combine(List<String> etags, List<String> missing) {
+		Digest digest = new Digest().add(String.valueOf(etags.size()));
+		etags.forEach(digest::add);
+		digest.add(String.valueOf(missing.size()));
+		missing.forEach(digest::add);
+		return digest.finish();
+	}
+
+	// Each value is digested with its length, so values cannot run into each other, and a null value
+	// differently from an empty one
+	private static final class Digest {
+
+		private final MessageDigest sha256;
+
+		Digest() {
+			try {
+				sha256 = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is not available", e);
+			}
+		}
+
+		Digest add(String value) {
+			if (value == null) {
+				sha256.update((byte) 0);
+				return this;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			sha256.update((byte) 1);
+			sha256.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+			sha256.update(bytes);
+			return this;
+		}
+
+		String finish() {
+			return HEX.formatHex(sha256.digest(), 0, HASH_BYTES);
+		}
+	}
+
+}
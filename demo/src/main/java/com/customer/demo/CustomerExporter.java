@@ -0,0 +1,56 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.opencsv.CSVWriter;
+import com.opencsv.ICSVWriter;
+
+// Streams the whole customer table to an output stream, one keyset page at a time. Each page is
+// read in its own short transaction and written out before the next is fetched, so memory use
+// does not grow with the table and no connection is held while a slow client reads.
+@Component
+public class CustomerExporter {
+
+	private final CustomerService customerService;
+	private final ObjectWriter customerWriter;
+	private final int pageSize;
+
+	public CustomerExporter(CustomerService customerService, ObjectMapper objectMapper,
+			@Value("${customer.export.page-size:1000}") int pageSize) {
+		this.customerService = customerService;
+		this.customerWriter = objectMapper.writerFor(CustomerDTO.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		this.pageSize = pageSize;
+	}
+
+	public void export(ExportFormat format, OutputStream out) throws IOException {
+		Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		// CSV rows use the column order read by the import, without a header, so an export can be re-imported
+		ICSVWriter csvWriter = format == ExportFormat.CSV ? new CSVWriter(writer) : null;
+
+		String after = null;
+		do {
+			CustomerCursorResponse page = customerService.browseCustomers(after, pageSize);
+			for (CustomerDTO customer : page.getContent()) {
+				if (csvWriter != null) {
+					csvWriter.writeNext(CustomerMapper.toCsvRow(customer), false);
+				} else {
+					customerWriter.writeValue(writer, customer);
+					writer.write('\n');
+				}
+			}
+			writer.flush();
+			after = page.getNextCursor();
+		} while (after != null);
+	}
+
+}
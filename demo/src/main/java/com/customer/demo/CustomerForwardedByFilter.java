@@ -0,0 +1,75 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Partitioned mode: a request is only handled as forwarded by another member, and so never routed
+// again, when CustomerPartitionRouter trusts its FORWARDED_HEADER. From anyone else the header is
+// hidden from the controller, and the request is routed to the owners like any other.
+@Component
+@ConditionalOnProperty(name = "customer.partition.enabled", havingValue = "true")
+public class CustomerForwardedByFilter extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerForwardedByFilter.class);
+
+	private final CustomerPartitionRouter customerPartitionRouter;
+
+	public CustomerForwardedByFilter(CustomerPartitionRouter customerPartitionRouter) {
+		this.customerPartitionRouter = customerPartitionRouter;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String forwardedBy = request.getHeader(CustomerPartitionRouter.FORWARDED_HEADER);
+		if (forwardedBy == null || customerPartitionRouter.isForwardedByMember(forwardedBy,
+				request.getHeader(CustomerPartitionRouter.SECRET_HEADER), request.getRemoteAddr())) {
+			chain.doFilter(request, response);
+			return;
+		}
+		log.debug("Ignoring {} {} from {}, not a partition member", CustomerPartitionRouter.FORWARDED_HEADER,
+				forwardedBy, request.getRemoteAddr());
+		chain.doFilter(new WithoutForwardedBy(request), response);
+	}
+
+	private static final class WithoutForwardedBy extends HttpServletRequestWrapper {
+
+		WithoutForwardedBy(HttpServletRequest request) {
+			super(request);
+		}
+
+		@Override
+		public String getHeader(String name) {
+			return isForwardedBy(name) ? null : super.getHeader(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaders(String name) {
+			return isForwardedBy(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+		}
+
+		@Override
+		public Enumeration<String> getHeaderNames() {
+			return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+					.filter(name -> !isForwardedBy(name))
+					.toList());
+		}
+
+		private static boolean isForwardedBy(String name) {
+			return CustomerPartitionRouter.FORWARDED_HEADER.equalsIgnoreCase(name);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/customers/import")
+public class CustomerImportController {
+
+    private final CustomerImportService customerImportService;
+    private final Path importDir;
+
+    // Taken as a String: bound to a Path, "." would be resolved by Spring as a servlet context
+    // resource, the embedded server's document root, rather than the working directory
+    public CustomerImportController(CustomerImportService customerImportService,
+    		@Value("${customer.import.dir:.}") String importDir) {
+    	this.customerImportService = customerImportService;
+    	this.importDir = Path.of(importDir).toAbsolutePath().normalize();
+    }
+
+    // Endpoint to start importing a CSV file in the background, defaults to customer.import.path.
+    // Any other file must be inside customer.import.dir, since the import reads it and writes its
+    // checkpoint and rejected rows next to it. An import of a file with a checkpoint resumes from it
+    // unless restart is set.
+    @PostMapping
+	public ResponseEntity<ImportReport> startImport(@RequestParam(required = false) String path,
+			@RequestParam(defaultValue = "false") boolean restart) {
+			Path file = path == null ? customerImportService.getDefaultPath() : resolveImportFile(path);
+			return ResponseEntity.status(HttpStatus.ACCEPTED).body(customerImportService.startImport(file, !restart));
+	}
+
+    // Endpoint to follow the progress of the running or last import
+    @GetMapping("/status")
+	public ResponseEntity<ImportReport> getStatus() {
+			return ResponseEntity.of(customerImportService.getStatus());
+	}
+
+    // The file path names inside the import directory, rejecting absolute paths, .. segments and
+    // symbolic links that lead out of it
+    Path resolveImportFile(String path) {
+		Path file;
+		try {
+			file = importDir.resolve(path).normalize();
+		} catch (IllegalArgumentException e) {
+			throw new InvalidRequestException("Invalid import path: " + path);
+		}
+		if (!file.startsWith(importDir) || file.equals(importDir)) {
+			throw new InvalidRequestException("Import path must be a file in " + importDir + ": " + path);
+		}
+		try {
+			if (Files.exists(file) && !file.toRealPath().startsWith(importDir.toRealPath())) {
+				throw new InvalidRequestException("Import path must be a file in " + importDir + ": " + path);
+			}
+		} catch (IOException e) {
+			throw new InvalidRequestException("Invalid import path: " + path);
+		}
+		return file;
+	}
+}
@@ -0,0 +1,49 @@
+package com.customer.demo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Imports customer.import.path once the application has started, unless customer.import.skip-if-populated
+// is set and the database already holds customers
+@Component
+@ConditionalOnProperty(name = "customer.import.on-startup", havingValue = "true")
+public class CustomerImportRunner implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerImportRunner.class);
+
+	private final CustomerImportService customerImportService;
+	private final CustomerRepository customerRepository;
+	private final boolean skipIfPopulated;
+
+	public CustomerImportRunner(CustomerImportService customerImportService, CustomerRepository customerRepository,
+			@Value("${customer.import.skip-if-populated:false}") boolean skipIfPopulated) {
+		this.customerImportService = customerImportService;
+		this.customerRepository = customerRepository;
+		this.skipIfPopulated = skipIfPopulated;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		Path path = customerImportService.getDefaultPath();
+		if (!Files.isReadable(path)) {
+			log.warn("Skipping startup import, {} is not readable", path);
+			return;
+		}
+		// A persistent database keeps its customers across restarts, so they are not imported again,
+		// but an import that died part way is resumed from its checkpoint
+		if (skipIfPopulated && !Files.exists(ImportCheckpoint.pathFor(path)) && customerRepository.count() > 0) {
+			log.info("Skipping startup import, the database already holds customers");
+			return;
+		}
+		customerImportService.importFile(path);
+	}
+
+}
@@ -0,0 +1,681 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.system.JavaVersion;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Streams a customer CSV file into the database without going through the REST API. The import
+// runs as a pipeline: the file is split into line-aligned chunks parsed in parallel by a pool of
+// workers, and one reader puts their rows back in file order and sends each row to one of several
+// lanes by the hash of its reference. Each lane has a thread validating and mapping its rows into
+// batches and a writer committing them, and the lanes run concurrently.
+//
+// Every row of a reference goes through the same lane, in file order, so the last row of a
+// reference in the file is the one left in the table, as when the file is imported row by row.
+// Within a batch the last row wins, and the rows it overwrites are counted as superseded.
+//
+// Every customer.import.checkpoint-interval rows, and when it fails, the import saves a checkpoint:
+// the byte offset and line number before which every row has been committed or rejected. An
+// import of a file with a checkpoint resumes from it. Rejected rows are written to a side file
+// rather than only counted. See ImportCheckpoint and RejectedRowsFile.
+//
+// In partitioned mode each batch is split by the instance owning its customers: this instance's
+// share is written here, and each other owner's share is sent to its bulk endpoint by the writer,
+// so a batch still counts as done only once every owner has written its part.
+@Service
+public class CustomerImportService implements MeterBinder {
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerImportService.class);
+
+	// Number of columns in a customer row, see CustomerMapper.fromCsvRow
+	private static final int CSV_COLUMNS = 8;
+
+	// Writes of a batch that conflict with another save before the import fails
+	private static final int MAX_WRITE_ATTEMPTS = 3;
+
+	// Rows are handed from the reader to the lanes in blocks to keep queue traffic low
+	private static final int ROW_BLOCK_SIZE = 256;
+
+	// Markers telling a stage that the stage before it has finished
+	private static final LaneRows END_OF_ROWS = new LaneRows(List.of());
+	private static final CustomerBatch END_OF_BATCHES = new CustomerBatch();
+
+	private final CustomerBatchWriter customerBatchWriter;
+	private final Path defaultPath;
+	private final int batchSize;
+	private final long progressInterval;
+	private final int workers;
+	private final int writers;
+	private final int queueCapacity;
+	private final ThreadFactory threadFactory;
+	private final long checkpointInterval;
+	private final long parseChunkSize;
+	// Only present with customer.partition.enabled=true
+	private final CustomerPartitionRouter customerPartitionRouter;
+
+	private final AtomicReference<ImportProgress> current = new AtomicReference<>();
+
+	public CustomerImportService(CustomerBatchWriter customerBatchWriter,
+			@Value("${customer.import.path:customertest.csv}") Path defaultPath,
+			@Value("${customer.import.batch-size:1000}") int batchSize,
+			@Value("${customer.import.progress-interval:100000}") long progressInterval,
+			@Value("${customer.import.workers:0}") int workers,
+			@Value("${customer.import.writers:2}") int writers,
+			@Value("${customer.import.queue-capacity:64}") int queueCapacity,
+			@Value("${customer.import.virtual-threads:${spring.threads.virtual.enabled:false}}") boolean virtualThreads,
+			@Value("${customer.import.checkpoint-interval:0}") long checkpointInterval,
+			@Value("${customer.import.parse-chunk-size:4194304}") long parseChunkSize,
+			@Autowired(required = false) CustomerPartitionRouter customerPartitionRouter) {
+		this.customerBatchWriter = customerBatchWriter;
+		this.defaultPath = defaultPath;
+		this.batchSize = batchSize;
+		this.progressInterval = progressInterval;
+		this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+		this.writers = writers;
+		this.queueCapacity = queueCapacity;
+		this.threadFactory = threadFactory(virtualThreads);
+		this.checkpointInterval = checkpointInterval;
+		this.parseChunkSize = parseChunkSize;
+		this.customerPartitionRouter = customerPartitionRouter;
+	}
+
+	// Writers spend most of their time blocked on JDBC, which virtual threads make cheap, so many
+	// more writers can be configured. Virtual threads need Java 21; older runtimes fall back.
+	private static ThreadFactory threadFactory(boolean virtualThreads) {
+		if (virtualThreads && JavaVersion.getJavaVersion().isEqualOrNewerThan(JavaVersion.TWENTY_ONE)) {
+			return new VirtualThreadTaskExecutor("customer-import-").getVirtualThreadFactory();
+		}
+		if (virtualThreads) {
+			log.warn("Virtual threads need Java 21 or later, the import uses platform threads");
+		}
+		CustomizableThreadFactory platformThreads = new CustomizableThreadFactory("customer-import-");
+		platformThreads.setDaemon(true);
+		return platformThreads;
+	}
+
+	public Path getDefaultPath() {
+		return defaultPath;
+	}
+
+	// Run an import on the calling thread and return its final report, resuming from the file's
+	// checkpoint if it has one
+	public ImportReport importFile(Path path) {
+		return importFile(path, true);
+	}
+
+	public ImportReport importFile(Path path, boolean resume) {
+		ImportProgress progress = begin(path);
+		run(path, resume, progress);
+		return progress.toReport();
+	}
+
+	// Start an import on a background thread and return its progress straight away
+	public ImportReport startImport(Path path) {
+		return startImport(path, true);
+	}
+
+	public ImportReport startImport(Path path, boolean resume) {
+		ImportProgress progress = begin(path);
+		threadFactory.newThread(() -> run(path, resume, progress)).start();
+		return progress.toReport();
+	}
+
+	// Report of the running import, or of the last one to finish
+	public Optional<ImportReport> getStatus() {
+		return Optional.ofNullable(current.get()).map(ImportProgress::toReport);
+	}
+
+	// Row counts and rate of the running import, or of the last one to finish
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		importGauge(registry, "read", ImportReport::getRowsRead);
+		importGauge(registry, "inserted", ImportReport::getInserted);
+		importGauge(registry, "updated", ImportReport::getUpdated);
+		importGauge(registry, "unchanged", ImportReport::getUnchanged);
+		importGauge(registry, "rejected", ImportReport::getRejected);
+		importGauge(registry, "superseded", ImportReport::getSuperseded);
+		Gauge.builder("customer.import.rows.per.second", this,
+				service -> service.getStatus().map(ImportReport::getRowsPerSecond).orElse(0d))
+				.register(registry);
+		Gauge.builder("customer.import.running", this,
+				service -> service.getStatus().filter(report -> report.getStatus() == ImportProgress.Status.RUNNING).isPresent() ? 1 : 0)
+				.register(registry);
+	}
+
+	private void importGauge(MeterRegistry registry, String outcome, ToLongFunction<ImportReport> count) {
+		Gauge.builder("customer.import.rows", this,
+				service -> service.getStatus().map(report -> (double) count.applyAsLong(report)).orElse(0d))
+				.tag("outcome", outcome)
+				.register(registry);
+	}
+
+	private ImportProgress begin(Path path) {
+		ImportProgress progress = new ImportProgress(path);
+		ImportProgress previous = current.get();
+		if ((previous != null && previous.isRunning()) || !current.compareAndSet(previous, progress)) {
+			throw new ImportInProgressException("An import is already running");
+		}
+		return progress;
+	}
+
+	private void run(Path path, boolean resume, ImportProgress progress) {
+		Checkpointer checkpointer = null;
+		boolean completed = false;
+		try {
+			ImportCheckpoint start = ImportCheckpoint.start(path);
+			// Without checkpoints, as with an in-memory database, every import starts from the top
+			if (resume && checkpointInterval > 0) {
+				Optional<ImportCheckpoint> saved = ImportCheckpoint.load(path);
+				if (saved.isPresent()) {
+					start = saved.get();
+					progress.resumedFrom(start.linesRead() + 1);
+				}
+			} else {
+				ImportCheckpoint.delete(path);
+			}
+			checkpointer = new Checkpointer(path, start, checkpointInterval,
+					new RejectedRowsFile(path, start.linesRead() > 0));
+			progress.rejectedRowsFile(checkpointer.rejectedRows.getPath());
+
+			log.info("Importing customers from {} line {} with {} parsing workers and {} lanes", path,
+					start.linesRead() + 1, workers, writers);
+			runPipeline(path, start, checkpointer, progress);
+
+			// Nothing is left to resume
+			ImportCheckpoint.delete(path);
+			completed = true;
+			progress.completed();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			progress.failed(e);
+		} catch (Exception e) {
+			log.error("Import of {} failed", path, e);
+			progress.failed(e);
+		} finally {
+			if (checkpointer != null) {
+				checkpointer.close(!completed);
+			}
+		}
+
+		ImportReport report = progress.toReport();
+		ImportReport.StageTimings timings = report.getStages();
+		log.info("Import of {} finished: {} rows read, {} inserted, {} updated, {} unchanged, {} rejected, {} superseded "
+				+ "in {} ms (parse {} ms, reader blocked {} ms, map {} ms, write {} ms, writers idle {} ms)",
+				path, report.getRowsRead(), report.getInserted(), report.getUpdated(), report.getUnchanged(), report.getRejected(),
+				report.getSuperseded(), report.getElapsedMillis(), timings.getParseMillis(), timings.getReaderBlockedMillis(),
+				timings.getMapMillis(), timings.getWriteMillis(), timings.getWriterIdleMillis());
+	}
+
+	private void runPipeline(Path path, ImportCheckpoint start, Checkpointer checkpointer, ImportProgress progress)
+			throws Exception {
+		// Bounded queues between the stages give backpressure: a slow stage blocks the one
+		// before it, so at most queueCapacity blocks and batches are held in memory at once
+		int laneCapacity = Math.max(1, queueCapacity / writers);
+		List<BlockingQueue<LaneRows>> rows = new ArrayList<>();
+		List<BlockingQueue<CustomerBatch>> batches = new ArrayList<>();
+		for (int lane = 0; lane < writers; lane++) {
+			rows.add(new ArrayBlockingQueue<>(laneCapacity));
+			batches.add(new ArrayBlockingQueue<>(laneCapacity));
+		}
+
+		ExecutorService stages = Executors.newFixedThreadPool(2 * writers, threadFactory);
+		try {
+			AtomicReference<Throwable> writeFailure = new AtomicReference<>();
+			List<Future<?>> mappers = new ArrayList<>();
+			List<Future<?>> batchWriters = new ArrayList<>();
+			for (int lane = 0; lane < writers; lane++) {
+				BlockingQueue<LaneRows> laneRows = rows.get(lane);
+				BlockingQueue<CustomerBatch> laneBatches = batches.get(lane);
+				mappers.add(stages.submit(() -> map(laneRows, laneBatches, checkpointer, progress)));
+				batchWriters.add(stages.submit(() -> write(laneBatches, checkpointer, progress, writeFailure)));
+			}
+
+			// The reader runs on the calling thread and always releases the lanes, even if it fails
+			Exception failure = null;
+			try {
+				read(path, start, rows, checkpointer, progress, writeFailure);
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+			} finally {
+				for (BlockingQueue<LaneRows> laneRows : rows) {
+					laneRows.put(END_OF_ROWS);
+				}
+			}
+
+			await(mappers);
+			for (BlockingQueue<CustomerBatch> laneBatches : batches) {
+				laneBatches.put(END_OF_BATCHES);
+			}
+			await(batchWriters);
+
+			if (writeFailure.get() instanceof RuntimeException runtime) {
+				throw runtime;
+			}
+			if (writeFailure.get() != null) {
+				throw new ExecutionException(writeFailure.get());
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			stages.shutdownNow();
+		}
+	}
+
+	// Stage 1: parse the file into blocks of rows, from the checkpoint onwards. Chunks of the file
+	// are parsed by a pool of parsers, at most one more than there are parsers ahead of the reader.
+	// Stops early once a write has failed.
+	private void read(Path path, ImportCheckpoint start, List<BlockingQueue<LaneRows>> rows, Checkpointer checkpointer,
+			ImportProgress progress, AtomicReference<Throwable> writeFailure) throws IOException, InterruptedException {
+		List<Long> chunkStarts = CustomerCsvReader.split(path, start.offset(), parseChunkSize);
+		ExecutorService parsers = Executors.newFixedThreadPool(Math.min(workers, chunkStarts.size()), threadFactory);
+		try {
+			Deque<Future<ParsedChunk>> parsing = new ArrayDeque<>();
+			int submitted = 0;
+			long offset = start.offset();
+			long linesRead = start.linesRead();
+			RowBlock block = new RowBlock();
+			long started = System.nanoTime();
+
+			for (int chunk = 0; chunk < chunkStarts.size() && writeFailure.get() == null; chunk++) {
+				while (submitted < chunkStarts.size() && parsing.size() <= workers) {
+					long chunkStart = chunkStarts.get(submitted);
+					long chunkEnd = chunkEnd(chunkStarts, submitted);
+					// A record running on past the next chunk is left for the reader to parse
+					long limit = chunkEnd == Long.MAX_VALUE ? Long.MAX_VALUE : chunkEnd + parseChunkSize;
+					parsing.addLast(parsers.submit(() -> parse(path, chunkStart, chunkEnd, limit)));
+					submitted++;
+				}
+				ParsedChunk parsed = await(parsing.pollFirst());
+				if (parsed.start() != offset) {
+					// The chunk began inside a record, parse it again from where that record ended
+					parsed = parse(path, offset, chunkEnd(chunkStarts, chunk), Long.MAX_VALUE);
+				}
+
+				for (CustomerCsvReader.Record record : parsed.records()) {
+					long lineNumber = linesRead + record.lineNumber();
+					if (record.fields() == null) {
+						checkpointer.reject(lineNumber, "malformed CSV", new String[] { record.text() }, progress);
+						continue;
+					}
+
+					long rowsRead = progress.rowRead();
+					if (rowsRead % progressInterval == 0) {
+						log.info("Imported {} rows ({} rows/sec)", rowsRead, Math.round(progress.rowsPerSecond()));
+					}
+
+					block.rows.add(new CsvRow(lineNumber, record.fields(), block));
+					if (block.rows.size() == ROW_BLOCK_SIZE) {
+						block.end(record.endOffset(), linesRead + record.linesRead());
+						started = handOff(rows, block, checkpointer, started, progress);
+						block = new RowBlock();
+					}
+				}
+				offset = parsed.endOffset();
+				linesRead += parsed.linesRead();
+			}
+
+			if (!block.rows.isEmpty()) {
+				block.end(offset, linesRead);
+				handOff(rows, block, checkpointer, started, progress);
+			} else {
+				progress.parsed(System.nanoTime() - started);
+			}
+		} finally {
+			parsers.shutdownNow();
+		}
+	}
+
+	private static long chunkEnd(List<Long> chunkStarts, int chunk) {
+		return chunk + 1 < chunkStarts.size() ? chunkStarts.get(chunk + 1) : Long.MAX_VALUE;
+	}
+
+	// Parse the records starting between offset and end. Line numbers are counted from the chunk
+	// start, as the lines before it are only known once the chunks before it are parsed.
+	private static ParsedChunk parse(Path path, long offset, long end, long limit) throws IOException {
+		try (CustomerCsvReader reader = new CustomerCsvReader(path, offset, 0, end, limit, CSV_COLUMNS)) {
+			List<CustomerCsvReader.Record> records = new ArrayList<>();
+			CustomerCsvReader.Record record;
+			while ((record = reader.next()) != null) {
+				records.add(record);
+			}
+			return new ParsedChunk(offset, records, reader.getOffset(), reader.getLinesRead());
+		}
+	}
+
+	private static ParsedChunk await(Future<ParsedChunk> chunk) throws IOException, InterruptedException {
+		try {
+			return chunk.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException io) {
+				throw io;
+			}
+			if (e.getCause() instanceof RuntimeException runtime) {
+				throw runtime;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	// Split a block by lane, keeping file order within each lane. A row without a reference is only
+	// rejected, so any lane will do.
+	private long handOff(List<BlockingQueue<LaneRows>> rows, RowBlock block, Checkpointer checkpointer, long started,
+			ImportProgress progress) throws InterruptedException {
+		List<List<CsvRow>> lanes = new ArrayList<>(rows.size());
+		for (int lane = 0; lane < rows.size(); lane++) {
+			lanes.add(new ArrayList<>());
+		}
+		for (CsvRow row : block.rows) {
+			String ref = row.fields().length > 0 ? row.fields()[0] : "";
+			lanes.get(Math.floorMod(ref.hashCode(), lanes.size())).add(row);
+		}
+		// The rows are now held by the lanes, the block only counts them down
+		block.rows.clear();
+
+		long parsed = System.nanoTime();
+		progress.parsed(parsed - started);
+		checkpointer.started(block);
+		for (int lane = 0; lane < lanes.size(); lane++) {
+			if (!lanes.get(lane).isEmpty()) {
+				rows.get(lane).put(new LaneRows(lanes.get(lane)));
+			}
+		}
+		long handedOff = System.nanoTime();
+		progress.readerBlocked(handedOff - parsed);
+		return handedOff;
+	}
+
+	// Stage 2: validate the rows of one lane and map them to batches of entities, in file order
+	private void map(BlockingQueue<LaneRows> rows, BlockingQueue<CustomerBatch> batches, Checkpointer checkpointer,
+			ImportProgress progress) {
+		CustomerBatch batch = new CustomerBatch();
+		try {
+			LaneRows laneRows;
+			while ((laneRows = rows.take()) != END_OF_ROWS) {
+				long started = System.nanoTime();
+				for (CsvRow row : laneRows.rows()) {
+					String[] fields = row.fields();
+					if (fields.length < CSV_COLUMNS) {
+						checkpointer.reject(row.lineNumber(), "too few columns", fields, progress);
+						checkpointer.done(row.block(), 1);
+						continue;
+					}
+					if (fields[0].isBlank()) {
+						checkpointer.reject(row.lineNumber(), "missing customerRef", fields, progress);
+						checkpointer.done(row.block(), 1);
+						continue;
+					}
+
+					// A ref repeated within a batch overwrites the earlier row, last one wins
+					Customer customer = CustomerMapper.fromCsvRow(fields);
+					if (batch.customers().put(customer.getCustomerRef(), customer) != null) {
+						progress.superseded();
+					}
+					batch.lines().put(customer.getCustomerRef(), row.lineNumber());
+					batch.blocks().merge(row.block(), 1, Integer::sum);
+
+					if (batch.customers().size() >= batchSize) {
+						progress.mapped(System.nanoTime() - started);
+						batches.put(batch);
+						batch = new CustomerBatch();
+						started = System.nanoTime();
+					}
+				}
+				progress.mapped(System.nanoTime() - started);
+			}
+
+			if (!batch.customers().isEmpty()) {
+				batches.put(batch);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Stage 3: write the batches of one lane in order, the lanes committing concurrently. A failure
+	// other than rows the database refuses, such as a lost connection, fails the import: the batches
+	// still queued are taken without writing them, so the checkpoint stays before them, for a resume
+	// to write them.
+	private void write(BlockingQueue<CustomerBatch> batches, Checkpointer checkpointer, ImportProgress progress,
+			AtomicReference<Throwable> writeFailure) {
+		try {
+			while (true) {
+				long waiting = System.nanoTime();
+				CustomerBatch batch = batches.take();
+				long started = System.nanoTime();
+				progress.writerIdle(started - waiting);
+				if (batch == END_OF_BATCHES) {
+					return;
+				}
+				if (writeFailure.get() != null) {
+					continue;
+				}
+				try {
+					writeBatch(batch.customers(), batch.lines(), checkpointer, progress);
+				} catch (RuntimeException | Error e) {
+					writeFailure.compareAndSet(null, e);
+					continue;
+				}
+				progress.wrote(System.nanoTime() - started);
+				batch.blocks().forEach(checkpointer::done);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(List<Future<?>> futures) throws InterruptedException, ExecutionException {
+		for (Future<?> future : futures) {
+			future.get();
+		}
+	}
+
+	private void writeBatch(Map<String, Customer> batch, Map<String, Long> batchLines, Checkpointer checkpointer,
+			ImportProgress progress) {
+		if (customerPartitionRouter == null) {
+			writeBatch(batch.values(), customerBatchWriter::write, batchLines, checkpointer, progress);
+			return;
+		}
+		customerPartitionRouter.getRing().partition(batch.values(), Customer::getCustomerRef).forEach((owner, customers) ->
+				writeBatch(customers, customerPartitionRouter.isSelf(owner) ? customerBatchWriter::write
+						: part -> customerPartitionRouter.forwardCustomers(owner, part), batchLines, checkpointer, progress));
+	}
+
+	private void writeBatch(Collection<Customer> batch, Function<Collection<Customer>, BulkSaveResult> writer,
+			Map<String, Long> batchLines, Checkpointer checkpointer, ImportProgress progress) {
+		try {
+			progress.written(write(writer, batch));
+		} catch (RuntimeException batchFailure) {
+			if (!isRefused(batchFailure)) {
+				throw batchFailure;
+			}
+			// Retry row by row so that one bad row only rejects itself, not the whole batch
+			for (Customer customer : batch) {
+				try {
+					progress.written(write(writer, List.of(customer)));
+				} catch (RuntimeException rowFailure) {
+					if (!isRefused(rowFailure)) {
+						throw rowFailure;
+					}
+					// The mapped row, as it would have been written
+					checkpointer.reject(batchLines.get(customer.getCustomerRef()), "write failed: " + rowFailure.getMessage(),
+							CustomerMapper.toCsvRow(CustomerMapper.toDto(customer)), progress);
+				}
+			}
+		}
+	}
+
+	// A save or bulk write of the same customer racing the import makes the write fail on its version.
+	// The import overwrites the customer anyway, so the write is repeated against the new version.
+	private static BulkSaveResult write(Function<Collection<Customer>, BulkSaveResult> writer,
+			Collection<Customer> customers) {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return writer.apply(customers);
+			} catch (RuntimeException e) {
+				if (attempt == MAX_WRITE_ATTEMPTS || !CustomerBatchWriter.isConflict(e)) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	// Rows the database refuses, here or on the member owning them, which answers 400 for them.
+	// Anything else, an outage or an owner that cannot be reached, would fail every row after it too.
+	private static boolean isRefused(RuntimeException failure) {
+		return failure instanceof InvalidRequestException || CustomerBatchWriter.isRefused(failure);
+	}
+
+	// Records parsed from one chunk, with line numbers and lines read counted from its start
+	private record ParsedChunk(long start, List<CustomerCsvReader.Record> records, long endOffset, long linesRead) {
+	}
+
+	private record CsvRow(long lineNumber, String[] fields, RowBlock block) {
+	}
+
+	// Rows of one block sent to one lane
+	private record LaneRows(List<CsvRow> rows) {
+	}
+
+	// Rows read together by the reader, and the position in the file just after them. The checkpoint
+	// moves past a block once every lane has written or rejected its rows.
+	private static final class RowBlock {
+
+		private final List<CsvRow> rows = new ArrayList<>(ROW_BLOCK_SIZE);
+		private final AtomicInteger pending = new AtomicInteger();
+		private int rowCount;
+		private long endOffset;
+		private long linesRead;
+
+		void end(long offset, long lines) {
+			rowCount = rows.size();
+			pending.set(rowCount);
+			endOffset = offset;
+			linesRead = lines;
+		}
+	}
+
+	// Rows of each block a batch holds, counted down once the batch is written
+	private record CustomerBatch(Map<String, Customer> customers, Map<String, Long> lines, Map<RowBlock, Integer> blocks) {
+		CustomerBatch() {
+			this(new LinkedHashMap<>(), new LinkedHashMap<>(), new IdentityHashMap<>());
+		}
+	}
+
+	// Tracks which blocks are finished. Batches commit out of order, so the checkpoint is the end
+	// of the last block before which every block is finished: every row of a finished block has
+	// been written or rejected. Rows after the checkpoint may be written again on resume, which
+	// the upsert and change detection make harmless.
+	//
+	// Periodic checkpoints are saved one interval late, so that a database which flushes commits
+	// with a delay (H2's WRITE_DELAY) has made the rows they cover durable even if the process is
+	// killed. A failed import is still running and saves the latest one.
+	private static final class Checkpointer {
+
+		private final Path path;
+		private final long interval;
+		private final RejectedRowsFile rejectedRows;
+		private final Deque<RowBlock> inFlight = new ArrayDeque<>();
+		private ImportCheckpoint checkpoint;
+		private ImportCheckpoint candidate;
+		private ImportCheckpoint saved;
+		private long rowsSinceSave;
+
+		Checkpointer(Path path, ImportCheckpoint start, long interval, RejectedRowsFile rejectedRows) {
+			this.path = path;
+			this.checkpoint = start;
+			this.candidate = start;
+			this.saved = start;
+			this.interval = interval;
+			this.rejectedRows = rejectedRows;
+		}
+
+		synchronized void started(RowBlock block) {
+			inFlight.addLast(block);
+		}
+
+		void done(RowBlock block, int rows) {
+			if (block.pending.addAndGet(-rows) == 0) {
+				advance();
+			}
+		}
+
+		void reject(long lineNumber, String reason, String[] fields, ImportProgress progress) {
+			progress.rejected(lineNumber);
+			rejectedRows.write(lineNumber, reason, fields);
+		}
+
+		private synchronized void advance() {
+			while (!inFlight.isEmpty() && inFlight.peekFirst().pending.get() == 0) {
+				RowBlock block = inFlight.pollFirst();
+				checkpoint = checkpoint.at(block.endOffset, block.linesRead);
+				rowsSinceSave += block.rowCount;
+			}
+			if (interval > 0 && rowsSinceSave >= interval) {
+				save(candidate);
+				candidate = checkpoint;
+				rowsSinceSave = 0;
+			}
+		}
+
+		private synchronized void save(ImportCheckpoint next) {
+			if (next.equals(saved)) {
+				return;
+			}
+			try {
+				// Rejected rows before the checkpoint must be on disk before it is
+				rejectedRows.flush();
+				next.save(path);
+				saved = next;
+			} catch (IOException e) {
+				log.warn("Could not save import checkpoint {}", ImportCheckpoint.pathFor(path), e);
+			}
+		}
+
+		// Save how far a failed import got, so it resumes from there
+		void close(boolean failed) {
+			if (failed && interval > 0) {
+				save(checkpoint);
+			}
+			try {
+				rejectedRows.close();
+			} catch (IOException e) {
+				log.warn("Could not close {}", rejectedRows.getPath(), e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.customer.demo;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+// With spring.main.lazy-initialization=true (the "startup" profile) beans are only created when first
+// used. The beans serving customer reads and saves are still created on startup, with the repository
+// and JPA behind them, so the first request does not pay for them. Lifecycle beans are started on
+// refresh in any case. Has no effect without lazy initialization.
+@Component
+public class CustomerLazyInitExcludeFilter implements LazyInitializationExcludeFilter {
+
+	private static final Class<?>[] HOT_TYPES = { CustomerController.class, CustomerService.class,
+			CustomerCache.class, SmartLifecycle.class };
+
+	@Override
+	public boolean isExcluded(String beanName, BeanDefinition beanDefinition, Class<?> beanType) {
+		if (beanType == null) {
+			return false;
+		}
+		for (Class<?> type : HOT_TYPES) {
+			if (type.isAssignableFrom(beanType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
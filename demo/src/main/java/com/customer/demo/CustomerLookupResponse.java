@@ -0,0 +1,14 @@
+package com.customer.demo;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Result of a multi-get: the customers found and the refs that do not exist
+@Getter
+@RequiredArgsConstructor
+public class CustomerLookupResponse {
+    private final List<CustomerDTO> customers;
+    private final List<String> missing;
+}
@@ -0,0 +1,132 @@
+package com.customer.demo;
+
+import java.util.Objects;
+
+// Maps between the Customer entity and its transfer objects. The mappings call the all-args
+// constructors directly rather than the Lombok builders, so each mapping allocates only the target
+// object, and repeated values such as towns and countries are shared through a StringPool.
+public final class CustomerMapper {
+
+	// Distinct towns, counties and countries kept as shared instances
+	private static final StringPool COMMON_VALUES = new StringPool(10_000);
+
+	private CustomerMapper() {
+	}
+
+	// Map a CustomerDTO to a new Customer entity
+	public static Customer toEntity(CustomerDTO customerDTO) {
+		return new Customer(
+				customerDTO.getCustomerRef(),
+				trim(customerDTO.getCustomerName()),
+				customerDTO.getAddressLine1(),
+				customerDTO.getAddressLine2(),
+				common(trim(customerDTO.getTown())),
+				common(customerDTO.getCounty()),
+				common(customerDTO.getCountry()),
+				normalizePostcode(customerDTO.getPostcode()),
+				customerDTO.getVersion());
+	}
+
+	// Map a Customer entity to a CustomerDTO
+	public static CustomerDTO toDto(Customer customer) {
+		return new CustomerDTO(
+				customer.getCustomerRef(),
+				customer.getCustomerName(),
+				customer.getAddressLine1(),
+				customer.getAddressLine2(),
+				common(customer.getTown()),
+				common(customer.getCounty()),
+				common(customer.getCountry()),
+				customer.getPostcode(),
+				customer.getVersion());
+	}
+
+	// Map a CSV row to a new Customer entity. Columns are in the order of customertest.csv:
+	// ref, name, address line 1, address line 2, town, county, country, postcode. Rows carry no
+	// version, imports overwrite the stored customer.
+	public static Customer fromCsvRow(String[] row) {
+		return new Customer(
+				row[0],
+				trim(row[1]),
+				row[2],
+				row[3],
+				common(trim(row[4])),
+				common(row[5]),
+				common(row[6]),
+				normalizePostcode(row[7]),
+				null);
+	}
+
+	// True when both customers hold the same values in every non-key field, so writing one over
+	// the other would change nothing. The version is not content.
+	public static boolean sameContent(Customer a, Customer b) {
+		return Objects.equals(a.getCustomerName(), b.getCustomerName())
+				&& Objects.equals(a.getAddressLine1(), b.getAddressLine1())
+				&& Objects.equals(a.getAddressLine2(), b.getAddressLine2())
+				&& Objects.equals(a.getTown(), b.getTown())
+				&& Objects.equals(a.getCounty(), b.getCounty())
+				&& Objects.equals(a.getCountry(), b.getCountry())
+				&& Objects.equals(a.getPostcode(), b.getPostcode());
+	}
+
+	// Map a CustomerDTO to a CSV row, in the same column order as fromCsvRow, without the version
+	public static String[] toCsvRow(CustomerDTO customerDTO) {
+		return new String[] {
+				customerDTO.getCustomerRef(),
+				customerDTO.getCustomerName(),
+				customerDTO.getAddressLine1(),
+				customerDTO.getAddressLine2(),
+				customerDTO.getTown(),
+				customerDTO.getCounty(),
+				customerDTO.getCountry(),
+				customerDTO.getPostcode() };
+	}
+
+	// Copy every non-key field of source onto target, e.g. onto a managed entity, whose version
+	// Hibernate then increments
+	public static void copyInto(Customer source, Customer target) {
+		target.setCustomerName(source.getCustomerName());
+		target.setAddressLine1(source.getAddressLine1());
+		target.setAddressLine2(source.getAddressLine2());
+		target.setTown(source.getTown());
+		target.setCounty(source.getCounty());
+		target.setCountry(source.getCountry());
+		target.setPostcode(source.getPostcode());
+	}
+
+	// Postcodes are stored upper case without whitespace, so "s41 0hj" and "S410HJ" hit the same index entry
+	public static String normalizePostcode(String postcode) {
+		if (postcode == null || isNormalizedPostcode(postcode)) {
+			return postcode;
+		}
+		StringBuilder normalized = new StringBuilder(postcode.length());
+		for (int i = 0; i < postcode.length(); i++) {
+			char c = postcode.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				normalized.append(Character.toUpperCase(c));
+			}
+		}
+		return normalized.toString();
+	}
+
+	// Most postcodes arrive normalized already and are returned as they are, without a copy
+	private static boolean isNormalizedPostcode(String postcode) {
+		for (int i = 0; i < postcode.length(); i++) {
+			char c = postcode.charAt(i);
+			if (Character.isWhitespace(c) || Character.toUpperCase(c) != c) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String common(String value) {
+		return COMMON_VALUES.canonical(value);
+	}
+
+	// Searched fields are stored without surrounding whitespace so exact and prefix matches work
+	public static String trim(String value) {
+		return value == null ? null : value.trim();
+	}
+
+}
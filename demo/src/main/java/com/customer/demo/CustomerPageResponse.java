@@ -0,0 +1,17 @@
+package com.customer.demo;
+
+import java.util.List;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// One numbered page of customers
+@Getter
+@RequiredArgsConstructor
+public class CustomerPageResponse {
+    private final List<CustomerDTO> content;
+    private final int page;
+    private final int size;
+    private final long totalElements;
+    private final int totalPages;
+}
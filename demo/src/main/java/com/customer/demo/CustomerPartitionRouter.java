@@ -0,0 +1,360 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Partitioned mode: each of customer.partition.members owns the customerRefs that hash to it on a
+// PartitionRing, and keeps them in its own database. CustomerController asks the router first: a
+// request for a ref owned by another instance is forwarded to it over HTTP, and a request for many
+// refs is split by owner, the parts sent in parallel and the results merged. The CSV import hands
+// each owner its share of every batch in the same way.
+//
+// Forwarded requests carry FORWARDED_HEADER and are always handled locally by the receiver, so
+// instances whose member lists disagree cannot forward a request in a loop. The receiver only
+// trusts the header from another member (CustomerForwardedByFilter): with customer.partition.secret
+// set, the request must carry it in SECRET_HEADER, otherwise it must come from an address of the
+// member it names. An error answered by
+// the owner is raised again as the exception it was answered for, or as an IllegalStateException
+// for a server error; an owner that cannot be reached is a PartitionUnavailableException.
+@Component
+@ConditionalOnProperty(name = "customer.partition.enabled", havingValue = "true")
+public class CustomerPartitionRouter {
+
+	// Set on forwarded requests, to the base URL of the instance that forwarded them
+	public static final String FORWARDED_HEADER = "X-Customer-Forwarded-By";
+	// Set on forwarded requests to customer.partition.secret, when there is one
+	public static final String SECRET_HEADER = "X-Customer-Partition-Secret";
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerPartitionRouter.class);
+
+	private static final String API = "/api/customers";
+
+	private final CustomerService customerService;
+	private final CustomerBulkService customerBulkService;
+	private final ObjectMapper objectMapper;
+	private final ObjectReader customerReader;
+	private final MeterRegistry meterRegistry;
+	private final PartitionRing ring;
+	private final String self;
+	private final Duration timeout;
+	private final int chunkSize;
+	private final String secret;
+	private final Map<String, Set<InetAddress>> memberAddresses = new HashMap<>();
+	private final HttpClient client;
+
+	public CustomerPartitionRouter(CustomerService customerService, CustomerBulkService customerBulkService,
+			ObjectMapper objectMapper, MeterRegistry meterRegistry,
+			@Value("${customer.partition.self}") String self,
+			@Value("${customer.partition.members}") List<String> members,
+			@Value("${customer.partition.virtual-nodes:256}") int virtualNodes,
+			@Value("${customer.partition.timeout:10s}") Duration timeout,
+			@Value("${customer.bulk.chunk-size:500}") int chunkSize,
+			@Value("${customer.partition.secret:}") String secret) {
+		this.customerService = customerService;
+		this.customerBulkService = customerBulkService;
+		this.objectMapper = objectMapper;
+		this.customerReader = objectMapper.readerFor(CustomerDTO.class);
+		this.meterRegistry = meterRegistry;
+		this.self = baseUrl(self);
+		this.ring = new PartitionRing(members.stream().map(CustomerPartitionRouter::baseUrl).toList(), virtualNodes);
+		if (!ring.getMembers().contains(this.self)) {
+			throw new IllegalStateException("customer.partition.self " + this.self + " is not one of customer.partition.members "
+					+ ring.getMembers());
+		}
+		this.timeout = timeout;
+		this.chunkSize = chunkSize;
+		this.secret = secret;
+		if (secret.isEmpty()) {
+			for (String member : ring.getMembers()) {
+				memberAddresses.put(member, resolve(member));
+			}
+		}
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(timeout)
+				.build();
+	}
+
+	public PartitionRing getRing() {
+		return ring;
+	}
+
+	public boolean isSelf(String member) {
+		return self.equals(member);
+	}
+
+	// Whether a request naming forwardedBy in FORWARDED_HEADER was forwarded by that member: it is
+	// another member, and the request carries the shared secret or, without one, comes from one of
+	// the member's addresses
+	public boolean isForwardedByMember(String forwardedBy, String requestSecret, String remoteAddress) {
+		String member = baseUrl(forwardedBy);
+		if (!ring.getMembers().contains(member) || isSelf(member)) {
+			return false;
+		}
+		if (!secret.isEmpty()) {
+			return requestSecret != null && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+					requestSecret.getBytes(StandardCharsets.UTF_8));
+		}
+		try {
+			// The servlet remote address is a literal, so this does not look anything up
+			return remoteAddress != null && memberAddresses.get(member).contains(InetAddress.getByName(remoteAddress));
+		} catch (UnknownHostException e) {
+			return false;
+		}
+	}
+
+	// The member owning the ref. A missing ref is handled locally, where it is rejected.
+	public String ownerOf(String customerRef) {
+		return customerRef == null || customerRef.isBlank() ? self : ring.ownerOf(customerRef);
+	}
+
+	// Forward a save to the ref's owner and answer as it did, 200 or 202 once written or accepted
+	public ResponseEntity<String> saveCustomer(String owner, CustomerDTO customerDTO) {
+		HttpResponse<byte[]> response = send(owner, "save", request(owner, "/saveCustomer")
+				.header(HttpHeaders.CONTENT_TYPE, "application/json")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(json(customerDTO))));
+		return ResponseEntity.status(response.statusCode()).body(new String(response.body(), StandardCharsets.UTF_8));
+	}
+
+	// Forward a read to the ref's owner with the client's If-None-Match, and answer with its ETag
+	public ResponseEntity<CustomerDTO> getCustomer(String owner, String customerRef, String ifNoneMatch) {
+		HttpRequest.Builder request = request(owner, "/" + URLEncoder.encode(customerRef, StandardCharsets.UTF_8).replace("+", "%20"))
+				.GET();
+		if (ifNoneMatch != null) {
+			request.header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+		}
+		HttpResponse<byte[]> response = send(owner, "get", request);
+		String etag = response.headers().firstValue(HttpHeaders.ETAG).orElse(null);
+		if (response.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		return ResponseEntity.ok().eTag(etag).body(read(response, CustomerDTO.class));
+	}
+
+	// Look the refs up on their owners, in parallel, and merge the results in the order asked for
+	public CustomerLookupResponse lookupCustomers(Collection<String> customerRefs) {
+		Set<String> refs = new LinkedHashSet<>(customerRefs);
+		refs.removeIf(ref -> ref == null || ref.isBlank());
+
+		Map<String, CompletableFuture<HttpResponse<byte[]>>> remote = new LinkedHashMap<>();
+		List<String> local = List.of();
+		for (Map.Entry<String, List<String>> part : ring.partition(refs, ref -> ref).entrySet()) {
+			if (isSelf(part.getKey())) {
+				local = part.getValue();
+			} else {
+				remote.put(part.getKey(), sendAsync(part.getKey(), "lookup", request(part.getKey(), "/lookup")
+						.header(HttpHeaders.CONTENT_TYPE, "application/json")
+						.POST(HttpRequest.BodyPublishers.ofByteArray(json(part.getValue())))));
+			}
+		}
+
+		Map<String, CustomerDTO> found = new HashMap<>();
+		Set<String> missing = new HashSet<>();
+		if (!local.isEmpty()) {
+			CustomerLookupResponse response = customerService.lookupCustomers(local);
+			response.getCustomers().forEach(customer -> found.put(customer.getCustomerRef(), customer));
+			missing.addAll(response.getMissing());
+		}
+		remote.forEach((owner, pending) -> {
+			LookupPart part = read(await(owner, pending), LookupPart.class);
+			part.customers().forEach(customer -> found.put(customer.getCustomerRef(), customer));
+			missing.addAll(part.missing());
+		});
+
+		List<CustomerDTO> customers = new ArrayList<>(found.size());
+		List<String> notFound = new ArrayList<>();
+		for (String ref : refs) {
+			CustomerDTO customer = found.get(ref);
+			if (customer != null) {
+				customers.add(customer);
+			} else if (missing.contains(ref)) {
+				notFound.add(ref);
+			}
+		}
+		return new CustomerLookupResponse(customers, notFound);
+	}
+
+	// Save customers read from a JSON array or an NDJSON stream, each sent on to its owner in chunks
+	// of customer.bulk.chunk-size as they are read. As without partitioning, chunks written before a
+	// failure stay written.
+	public BulkSaveResult saveCustomers(InputStream body) throws IOException {
+		BulkSaveResult result = new BulkSaveResult();
+		Map<String, List<CustomerDTO>> chunks = new HashMap<>();
+		try (MappingIterator<CustomerDTO> customers = customerReader.readValues(body)) {
+			while (customers.hasNext()) {
+				CustomerDTO customerDTO = customers.next();
+				// A customer without a ref is rejected locally by CustomerBulkService
+				String owner = customerDTO == null ? self : ownerOf(customerDTO.getCustomerRef());
+				List<CustomerDTO> chunk = chunks.computeIfAbsent(owner, member -> new ArrayList<>());
+				chunk.add(customerDTO);
+				if (chunk.size() >= chunkSize) {
+					result.add(saveChunk(owner, chunk));
+					chunks.remove(owner);
+				}
+			}
+		}
+		for (Map.Entry<String, List<CustomerDTO>> chunk : chunks.entrySet()) {
+			result.add(saveChunk(chunk.getKey(), chunk.getValue()));
+		}
+		return result;
+	}
+
+	// Forward a batch of customers to their owner's bulk endpoint, as the import does. The owner only
+	// counts the rows its database refuses, so they are raised as refused, for the import to retry the
+	// batch row by row and reject each refused row into its side file.
+	public BulkSaveResult forwardCustomers(String owner, Collection<Customer> customers) {
+		BulkSaveResult result = forwardChunk(owner, customers.stream().map(CustomerMapper::toDto).toList());
+		if (result.getRejected() > 0) {
+			throw new InvalidRequestException("Partition " + owner + " refused " + result.getRejected() + " of the customers");
+		}
+		return result;
+	}
+
+	private BulkSaveResult saveChunk(String owner, List<CustomerDTO> chunk) {
+		return isSelf(owner) ? customerBulkService.saveCustomers(chunk.iterator()) : forwardChunk(owner, chunk);
+	}
+
+	private BulkSaveResult forwardChunk(String owner, List<CustomerDTO> chunk) {
+		return read(send(owner, "bulk", request(owner, "/bulk")
+				.header(HttpHeaders.CONTENT_TYPE, "application/json")
+				.POST(HttpRequest.BodyPublishers.ofByteArray(json(chunk)))), BulkSaveResult.class);
+	}
+
+	private HttpRequest.Builder request(String owner, String path) {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(owner + API + path))
+				.timeout(timeout)
+				.header(FORWARDED_HEADER, self);
+		if (!secret.isEmpty()) {
+			request.header(SECRET_HEADER, secret);
+		}
+		return request;
+	}
+
+	private HttpResponse<byte[]> send(String owner, String operation, HttpRequest.Builder request) {
+		return await(owner, sendAsync(owner, operation, request));
+	}
+
+	// Send a request to another member, timed by member, operation and the status it answered with.
+	// An error status is raised as the exception it stands for.
+	private CompletableFuture<HttpResponse<byte[]>> sendAsync(String owner, String operation, HttpRequest.Builder request) {
+		long started = System.nanoTime();
+		return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+				.whenComplete((response, error) -> Timer.builder("customer.partition.forwards")
+						.description("Requests forwarded to the instance owning the customers")
+						.tag("member", owner)
+						.tag("operation", operation)
+						.tag("status", error == null ? String.valueOf(response.statusCode()) : "unavailable")
+						.register(meterRegistry)
+						.record(Duration.ofNanos(System.nanoTime() - started)))
+				.thenApply(response -> {
+					if (response.statusCode() >= 400) {
+						throw error(owner, response);
+					}
+					return response;
+				});
+	}
+
+	private HttpResponse<byte[]> await(String owner, CompletableFuture<HttpResponse<byte[]>> response) {
+		try {
+			return response.join();
+		} catch (CompletionException e) {
+			// An error the owner answered with, rather than one reaching it
+			if (e.getCause() instanceof RuntimeException failure) {
+				throw failure;
+			}
+			throw new PartitionUnavailableException("Partition " + owner + " is unavailable", e.getCause());
+		}
+	}
+
+	// The exception the owner answered with, carrying its message
+	private RuntimeException error(String owner, HttpResponse<byte[]> response) {
+		String message;
+		try {
+			JsonNode error = objectMapper.readTree(response.body());
+			message = error.path("message").asText("Partition " + owner + " answered " + response.statusCode());
+		} catch (IOException e) {
+			message = "Partition " + owner + " answered " + response.statusCode();
+		}
+		return switch (response.statusCode()) {
+			case 400 -> new InvalidRequestException(message);
+			case 404 -> new CustomerNotFoundException(message);
+			case 409 -> new CustomerVersionConflictException(message);
+			default -> new IllegalStateException("Partition " + owner + " answered " + response.statusCode() + ": " + message);
+		};
+	}
+
+	private byte[] json(Object value) {
+		try {
+			return objectMapper.writeValueAsBytes(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private <T> T read(HttpResponse<byte[]> response, Class<T> type) {
+		try {
+			return objectMapper.readValue(response.body(), type);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// The addresses a member's host resolves to now, none if it cannot be resolved
+	private static Set<InetAddress> resolve(String member) {
+		try {
+			return Set.of(InetAddress.getAllByName(URI.create(member).getHost()));
+		} catch (UnknownHostException | IllegalArgumentException e) {
+			log.warn("Could not resolve partition member {}, requests it forwards are routed again", member, e);
+			return Set.of();
+		}
+	}
+
+	private static String baseUrl(String member) {
+		String trimmed = member.trim();
+		return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+	}
+
+	// A CustomerLookupResponse as another member answers it
+	private record LookupPart(List<CustomerDTO> customers, List<String> missing) {
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.customer.demo;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+// Non-blocking counterpart of CustomerController, served by CustomerReactiveServer.
+//
+// CustomerService and the JDBC driver block, so each call runs on a bounded scheduler sized to the
+// connection pool and the event loop never waits on the database. The stream endpoint reads one
+// keyset page at a time and only fetches the next once the client has taken the previous one, so
+// a slow client holds at most a page in memory and no thread at all while it reads.
+@Component
+@ConditionalOnProperty(name = "customer.reactive.enabled", havingValue = "true")
+public class CustomerReactiveHandler {
+
+	private static final ParameterizedTypeReference<List<String>> REFS = new ParameterizedTypeReference<>() {
+	};
+
+	private final CustomerService customerService;
+	private final int pageSize;
+	private final Scheduler jdbcScheduler;
+
+	public CustomerReactiveHandler(CustomerService customerService,
+			@Value("${customer.reactive.page-size:100}") int pageSize,
+			@Value("${customer.reactive.jdbc-threads:${spring.datasource.hikari.maximum-pool-size:10}}") int jdbcThreads) {
+		this.customerService = customerService;
+		this.pageSize = pageSize;
+		this.jdbcScheduler = Schedulers.newBoundedElastic(jdbcThreads, Integer.MAX_VALUE, "customer-jdbc");
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		jdbcScheduler.dispose();
+	}
+
+	public RouterFunction<ServerResponse> routes() {
+		return route(GET("/reactive/customers/stream"), this::streamCustomers)
+				.andRoute(POST("/reactive/customers/lookup"), this::lookupCustomers)
+				.andRoute(GET("/reactive/customers/{customerRef}"), this::getCustomer);
+	}
+
+	// Endpoint to retrieve customer data by customer reference
+	Mono<ServerResponse> getCustomer(ServerRequest request) {
+		String customerRef = request.pathVariable("customerRef");
+		return blocking(() -> customerService.getCustomerDTOById(customerRef))
+				.flatMap(customer -> ServerResponse.ok().bodyValue(customer))
+				.onErrorResume(CustomerNotFoundException.class, e -> error(HttpStatus.NOT_FOUND, e.getMessage()));
+	}
+
+	// Endpoint to retrieve many customers by reference in one call, reporting the ones not found
+	Mono<ServerResponse> lookupCustomers(ServerRequest request) {
+		return request.bodyToMono(REFS)
+				.flatMap(refs -> blocking(() -> customerService.lookupCustomers(refs)))
+				.flatMap(result -> ServerResponse.ok().bodyValue(result))
+				.onErrorResume(InvalidRequestException.class, e -> error(HttpStatus.BAD_REQUEST, e.getMessage()));
+	}
+
+	// Endpoint to stream every customer as NDJSON, paced by the client
+	Mono<ServerResponse> streamCustomers(ServerRequest request) {
+		return ServerResponse.ok()
+				.contentType(MediaType.APPLICATION_NDJSON)
+				.body(pagesAfter(null), CustomerDTO.class);
+	}
+
+	// The customers after the cursor, one keyset page at a time. expand walks the pages iteratively
+	// rather than nesting a subscriber per page, and concatMap without prefetch only asks expand for
+	// the next page, and so only queries it, once the rows of this page have all been requested.
+	Flux<CustomerDTO> pagesAfter(String after) {
+		return blocking(() -> customerService.browseCustomers(after, pageSize))
+				.expand(page -> page.getNextCursor() == null
+						? Mono.empty()
+						: blocking(() -> customerService.browseCustomers(page.getNextCursor(), pageSize)))
+				.concatMap(page -> Flux.fromIterable(page.getContent()), 0);
+	}
+
+	private <T> Mono<T> blocking(Callable<T> call) {
+		return Mono.fromCallable(call).subscribeOn(jdbcScheduler);
+	}
+
+	private static Mono<ServerResponse> error(HttpStatus status, String message) {
+		return ServerResponse.status(status).bodyValue(new ErrorResponse(status.value(), message));
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.customer.demo;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+// Serves the reactive customer API on its own Netty port, next to the Tomcat server that serves
+// CustomerController. Netty handles each connection on a small set of event loop threads, so idle
+// or slow streaming clients cost a little memory each and no thread.
+@Component
+@ConditionalOnProperty(name = "customer.reactive.enabled", havingValue = "true")
+public class CustomerReactiveServer implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerReactiveServer.class);
+
+	private final HttpHandler httpHandler;
+	private final int port;
+	private final Duration idleTimeout;
+
+	private volatile DisposableServer server;
+
+	public CustomerReactiveServer(CustomerReactiveHandler customerReactiveHandler, ObjectMapper objectMapper,
+			@Value("${customer.reactive.port:8081}") int port,
+			@Value("${customer.reactive.idle-timeout:60s}") Duration idleTimeout) {
+		// Use the application's ObjectMapper so JSON matches the servlet API
+		HandlerStrategies strategies = HandlerStrategies.builder()
+				.codecs(codecs -> {
+					codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+					codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+				})
+				.build();
+		this.httpHandler = RouterFunctions.toHttpHandler(customerReactiveHandler.routes(), strategies);
+		this.port = port;
+		this.idleTimeout = idleTimeout;
+	}
+
+	@Override
+	public void start() {
+		server = HttpServer.create()
+				.port(port)
+				.idleTimeout(idleTimeout)
+				.handle(new ReactorHttpHandlerAdapter(httpHandler))
+				.bindNow();
+		log.info("Reactive customer API listening on port {}", server.port());
+	}
+
+	@Override
+	public void stop() {
+		if (server != null) {
+			server.disposeNow();
+			server = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return server != null;
+	}
+
+	// The port actually bound, which differs from the configured one when that is 0
+	public int getPort() {
+		return server.port();
+	}
+
+}
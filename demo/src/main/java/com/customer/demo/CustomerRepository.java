@@ -1,9 +1,21 @@
 package com.customer.demo;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 
-public interface CustomerRepository extends JpaRepository<Customer, String> {
+public interface CustomerRepository extends JpaRepository<Customer, String>, JpaSpecificationExecutor<Customer> {
     
     Customer findByCustomerRef(String customerRef);
 
+    List<Customer> findByCustomerRefIn(Collection<String> customerRefs);
+
+    // Keyset pagination in customerRef order, for browsing and exporting without OFFSET scans
+    List<Customer> findAllByOrderByCustomerRefAsc(Limit limit);
+
+    List<Customer> findByCustomerRefGreaterThanOrderByCustomerRefAsc(String customerRef, Limit limit);
+
 }
@@ -1,8 +1,30 @@
 package com.customer.demo;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 import com.customer.demo.CustomerNotFoundException;
 
 
@@ -15,54 +37,269 @@ public class CustomerService {
 	@Autowired
 	private final CustomerRepository customerRepository;
 
+	private final CustomerCache customerCache;
+
+	private final CustomerSuggestIndex customerSuggestIndex;
+
+	private final int lookupChunkSize;
 
-	public CustomerService (CustomerRepository customerRepository) {
+	// Only present with customer.write-behind.enabled=true
+	private final CustomerWriteBehind customerWriteBehind;
+
+
+	public CustomerService (CustomerRepository customerRepository, CustomerCache customerCache,
+			CustomerSuggestIndex customerSuggestIndex,
+			@Value("${customer.lookup.chunk-size:500}") int lookupChunkSize,
+			@Autowired(required = false) CustomerWriteBehind customerWriteBehind) {
 		this.customerRepository = customerRepository;
+		this.customerCache = customerCache;
+		this.customerSuggestIndex = customerSuggestIndex;
+		this.lookupChunkSize = lookupChunkSize;
+		this.customerWriteBehind = customerWriteBehind;
 	}
 
-    // Retrieve customer data by customer reference
+    // Retrieve customer data by customer reference, served from the cache when possible, and index
+    // its ETag. A save acknowledged by the write-behind buffer but not yet written is returned as saved.
 	public CustomerDTO getCustomerDTOById (String id) {
+		CustomerDTO pending = getPending(id);
+		if (pending != null) {
+			return pending;
+		}
+		long generation = customerCache.etagGeneration(id);
+		CustomerDTO customer = customerCache.get(id, this::loadCustomerDTO)
+				.orElseThrow(() -> new CustomerNotFoundException("Customer not found with id: " + id));
+		customerCache.putETag(id, CustomerETag.of(customer), generation);
+		return customer;
+	}
+
+    // ETag of the customer when known without loading it: from the ETag index, or from a save held
+    // by the write-behind buffer. Null otherwise, including for customers that do not exist.
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public String getCustomerETag(String id) {
+		CustomerDTO pending = getPending(id);
+		return pending != null ? CustomerETag.of(pending) : customerCache.getETag(id);
+	}
+
+    // ETag of a lookup of these refs when every one of them is known without loading it, else null
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public String getLookupETag(Collection<String> ids) {
+		Set<String> refs = new LinkedHashSet<>(ids);
+		refs.removeIf(id -> id == null || id.isBlank());
+		List<String> etags = new ArrayList<>(refs.size());
+		for (String ref : refs) {
+			String etag = getCustomerETag(ref);
+			if (etag == null) {
+				return null;
+			}
+			etags.add(etag);
+		}
+		return CustomerETag.combine(etags, List.of());
+	}
+
+	private CustomerDTO getPending(String id) {
+		return customerWriteBehind == null ? null : customerWriteBehind.getPending(id);
+	}
+
+	private Optional<CustomerDTO> loadCustomerDTO (String id) {
 		Customer customerEntity = customerRepository.findByCustomerRef(id);
 
 		if (customerEntity == null) {
-			throw new CustomerNotFoundException("Customer not found with id: " + id);
+			return Optional.empty();
 		}
         
 		// Map Customer entity to a CustomerDTO and return it
-		return CustomerDTO.builder()
-				.customerRef(customerEntity.getCustomerRef())
-				.customerName(customerEntity.getCustomerName())
-				.addressLine1(customerEntity.getAddressLine1())
-				.addressLine2(customerEntity.getAddressLine2())
-				.town(customerEntity.getTown())
-				.country(customerEntity.getCounty())
-				.county(customerEntity.getCountry())
-				.postcode(customerEntity.getPostcode())
-				.build();
+		return Optional.of(CustomerMapper.toDto(customerEntity));
+
+	}
+
+    // Retrieve many customers at once. Like getCustomerDTOById, a save held by the write-behind buffer
+    // is returned as saved. Refs in the cache are served from it, the rest are resolved with chunked
+    // IN queries rather than one query per ref. The stored customers' ETags are indexed.
+	@Transactional(readOnly = true)
+	public CustomerLookupResponse lookupCustomers(Collection<String> ids) {
+		Set<String> pending = new LinkedHashSet<>(ids);
+		pending.removeIf(id -> id == null || id.isBlank());
+		Map<String, Long> generations = new HashMap<>();
+		for (String id : pending) {
+			generations.put(id, customerCache.etagGeneration(id));
+		}
+
+		Map<String, CustomerDTO> found = new HashMap<>();
+		Set<String> held = new HashSet<>();
+		for (String id : pending) {
+			CustomerDTO customer = getPending(id);
+			if (customer != null) {
+				found.put(id, customer);
+				held.add(id);
+			}
+		}
+		Set<String> missing = new HashSet<>();
+		customerCache.getAllPresent(pending).forEach((id, customer) -> {
+			if (held.contains(id)) {
+				return;
+			}
+			if (customer.isPresent()) {
+				found.put(id, customer.get());
+			} else {
+				missing.add(id);
+			}
+		});
+
+		List<String> toLoad = pending.stream().filter(id -> !found.containsKey(id) && !missing.contains(id)).toList();
+		for (int from = 0; from < toLoad.size(); from += lookupChunkSize) {
+			List<String> chunk = toLoad.subList(from, Math.min(from + lookupChunkSize, toLoad.size()));
+			for (Customer customer : customerRepository.findByCustomerRefIn(chunk)) {
+				found.put(customer.getCustomerRef(), CustomerMapper.toDto(customer));
+			}
+		}
+
+		// Keep the order the refs were asked for
+		List<CustomerDTO> customers = new ArrayList<>(found.size());
+		List<String> notFound = new ArrayList<>();
+		for (String id : pending) {
+			CustomerDTO customer = found.get(id);
+			if (customer != null) {
+				customers.add(customer);
+				if (!held.contains(id)) {
+					customerCache.putETag(id, CustomerETag.of(customer), generations.get(id));
+				}
+			} else {
+				notFound.add(id);
+			}
+		}
+		return new CustomerLookupResponse(customers, notFound);
+	}
+
+    // Retrieve one page of customers in customerRef order, with the total count
+	@Transactional(readOnly = true)
+	public CustomerPageResponse getCustomerPage(int page, int size) {
+		Page<Customer> customers = customerRepository.findAll(PageRequest.of(page, size, Sort.by("customerRef")));
+		return new CustomerPageResponse(customers.map(CustomerMapper::toDto).getContent(), page, size,
+				customers.getTotalElements(), customers.getTotalPages());
+	}
+
+    // Retrieve up to limit customers after the given ref, in customerRef order. Unlike page numbers
+    // the cursor costs the same however deep into the table it points.
+	@Transactional(readOnly = true)
+	public CustomerCursorResponse browseCustomers(String after, int limit) {
+		List<Customer> customers = after == null
+				? customerRepository.findAllByOrderByCustomerRefAsc(Limit.of(limit))
+				: customerRepository.findByCustomerRefGreaterThanOrderByCustomerRefAsc(after, Limit.of(limit));
 
+		String nextCursor = customers.size() < limit ? null : customers.get(customers.size() - 1).getCustomerRef();
+		return new CustomerCursorResponse(customers.stream().map(CustomerMapper::toDto).toList(), nextCursor);
 	}
 
-    // Save customer data to the repository
-	public void saveCustomer(CustomerDTO customerDTO) {
+    // Search customers by postcode prefix, town and/or name prefix, backed by the column indexes.
+    // Results are ordered by the first criterion given so the index can also provide the order.
+	@Transactional(readOnly = true)
+	public CustomerPageResponse searchCustomers(String postcode, String town, String name, int page, int size) {
+		Specification<Customer> criteria = null;
+		List<String> order = new ArrayList<>();
+
+		if (StringUtils.hasText(postcode)) {
+			criteria = CustomerSpecifications.postcodeStartsWith(postcode);
+			order.add("postcode");
+		}
+		if (StringUtils.hasText(town)) {
+			criteria = criteria == null ? CustomerSpecifications.townEquals(town) : criteria.and(CustomerSpecifications.townEquals(town));
+			order.add("town");
+		}
+		if (StringUtils.hasText(name)) {
+			criteria = criteria == null ? CustomerSpecifications.nameStartsWith(name) : criteria.and(CustomerSpecifications.nameStartsWith(name));
+			order.add("customerName");
+		}
+		if (criteria == null) {
+			throw new InvalidRequestException("At least one of postcode, town or name is required");
+		}
+
+		Sort sort = Sort.by(order.get(0), "customerRef");
+		Page<Customer> customers = customerRepository.findAll(criteria, PageRequest.of(page, size, sort));
+		return new CustomerPageResponse(customers.map(CustomerMapper::toDto).getContent(), page, size,
+				customers.getTotalElements(), customers.getTotalPages());
+	}
 
+    // Save customer data to the repository, skipping the write when nothing has changed. A save
+    // carrying a version only applies if the stored customer is still at it. Without a version the
+    // save overwrites what it reads, but still fails if another save commits in between.
+	public SaveOutcome saveCustomer(CustomerDTO customerDTO) {
 		try {
+			if (customerDTO.getCustomerRef() == null || customerDTO.getCustomerRef().isBlank()) {
+				throw new InvalidRequestException("customerRef is required");
+			}
+
+			// A buffered save of the customer is written first, so the version is checked against it
+			if (customerWriteBehind != null && customerWriteBehind.getPending(customerDTO.getCustomerRef()) != null) {
+				customerWriteBehind.flushNow(customerDTO.getCustomerRef());
+			}
+
             // Map CustomerDTO to a Customer entity and save it
-			Customer customer = Customer.builder()
-					.customerRef(customerDTO.getCustomerRef())
-					.customerName(customerDTO.getCustomerName())
-					.addressLine1(customerDTO.getAddressLine1())
-					.addressLine2(customerDTO.getAddressLine2())
-					.town(customerDTO.getTown())
-					.county(customerDTO.getCounty())
-					.country(customerDTO.getCountry())
-					.postcode(customerDTO.getPostcode())
-					.build();
-
-			customerRepository.save(customer);
+			Customer customer = CustomerMapper.toEntity(customerDTO);
+
+			// save() would load the stored row anyway to merge into it, so comparing against it
+			// costs no extra query and saves the UPDATE, the cache eviction and the index update
+			Customer stored = customerRepository.findById(customer.getCustomerRef()).orElse(null);
+			checkVersion(customerDTO, stored);
+			if (stored != null && CustomerMapper.sameContent(customer, stored)) {
+				return SaveOutcome.UNCHANGED;
+			}
+			String previousName = stored == null ? null : stored.getCustomerName();
+			String previousPostcode = stored == null ? null : stored.getPostcode();
 
+			// Write over the version just read, the UPDATE matches no row if it has changed since.
+			// Flushing here turns that, or a concurrent insert of the same ref, into a conflict.
+			customer.setVersion(stored == null ? null : stored.getVersion());
+			try {
+				customerRepository.save(customer);
+				customerRepository.flush();
+			} catch (DataIntegrityViolationException e) {
+				// Hibernate reports a duplicate key as a plain integrity violation. On an insert it
+				// means another save created the customer after this one found it missing.
+				if (stored == null && isDuplicateKey(e)) {
+					throw new CustomerVersionConflictException("Customer " + customerDTO.getCustomerRef()
+							+ " was created by another save, reload it and try again", e);
+				}
+				throw e;
+			}
+			customerCache.invalidate(customer.getCustomerRef());
+			customerSuggestIndex.update(customer.getCustomerRef(), previousName, previousPostcode,
+					customer.getCustomerName(), customer.getPostcode());
+			return stored == null ? SaveOutcome.INSERTED : SaveOutcome.UPDATED;
+
+		} catch (CustomerVersionConflictException | InvalidRequestException e) {
+			throw e;
+		} catch (OptimisticLockingFailureException | DuplicateKeyException e) {
+			throw new CustomerVersionConflictException("Customer " + customerDTO.getCustomerRef()
+					+ " was changed by another save, reload it and try again", e);
 		} catch (Exception e) {
 			throw new RuntimeException("Failed to save customer: " + customerDTO.getCustomerRef(), e);
 		}
 	}
 
+	// A unique constraint violation, SQLState 23505
+	private static boolean isDuplicateKey(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DuplicateKeyException
+					|| cause instanceof SQLException sql && "23505".equals(sql.getSQLState())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void checkVersion(CustomerDTO customerDTO, Customer stored) {
+		Long expected = customerDTO.getVersion();
+		if (expected == null) {
+			return;
+		}
+		if (stored == null) {
+			throw new CustomerVersionConflictException("Customer " + customerDTO.getCustomerRef()
+					+ " does not exist, expected version " + expected);
+		}
+		if (!expected.equals(stored.getVersion())) {
+			throw new CustomerVersionConflictException("Customer " + customerDTO.getCustomerRef() + " is at version "
+					+ stored.getVersion() + ", not " + expected);
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package com.customer.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+// Warm restart for the persistent profile. On an orderly shutdown the suggest index and the refs
+// of the hottest cached customers are written to customer.snapshot.path; on the next start they
+// are restored before the web server opens, instead of rebuilding the index from a full table scan
+// and starting with a cold cache.
+//
+// The snapshot is only trusted when the table still holds the row count it was written with, and
+// it is deleted once read: a node that stops without writing a new one (a crash, a kill) starts
+// cold rather than from a snapshot that may miss its last writes.
+@Component
+@ConditionalOnProperty(name = "customer.snapshot.enabled", havingValue = "true")
+public class CustomerSnapshot implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerSnapshot.class);
+
+	private static final int MAGIC = 0x43534e50;
+	private static final int FORMAT_VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final CustomerRepository customerRepository;
+	private final CustomerCache customerCache;
+	private final CustomerSuggestIndex customerSuggestIndex;
+	private final Path path;
+	private final int cacheEntries;
+	private final int lookupChunkSize;
+
+	private volatile boolean running;
+
+	public CustomerSnapshot(CustomerRepository customerRepository, CustomerCache customerCache,
+			CustomerSuggestIndex customerSuggestIndex,
+			@Value("${customer.snapshot.path:data/customer-snapshot.bin}") Path path,
+			@Value("${customer.snapshot.cache-entries:20000}") int cacheEntries,
+			@Value("${customer.lookup.chunk-size:500}") int lookupChunkSize) {
+		this.customerRepository = customerRepository;
+		this.customerCache = customerCache;
+		this.customerSuggestIndex = customerSuggestIndex;
+		this.path = path;
+		this.cacheEntries = cacheEntries;
+		this.lookupChunkSize = lookupChunkSize;
+	}
+
+	// Started before and stopped after the web servers, so no request sees a cold node and none
+	// writes after the snapshot has been taken
+	@Override
+	public int getPhase() {
+		return SmartLifecycle.DEFAULT_PHASE - 4096;
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		try {
+			restore();
+		} catch (IOException | RuntimeException e) {
+			log.warn("Ignoring customer snapshot {}, starting cold", path, e);
+		} finally {
+			delete();
+		}
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		try {
+			save();
+		} catch (IOException | RuntimeException e) {
+			log.error("Writing customer snapshot {} failed", path, e);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	void save() throws IOException {
+		long started = System.nanoTime();
+		Files.createDirectories(path.toAbsolutePath().getParent());
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+		List<String> hottestRefs = customerCache.hottestRefs(cacheEntries);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(customerRepository.count());
+			out.writeInt(hottestRefs.size());
+			for (String ref : hottestRefs) {
+				out.writeUTF(ref);
+			}
+			out.writeBoolean(customerSuggestIndex.isEnabled());
+			if (customerSuggestIndex.isEnabled()) {
+				customerSuggestIndex.writeSnapshot(out);
+			}
+		}
+		// Replace the previous snapshot only once the new one is complete
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log.info("Wrote customer snapshot {} ({} bytes, {} cached refs) in {} ms", path, Files.size(path),
+				hottestRefs.size(), (System.nanoTime() - started) / 1_000_000);
+	}
+
+	void restore() throws IOException {
+		long started = System.nanoTime();
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException("Not a customer snapshot, or written by another version");
+			}
+			long rows = in.readLong();
+			long currentRows = customerRepository.count();
+			if (rows != currentRows) {
+				log.warn("Ignoring customer snapshot {}: written with {} customers, the table holds {}", path, rows,
+						currentRows);
+				return;
+			}
+
+			int refCount = in.readInt();
+			List<String> refs = new ArrayList<>(refCount);
+			for (int i = 0; i < refCount; i++) {
+				refs.add(in.readUTF());
+			}
+			// The refs are re-read from the table rather than stored with their values
+			for (int from = 0; from < refs.size(); from += lookupChunkSize) {
+				List<String> chunk = refs.subList(from, Math.min(from + lookupChunkSize, refs.size()));
+				customerCache.putAll(customerRepository.findByCustomerRefIn(chunk).stream()
+						.map(CustomerMapper::toDto)
+						.toList());
+			}
+
+			boolean withSuggestIndex = in.readBoolean();
+			if (withSuggestIndex && customerSuggestIndex.isEnabled()) {
+				customerSuggestIndex.readSnapshot(in);
+			}
+			log.info("Restored customer snapshot {}: {} cached customers{} in {} ms", path, refs.size(),
+					withSuggestIndex && customerSuggestIndex.isEnabled() ? " and the suggest index" : "",
+					(System.nanoTime() - started) / 1_000_000);
+		} catch (NoSuchFileException e) {
+			log.info("No customer snapshot at {}, starting cold", path);
+		}
+	}
+
+	private void delete() {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException e) {
+			log.warn("Could not delete customer snapshot {}", path, e);
+		}
+	}
+
+}
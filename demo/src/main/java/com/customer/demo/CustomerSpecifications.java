@@ -0,0 +1,31 @@
+package com.customer.demo;
+
+import org.springframework.data.jpa.domain.Specification;
+
+// Search criteria on the indexed customer columns. Prefix matches use LIKE 'abc%' so the
+// database can answer them with an index range scan.
+public final class CustomerSpecifications {
+
+	private static final char LIKE_ESCAPE = '\\';
+
+	private CustomerSpecifications() {
+	}
+
+	public static Specification<Customer> postcodeStartsWith(String postcode) {
+		return (root, query, cb) -> cb.like(root.get("postcode"), likePrefix(CustomerMapper.normalizePostcode(postcode)), LIKE_ESCAPE);
+	}
+
+	public static Specification<Customer> townEquals(String town) {
+		return (root, query, cb) -> cb.equal(root.get("town"), town.trim());
+	}
+
+	public static Specification<Customer> nameStartsWith(String name) {
+		return (root, query, cb) -> cb.like(root.get("customerName"), likePrefix(name.trim()), LIKE_ESCAPE);
+	}
+
+	// Escape LIKE wildcards typed by the user so they match literally
+	private static String likePrefix(String prefix) {
+		return prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+	}
+
+}
@@ -0,0 +1,52 @@
+package com.customer.demo;
+
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/customers/suggest")
+public class CustomerSuggestController {
+
+    // Largest number of completions a client can ask for
+    private static final int MAX_LIMIT = 50;
+
+    private final CustomerSuggestIndex customerSuggestIndex;
+
+    public CustomerSuggestController(CustomerSuggestIndex customerSuggestIndex) {
+    	this.customerSuggestIndex = customerSuggestIndex;
+    }
+
+    // Endpoint for type-ahead completion of customer names or postcodes
+    @GetMapping
+	public ResponseEntity<List<CustomerSuggestion>> suggest(@RequestParam(required = false) String name,
+			@RequestParam(required = false) String postcode, @RequestParam(defaultValue = "10") int limit) {
+			int size = Math.min(Math.max(limit, 1), MAX_LIMIT);
+			if (name != null) {
+				return ResponseEntity.ok(customerSuggestIndex.suggest(CustomerSuggestIndex.Field.NAME, name, size));
+			}
+			if (postcode != null) {
+				return ResponseEntity.ok(customerSuggestIndex.suggest(CustomerSuggestIndex.Field.POSTCODE, postcode, size));
+			}
+			throw new InvalidRequestException("One of name or postcode is required");
+	}
+
+    // Endpoint to retrieve the size and memory footprint of the index
+    @GetMapping("/stats")
+	public ResponseEntity<SuggestIndexStats> getStats() {
+			return ResponseEntity.ok(customerSuggestIndex.stats());
+	}
+
+    // Endpoint to rebuild the index from the database in the background
+    @PostMapping("/rebuild")
+	public ResponseEntity<SuggestIndexStats> rebuild() {
+			customerSuggestIndex.rebuildAsync();
+			return ResponseEntity.status(HttpStatus.ACCEPTED).body(customerSuggestIndex.stats());
+	}
+}
@@ -0,0 +1,237 @@
+package com.customer.demo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+
+// Optional in-memory type-ahead index over customer names and postcodes. It is built from the
+// repository once the application is ready, kept up to date by every committed write, and rebuilt
+// in the background whenever the writes collected since the last build grow past a threshold.
+@Component
+public class CustomerSuggestIndex implements MeterBinder {
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerSuggestIndex.class);
+
+	public enum Field { NAME, POSTCODE }
+
+	private final CustomerRepository customerRepository;
+	private final boolean enabled;
+	private final int pageSize;
+	private final int rebuildThreshold;
+
+	private final PrefixIndex names = new PrefixIndex();
+	private final PrefixIndex postcodes = new PrefixIndex();
+
+	private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("customer-suggest-"));
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+	private volatile boolean restored;
+	private volatile long lastRebuildMillis;
+
+	public CustomerSuggestIndex(CustomerRepository customerRepository,
+			@Value("${customer.suggest.enabled:false}") boolean enabled,
+			@Value("${customer.suggest.page-size:10000}") int pageSize,
+			@Value("${customer.suggest.rebuild-threshold:100000}") int rebuildThreshold) {
+		this.customerRepository = customerRepository;
+		this.enabled = enabled;
+		this.pageSize = pageSize;
+		this.rebuildThreshold = rebuildThreshold;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void onApplicationReady() {
+		// A snapshot restored on startup is already up to date with the database
+		if (enabled && !restored) {
+			rebuildAsync();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		rebuilder.shutdownNow();
+	}
+
+	// Up to limit customers whose name or postcode starts with prefix, ignoring case
+	public List<CustomerSuggestion> suggest(Field field, String prefix, int limit) {
+		if (!enabled) {
+			throw new InvalidRequestException("The suggest index is not enabled");
+		}
+		String normalized = field == Field.POSTCODE ? CustomerMapper.normalizePostcode(prefix) : prefix.trim();
+		return index(field).complete(normalized, limit).stream()
+				.map(entry -> new CustomerSuggestion(entry.ref(), entry.value()))
+				.toList();
+	}
+
+	// Record a write, once the surrounding transaction commits so rolled back writes never show up.
+	// The previous values are null for a new customer.
+	public void update(String customerRef, String previousName, String previousPostcode, String name, String postcode) {
+		if (!enabled) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					apply(customerRef, previousName, previousPostcode, name, postcode);
+				}
+			});
+		} else {
+			apply(customerRef, previousName, previousPostcode, name, postcode);
+		}
+	}
+
+	private void apply(String customerRef, String previousName, String previousPostcode, String name, String postcode) {
+		if (previousName != null && !previousName.equals(name)) {
+			names.remove(previousName, customerRef);
+		}
+		if (previousPostcode != null && !previousPostcode.equals(postcode)) {
+			postcodes.remove(previousPostcode, customerRef);
+		}
+		names.add(name, customerRef);
+		postcodes.add(postcode, customerRef);
+
+		if (names.overlaySize() + postcodes.overlaySize() > rebuildThreshold) {
+			rebuildAsync();
+		}
+	}
+
+	// Rebuild the index from the repository in the background; reads carry on meanwhile
+	public boolean rebuildAsync() {
+		if (!enabled || !rebuilding.compareAndSet(false, true)) {
+			return false;
+		}
+		rebuilder.execute(() -> {
+			try {
+				rebuild();
+			} catch (RuntimeException e) {
+				log.error("Rebuilding the customer suggest index failed", e);
+			} finally {
+				rebuilding.set(false);
+			}
+		});
+		return true;
+	}
+
+	private void rebuild() {
+		long started = System.nanoTime();
+		names.beginRebuild();
+		postcodes.beginRebuild();
+
+		List<PrefixIndex.Entry> nameEntries = new ArrayList<>();
+		List<PrefixIndex.Entry> postcodeEntries = new ArrayList<>();
+		String after = null;
+		List<Customer> page;
+		do {
+			page = after == null
+					? customerRepository.findAllByOrderByCustomerRefAsc(Limit.of(pageSize))
+					: customerRepository.findByCustomerRefGreaterThanOrderByCustomerRefAsc(after, Limit.of(pageSize));
+			for (Customer customer : page) {
+				if (customer.getCustomerName() != null && !customer.getCustomerName().isBlank()) {
+					nameEntries.add(new PrefixIndex.Entry(customer.getCustomerName(), customer.getCustomerRef()));
+				}
+				if (customer.getPostcode() != null && !customer.getPostcode().isBlank()) {
+					postcodeEntries.add(new PrefixIndex.Entry(customer.getPostcode(), customer.getCustomerRef()));
+				}
+			}
+			if (!page.isEmpty()) {
+				after = page.get(page.size() - 1).getCustomerRef();
+			}
+		} while (page.size() == pageSize);
+
+		names.finishRebuild(nameEntries);
+		postcodes.finishRebuild(postcodeEntries);
+		lastRebuildMillis = (System.nanoTime() - started) / 1_000_000;
+		log.info("Rebuilt customer suggest index: {} names, {} postcodes in {} ms, about {} bytes",
+				names.size(), postcodes.size(), lastRebuildMillis, estimatedBytes());
+	}
+
+	// Write both indexes as counted (value, ref) pairs, names first
+	public void writeSnapshot(DataOutput out) throws IOException {
+		writeEntries(names, out);
+		writeEntries(postcodes, out);
+	}
+
+	// Replace the index with one written by writeSnapshot, instead of building it from the repository
+	public void readSnapshot(DataInput in) throws IOException {
+		List<PrefixIndex.Entry> nameEntries = readEntries(in);
+		List<PrefixIndex.Entry> postcodeEntries = readEntries(in);
+		long started = System.nanoTime();
+		names.finishRebuild(nameEntries);
+		postcodes.finishRebuild(postcodeEntries);
+		lastRebuildMillis = (System.nanoTime() - started) / 1_000_000;
+		restored = true;
+	}
+
+	private static void writeEntries(PrefixIndex index, DataOutput out) throws IOException {
+		List<PrefixIndex.Entry> entries = new ArrayList<>(index.size() + index.overlaySize());
+		index.forEach((value, ref) -> entries.add(new PrefixIndex.Entry(value, ref)));
+		out.writeInt(entries.size());
+		for (PrefixIndex.Entry entry : entries) {
+			out.writeUTF(entry.value());
+			out.writeUTF(entry.ref());
+		}
+	}
+
+	private static List<PrefixIndex.Entry> readEntries(DataInput in) throws IOException {
+		int count = in.readInt();
+		List<PrefixIndex.Entry> entries = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			entries.add(new PrefixIndex.Entry(in.readUTF(), in.readUTF()));
+		}
+		return entries;
+	}
+
+	private long estimatedBytes() {
+		// Both indexes hold the same ref instances, so count them once
+		return names.estimatedBytes(true) + postcodes.estimatedBytes(false);
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("customer.suggest.entries", names, PrefixIndex::size).tag("field", "name").register(registry);
+		Gauge.builder("customer.suggest.entries", postcodes, PrefixIndex::size).tag("field", "postcode").register(registry);
+		Gauge.builder("customer.suggest.pending", this, index -> names.overlaySize() + postcodes.overlaySize())
+				.description("Writes held in the overlays since the last rebuild")
+				.register(registry);
+		Gauge.builder("customer.suggest.memory", this, CustomerSuggestIndex::estimatedBytes)
+				.baseUnit("bytes")
+				.register(registry);
+	}
+
+	public SuggestIndexStats stats() {
+		long bytes = estimatedBytes();
+		int customers = Math.max(names.size(), postcodes.size());
+		long bytesPerMillion = customers == 0 ? 0 : bytes * 1_000_000L / customers;
+		return new SuggestIndexStats(enabled, rebuilding.get(), names.size(), postcodes.size(),
+				names.overlaySize() + postcodes.overlaySize(), bytes, bytesPerMillion, lastRebuildMillis);
+	}
+
+	private PrefixIndex index(Field field) {
+		return field == Field.NAME ? names : postcodes;
+	}
+
+}
@@ -0,0 +1,12 @@
+package com.customer.demo;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// One type-ahead completion: the matching name or postcode and the customer it belongs to
+@Getter
+@RequiredArgsConstructor
+public class CustomerSuggestion {
+    private final String customerRef;
+    private final String value;
+}
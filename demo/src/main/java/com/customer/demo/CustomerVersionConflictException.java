@@ -0,0 +1,14 @@
+package com.customer.demo;
+
+// A save that would overwrite a change it has not seen: the customer is no longer at the version the
+// request was based on, or another save committed first
+public class CustomerVersionConflictException extends RuntimeException {
+
+    public CustomerVersionConflictException(String message) {
+        super(message);
+    }
+
+    public CustomerVersionConflictException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,525 @@
+package com.customer.demo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Asynchronous saveCustomer. A save is acknowledged as soon as it is durably appended to a local
+// WriteAheadLog and held in memory; a background flusher writes the held customers to the database
+// through CustomerBatchWriter, a large JDBC batch at a time, every customer.write-behind.flush-interval
+// or as soon as batch-size customers are waiting. Only the latest save of each customer is held, so
+// repeated saves of a hot customer cost one row in the batch.
+//
+// The held customers are split over lock stripes by customerRef hash, so concurrent saves of
+// different customers rarely wait for each other. getCustomerDTOById reads the held customer
+// before the cache and the table, so a client reads its own acknowledged writes.
+//
+// On start the log is replayed: saves acknowledged before a crash but never flushed are held again
+// and written. Once a flush has written everything appended before it started, the log is
+// truncated to there, customer.write-behind.truncate-delay later for a database that makes its
+// commits durable only after a delay (H2's WRITE_DELAY). Saves carrying a version are not buffered: CustomerService flushes first and
+// checks the version against the table. Bulk saves and imports write the table directly, so a held
+// save of the same customer flushed after them overwrites them.
+@Component
+@ConditionalOnProperty(name = "customer.write-behind.enabled", havingValue = "true")
+public class CustomerWriteBehind implements SmartLifecycle {
+
+	private static final Logger log = LoggerFactory.getLogger(CustomerWriteBehind.class);
+
+	private final CustomerBatchWriter customerBatchWriter;
+	private final CustomerCache customerCache;
+	private final Path directory;
+	private final long segmentSize;
+	private final int batchSize;
+	private final Duration flushInterval;
+	private final int maxPending;
+	private final long truncateDelayNanos;
+
+	private final Stripe[] stripes;
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final AtomicBoolean flushQueued = new AtomicBoolean();
+	// Notified whenever a flush frees room for saves held back by max-pending
+	private final Object capacity = new Object();
+	// Where completed flushes started, oldest first, until the log is truncated to them. Only used
+	// by the thread flushing.
+	private final Deque<FlushMark> flushMarks = new ArrayDeque<>();
+
+	private WriteAheadLog writeAheadLog;
+	private ScheduledExecutorService flusher;
+	private volatile boolean running;
+
+	private final Counter saves;
+	private final Counter rejected;
+	private final Timer flushes;
+
+	// A save held until it is flushed. since is when the customer first had a save waiting.
+	private record Pending(CustomerDTO customer, long sequence, long since) {
+	}
+
+	private record FlushMark(long sequence, long flushedAt) {
+	}
+
+	// The saves of a customer appended to the log but not yet durable, and the latest of them held
+	private static final class Appending {
+		private int count;
+		private long heldSequence = -1;
+	}
+
+	private static final class Stripe {
+		private final ReentrantLock lock = new ReentrantLock();
+		// Insertion order, so the first entry is the one waiting longest
+		private final Map<String, Pending> pending = new LinkedHashMap<>();
+		// Saves appended but not yet durable, which are only held once they are
+		private final Map<String, Appending> appending = new HashMap<>();
+		private final TreeSet<Long> appendingSequences = new TreeSet<>();
+	}
+
+	public CustomerWriteBehind(CustomerBatchWriter customerBatchWriter, CustomerCache customerCache,
+			MeterRegistry meterRegistry,
+			@Value("${customer.write-behind.dir:data/write-behind}") Path directory,
+			@Value("${customer.write-behind.segment-size:67108864}") long segmentSize,
+			@Value("${customer.write-behind.stripes:64}") int stripes,
+			@Value("${customer.write-behind.batch-size:1000}") int batchSize,
+			@Value("${customer.write-behind.flush-interval:200ms}") Duration flushInterval,
+			@Value("${customer.write-behind.max-pending:100000}") int maxPending,
+			@Value("${customer.write-behind.truncate-delay:0s}") Duration truncateDelay) {
+		this.customerBatchWriter = customerBatchWriter;
+		this.customerCache = customerCache;
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.maxPending = maxPending;
+		this.truncateDelayNanos = truncateDelay.toNanos();
+		this.stripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new Stripe();
+		}
+
+		this.saves = Counter.builder("customer.writes.behind.saves")
+				.description("Saves acknowledged once appended to the write-ahead log")
+				.register(meterRegistry);
+		this.rejected = Counter.builder("customer.writes.behind.rejected")
+				.description("Acknowledged saves the database refused, dropped from the buffer")
+				.register(meterRegistry);
+		this.flushes = Timer.builder("customer.writes.behind.flushes")
+				.description("Time to write the buffered customers to the database")
+				.register(meterRegistry);
+		Gauge.builder("customer.writes.behind.pending", pendingCount, AtomicInteger::get)
+				.description("Customers saved but not yet written to the database")
+				.register(meterRegistry);
+		Gauge.builder("customer.writes.behind.lag", this, CustomerWriteBehind::lagSeconds)
+				.description("Seconds the oldest buffered save has waited for the database")
+				.baseUnit("seconds")
+				.register(meterRegistry);
+		FunctionCounter.builder("customer.writes.behind.log.syncs", this,
+				writeBehind -> writeBehind.writeAheadLog == null ? 0 : writeBehind.writeAheadLog.getSyncs())
+				.description("Times the write-ahead log was forced to disk, once for every group of saves")
+				.register(meterRegistry);
+		FunctionCounter.builder("customer.writes.behind.log.bytes", this,
+				writeBehind -> writeBehind.writeAheadLog == null ? 0 : writeBehind.writeAheadLog.getBytesWritten())
+				.description("Bytes appended to the write-ahead log")
+				.baseUnit("bytes")
+				.register(meterRegistry);
+	}
+
+	// Started after the snapshot restore and before the web servers, stopped in reverse, so every
+	// save taken is flushed before the snapshot counts the rows
+	@Override
+	public int getPhase() {
+		return SmartLifecycle.DEFAULT_PHASE - 3072;
+	}
+
+	@Override
+	public void start() {
+		try {
+			writeAheadLog = new WriteAheadLog(directory, segmentSize);
+			replay();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not open the write-ahead log in " + directory, e);
+		}
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("customer-write-behind-");
+		threadFactory.setDaemon(true);
+		flusher = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		long interval = flushInterval.toNanos();
+		flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+		running = true;
+	}
+
+	// Everything acknowledged is written before the log is closed
+	@Override
+	public void stop() {
+		running = false;
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(30, TimeUnit.SECONDS);
+			flush();
+			// The database is closed cleanly after this, so no delay is needed
+			truncate(true);
+			writeAheadLog.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException | RuntimeException e) {
+			log.error("Flushing buffered customer saves on shutdown failed, they are replayed on the next start", e);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	// Append the save to the log and hold it for the next flush, returning once it is durable
+	public void saveCustomer(CustomerDTO customerDTO) {
+		String ref = customerDTO.getCustomerRef();
+		if (ref == null || ref.isBlank()) {
+			throw new InvalidRequestException("customerRef is required");
+		}
+		awaitCapacity();
+
+		// Held as it will be stored, so that reads see the same values as after the flush
+		CustomerDTO customer = CustomerMapper.toDto(CustomerMapper.toEntity(customerDTO));
+		customer.setVersion(null);
+		Stripe stripe = stripeFor(ref);
+		long sequence;
+		try {
+			byte[] record = serialize(customer);
+			// Appending under the stripe lock lets a flush see every save appended before it started,
+			// held or still on its way to disk
+			stripe.lock.lock();
+			try {
+				sequence = writeAheadLog.append(record);
+				stripe.appending.computeIfAbsent(ref, key -> new Appending()).count++;
+				stripe.appendingSequences.add(sequence);
+			} finally {
+				stripe.lock.unlock();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to save customer: " + ref, e);
+		}
+
+		// Only held, and so readable and flushed, once it is durable
+		boolean durable = false;
+		try {
+			writeAheadLog.awaitDurable(sequence);
+			durable = true;
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to save customer: " + ref, e);
+		} finally {
+			appended(stripe, ref, customer, sequence, durable);
+		}
+		saves.increment();
+
+		if (pendingCount.get() >= batchSize) {
+			requestFlush();
+		}
+	}
+
+	// Hold a durable save unless a later save of the customer already is, which saves finishing out
+	// of order can cause. The save no longer holds the flushes back from truncating the log past it.
+	private void appended(Stripe stripe, String ref, CustomerDTO customer, long sequence, boolean durable) {
+		stripe.lock.lock();
+		try {
+			Appending appending = stripe.appending.get(ref);
+			if (durable && sequence > appending.heldSequence) {
+				Pending previous = stripe.pending.get(ref);
+				if (previous == null || previous.sequence() < sequence) {
+					long since = previous != null ? previous.since() : System.nanoTime();
+					stripe.pending.put(ref, new Pending(customer, sequence, since));
+					appending.heldSequence = sequence;
+					if (previous == null) {
+						pendingCount.incrementAndGet();
+					}
+				}
+			}
+			if (--appending.count == 0) {
+				stripe.appending.remove(ref);
+			}
+			stripe.appendingSequences.remove(sequence);
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	// The save of this customer not yet written to the database, or null
+	public CustomerDTO getPending(String ref) {
+		Stripe stripe = stripeFor(ref);
+		stripe.lock.lock();
+		try {
+			Pending pending = stripe.pending.get(ref);
+			return pending == null ? null : pending.customer();
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	// Flush on the flusher thread and wait for it, so the flush commits in its own transaction even
+	// when the caller is inside one. Throws unless the customer has no save held afterwards: the
+	// flush failed, or another save of the customer came in meanwhile.
+	public void flushNow(String ref) {
+		try {
+			flusher.submit(this::flush).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for buffered customer saves to be flushed", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Flushing buffered customer saves failed", e.getCause());
+		}
+		if (getPending(ref) != null) {
+			throw new CustomerVersionConflictException("Customer " + ref
+					+ " was changed by another save, reload it and try again");
+		}
+	}
+
+	// Write every held save to the database, then truncate the log to where the flush started.
+	// Returns the number of customers written, or throws if any could not be, leaving them held.
+	int flush() throws IOException {
+		long started = System.nanoTime();
+		// Every record before mark is held in a stripe by now, superseded by a later one that is, or
+		// still on its way to disk, in which case the mark is moved back to it
+		long mark = writeAheadLog.nextSequence();
+		Map<String, Pending> batch = new LinkedHashMap<>();
+		for (Stripe stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				batch.putAll(stripe.pending);
+				if (!stripe.appendingSequences.isEmpty()) {
+					mark = Math.min(mark, stripe.appendingSequences.first());
+				}
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		if (batch.isEmpty()) {
+			flushed(mark);
+			return 0;
+		}
+
+		List<Pending> pending = new ArrayList<>(batch.values());
+		int written = 0;
+		try {
+			for (int from = 0; from < pending.size(); from += batchSize) {
+				List<Pending> chunk = pending.subList(from, Math.min(from + batchSize, pending.size()));
+				write(chunk);
+				written += chunk.size();
+				release(chunk);
+			}
+		} catch (RuntimeException e) {
+			// Left held and in the log, for the next flush to retry
+			throw new IllegalStateException("Flushing " + pending.size() + " buffered customer saves failed, "
+					+ written + " written", e);
+		} finally {
+			flushes.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+		}
+		flushed(mark);
+		return written;
+	}
+
+	private void flushed(long mark) throws IOException {
+		if (flushMarks.isEmpty() || flushMarks.peekLast().sequence() < mark) {
+			flushMarks.addLast(new FlushMark(mark, System.nanoTime()));
+		}
+		truncate(false);
+	}
+
+	// Truncate the log to the last flush completed truncate-delay ago, or to the last flush of all
+	private void truncate(boolean all) throws IOException {
+		long now = System.nanoTime();
+		long sequence = 0;
+		while (!flushMarks.isEmpty() && (all || now - flushMarks.peekFirst().flushedAt() >= truncateDelayNanos)) {
+			sequence = flushMarks.pollFirst().sequence();
+		}
+		if (sequence > 0) {
+			writeAheadLog.truncate(sequence);
+		}
+	}
+
+	// Write a chunk, or if the batch fails, each customer on its own. A customer the database refuses
+	// is dropped rather than failing every flush after it; any other failure is thrown.
+	private void write(List<Pending> chunk) {
+		try {
+			customerBatchWriter.write(chunk.stream().map(pending -> CustomerMapper.toEntity(pending.customer())).toList());
+		} catch (RuntimeException batchFailure) {
+			if (!CustomerBatchWriter.isRefused(batchFailure)) {
+				throw batchFailure;
+			}
+			for (Pending pending : chunk) {
+				try {
+					customerBatchWriter.write(List.of(CustomerMapper.toEntity(pending.customer())));
+				} catch (RuntimeException e) {
+					if (!CustomerBatchWriter.isRefused(e)) {
+						throw e;
+					}
+					log.error("Dropping buffered save of customer {}, the database refused it",
+							pending.customer().getCustomerRef(), e);
+					rejected.increment();
+				}
+			}
+		}
+	}
+
+	// Stop holding the customers just written, unless saved again meanwhile. The cache is cleared
+	// only now that the write is committed, and the held saves answered reads until then.
+	private void release(List<Pending> written) {
+		List<String> refs = new ArrayList<>(written.size());
+		for (Pending pending : written) {
+			refs.add(pending.customer().getCustomerRef());
+		}
+		customerCache.invalidateAll(refs);
+
+		int released = 0;
+		for (Pending pending : written) {
+			String ref = pending.customer().getCustomerRef();
+			Stripe stripe = stripeFor(ref);
+			stripe.lock.lock();
+			try {
+				Pending current = stripe.pending.get(ref);
+				if (current != null && current.sequence() == pending.sequence()) {
+					stripe.pending.remove(ref);
+					released++;
+				}
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		pendingCount.addAndGet(-released);
+		synchronized (capacity) {
+			capacity.notifyAll();
+		}
+	}
+
+	// Hold the saves left in the log by the last run, the latest of each customer, and write them
+	private void replay() throws IOException {
+		List<WriteAheadLog.Entry> entries = writeAheadLog.read();
+		if (entries.isEmpty()) {
+			return;
+		}
+		long now = System.nanoTime();
+		for (WriteAheadLog.Entry entry : entries) {
+			CustomerDTO customer = deserialize(entry.payload());
+			Stripe stripe = stripeFor(customer.getCustomerRef());
+			if (stripe.pending.put(customer.getCustomerRef(), new Pending(customer, entry.sequence(), now)) == null) {
+				pendingCount.incrementAndGet();
+			}
+		}
+		log.info("Replaying {} customer saves ({} customers) from the write-ahead log in {}", entries.size(),
+				pendingCount.get(), directory);
+		// If the database cannot take them yet, they stay held for the scheduled flushes
+		flushQuietly();
+	}
+
+	private void awaitCapacity() {
+		if (pendingCount.get() < maxPending) {
+			return;
+		}
+		requestFlush();
+		synchronized (capacity) {
+			while (pendingCount.get() >= maxPending) {
+				try {
+					capacity.wait(flushInterval.toMillis() + 1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted waiting for buffered customer saves to be flushed", e);
+				}
+			}
+		}
+	}
+
+	// At most one extra flush queued behind the running one
+	private void requestFlush() {
+		if (flushQueued.compareAndSet(false, true)) {
+			flusher.execute(() -> {
+				flushQueued.set(false);
+				flushQuietly();
+			});
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException | RuntimeException e) {
+			log.error("Flushing buffered customer saves failed", e);
+		}
+	}
+
+	private double lagSeconds() {
+		long oldest = Long.MAX_VALUE;
+		for (Stripe stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				if (!stripe.pending.isEmpty()) {
+					oldest = Math.min(oldest, stripe.pending.values().iterator().next().since());
+				}
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		return oldest == Long.MAX_VALUE ? 0 : (System.nanoTime() - oldest) / 1e9;
+	}
+
+	private Stripe stripeFor(String ref) {
+		return stripes[Math.floorMod(ref.hashCode(), stripes.length)];
+	}
+
+	private static byte[] serialize(CustomerDTO customer) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			for (String field : CustomerMapper.toCsvRow(customer)) {
+				out.writeBoolean(field != null);
+				if (field != null) {
+					out.writeUTF(field);
+				}
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static CustomerDTO deserialize(byte[] record) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+			String[] row = new String[8];
+			for (int i = 0; i < row.length; i++) {
+				row[i] = in.readBoolean() ? in.readUTF() : null;
+			}
+			return CustomerMapper.toDto(CustomerMapper.fromCsvRow(row));
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package com.customer.demo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Merges saves of the same customer arriving within customer.write-coalescing.window into one
+// database write. Each save replaces the whole customer, so the merged write is simply the last
+// save to arrive: last writer wins, as it would if every save were written in arrival order, but
+// a burst of updates to a hot customer costs one transaction instead of one each. Every caller
+// waits for that write and gets its outcome, or its failure.
+//
+// Saves carrying a version are never merged: they are checked against the stored version and
+// written on their own. Writes for one ref always run on the same thread, one after another.
+@Component
+@ConditionalOnProperty(name = "customer.write-coalescing.enabled", havingValue = "true")
+public class CustomerWriteCoalescer implements DisposableBean {
+
+	private final CustomerService customerService;
+	private final long windowNanos;
+	private final ScheduledExecutorService[] writers;
+	private final Map<String, PendingSave> pending = new ConcurrentHashMap<>();
+
+	private final Counter requests;
+	private final Counter writes;
+
+	public CustomerWriteCoalescer(CustomerService customerService, MeterRegistry meterRegistry,
+			@Value("${customer.write-coalescing.window:20ms}") Duration window,
+			@Value("${customer.write-coalescing.threads:4}") int threads) {
+		this.customerService = customerService;
+		this.windowNanos = window.toNanos();
+		this.writers = new ScheduledExecutorService[threads];
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("customer-write-");
+		threadFactory.setDaemon(true);
+		for (int i = 0; i < threads; i++) {
+			writers[i] = new ScheduledThreadPoolExecutor(1, threadFactory);
+		}
+		this.requests = Counter.builder("customer.writes.coalescing.requests")
+				.description("Saves submitted to the write coalescer")
+				.register(meterRegistry);
+		this.writes = Counter.builder("customer.writes.coalescing.writes")
+				.description("Database writes the coalesced saves were merged into")
+				.register(meterRegistry);
+	}
+
+	// Save the customer, merged with other saves of it in the same window, and wait for the write
+	public SaveOutcome saveCustomer(CustomerDTO customerDTO) {
+		if (customerDTO.getVersion() != null || customerDTO.getCustomerRef() == null) {
+			return customerService.saveCustomer(customerDTO);
+		}
+		requests.increment();
+
+		CompletableFuture<SaveOutcome> outcome = new CompletableFuture<>();
+		String ref = customerDTO.getCustomerRef();
+		pending.compute(ref, (key, save) -> {
+			if (save == null) {
+				save = new PendingSave();
+				writerFor(key).schedule(() -> write(key), windowNanos, TimeUnit.NANOSECONDS);
+			}
+			save.latest = customerDTO;
+			save.waiting.add(outcome);
+			return save;
+		});
+
+		try {
+			return outcome.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	// Saves arriving from now on start the next window
+	private void write(String ref) {
+		PendingSave save = pending.remove(ref);
+		writes.increment();
+		try {
+			SaveOutcome outcome = customerService.saveCustomer(save.latest);
+			save.waiting.forEach(waiting -> waiting.complete(outcome));
+		} catch (RuntimeException e) {
+			save.waiting.forEach(waiting -> waiting.completeExceptionally(e));
+		}
+	}
+
+	private ScheduledExecutorService writerFor(String ref) {
+		return writers[Math.floorMod(ref.hashCode(), writers.length)];
+	}
+
+	// Writes already scheduled still run on shutdown, so no waiting save is dropped
+	@Override
+	public void destroy() throws InterruptedException {
+		for (ScheduledExecutorService writer : writers) {
+			writer.shutdown();
+		}
+		for (ScheduledExecutorService writer : writers) {
+			writer.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	// Only touched inside pending.compute and after the entry is removed, so it needs no locking
+	private static final class PendingSave {
+		private CustomerDTO latest;
+		private final List<CompletableFuture<SaveOutcome>> waiting = new ArrayList<>();
+	}
+
+}
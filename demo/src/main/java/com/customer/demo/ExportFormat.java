@@ -0,0 +1,21 @@
+package com.customer.demo;
+
+import org.springframework.http.MediaType;
+
+// Formats supported by the customer export
+public enum ExportFormat {
+
+	NDJSON(MediaType.APPLICATION_NDJSON),
+	CSV(new MediaType("text", "csv"));
+
+	private final MediaType mediaType;
+
+	ExportFormat(MediaType mediaType) {
+		this.mediaType = mediaType;
+	}
+
+	public MediaType getMediaType() {
+		return mediaType;
+	}
+
+}
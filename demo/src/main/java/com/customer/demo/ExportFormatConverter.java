@@ -0,0 +1,17 @@
+package com.customer.demo;
+
+import java.util.Locale;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+// Lets clients ask for ?format=csv as well as ?format=CSV
+@Component
+public class ExportFormatConverter implements Converter<String, ExportFormat> {
+
+	@Override
+	public ExportFormat convert(String source) {
+		return ExportFormat.valueOf(source.trim().toUpperCase(Locale.ROOT));
+	}
+
+}
@@ -1,31 +1,114 @@
 package com.customer.demo;
 
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import com.customer.demo.ErrorResponse;
 import com.customer.demo.CustomerNotFoundException;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @ControllerAdvice
 public class GlobalExceptionHandler  {
 	
+	private final MeterRegistry meterRegistry;
+	
+	public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
 	
 	// Custom exception handler for CustomerNotFoundException
     @ExceptionHandler(value= CustomerNotFoundException.class)
     public ResponseEntity<ErrorResponse> handleCustomerNotFoundException(CustomerNotFoundException ex){
+    	count(ex, HttpStatus.NOT_FOUND);
     	return ResponseEntity.status(HttpStatus.NOT_FOUND)
     						 .header("Content-Type", "application/json")
     						 .body(new ErrorResponse(HttpStatus.NOT_FOUND.value(),
     						  ex.getMessage()));
     }
     
+    // Custom exception handler for ImportInProgressException
+    @ExceptionHandler(value= ImportInProgressException.class)
+    public ResponseEntity<ErrorResponse> handleImportInProgressException(ImportInProgressException ex){
+    	count(ex, HttpStatus.CONFLICT);
+    	return ResponseEntity.status(HttpStatus.CONFLICT)
+    						 .header("Content-Type", "application/json")
+    						 .body(new ErrorResponse(HttpStatus.CONFLICT.value(),
+    						  ex.getMessage()));
+    }
+    
+    // Custom exception handler for CustomerVersionConflictException, a save based on an outdated version
+    @ExceptionHandler(value= CustomerVersionConflictException.class)
+    public ResponseEntity<ErrorResponse> handleCustomerVersionConflictException(CustomerVersionConflictException ex){
+    	count(ex, HttpStatus.CONFLICT);
+    	return ResponseEntity.status(HttpStatus.CONFLICT)
+    						 .header("Content-Type", "application/json")
+    						 .body(new ErrorResponse(HttpStatus.CONFLICT.value(),
+    						  ex.getMessage()));
+    }
+    
+    // Custom exception handler for InvalidRequestException
+    @ExceptionHandler(value= InvalidRequestException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidRequestException(InvalidRequestException ex){
+    	count(ex, HttpStatus.BAD_REQUEST);
+    	return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+    						 .header("Content-Type", "application/json")
+    						 .body(new ErrorResponse(HttpStatus.BAD_REQUEST.value(),
+    						  ex.getMessage()));
+    }
+    
+    // Custom exception handler for PartitionUnavailableException, the instance owning a customer did not answer
+    @ExceptionHandler(value= PartitionUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handlePartitionUnavailableException(PartitionUnavailableException ex){
+    	count(ex, HttpStatus.SERVICE_UNAVAILABLE);
+    	return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+    						 .header("Content-Type", "application/json")
+    						 .body(new ErrorResponse(HttpStatus.SERVICE_UNAVAILABLE.value(),
+    						  ex.getMessage()));
+    }
+    
+    // Custom exception handler for DataIntegrityViolationException, customer data the database refuses,
+    // e.g. a value too long for its column in a bulk save
+    @ExceptionHandler(value= DataIntegrityViolationException.class)
+    public ResponseEntity<ErrorResponse> handleDataIntegrityViolationException(DataIntegrityViolationException ex){
+    	count(ex, HttpStatus.BAD_REQUEST);
+    	return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+    						 .header("Content-Type", "application/json")
+    						 .body(new ErrorResponse(HttpStatus.BAD_REQUEST.value(),
+    						  "Customer data refused by the database"));
+    }
+    
+    // Exception handler for request parameters that cannot be converted, e.g. an unknown export format
+    @ExceptionHandler(value= MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<ErrorResponse> handleMethodArgumentTypeMismatchException(MethodArgumentTypeMismatchException ex){
+    	count(ex, HttpStatus.BAD_REQUEST);
+    	return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+    						 .header("Content-Type", "application/json")
+    						 .body(new ErrorResponse(HttpStatus.BAD_REQUEST.value(),
+    						  "Invalid value for parameter: " + ex.getName()));
+    }
+    
     // Generic exception handler for other exceptions
     @ExceptionHandler(value = Exception.class)
     public ResponseEntity<ErrorResponse> handleGenericException(Exception ex) {
+        count(ex, HttpStatus.INTERNAL_SERVER_ERROR);
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                              .header("Content-Type", "application/json")
                              .body(new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), "An unexpected error occurred"));
     }
+
+    // Count handled exceptions by type and the status they were answered with
+    private void count(Exception ex, HttpStatus status) {
+    	Counter.builder("customer.api.exceptions")
+    			.description("Exceptions handled by GlobalExceptionHandler")
+    			.tag("exception", ex.getClass().getSimpleName())
+    			.tag("status", String.valueOf(status.value()))
+    			.register(meterRegistry)
+    			.increment();
+    }
 	
-}
\ No newline at end of file
+}
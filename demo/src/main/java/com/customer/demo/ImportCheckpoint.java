@@ -0,0 +1,85 @@
+package com.customer.demo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Progress of an import saved next to its CSV file as <file>.checkpoint. Every row before offset
+// (after linesRead lines) has been committed or rejected, so a failed import resumes there. The
+// size and modification time identify the file the checkpoint was taken for; a checkpoint for a
+// file that has changed since is ignored.
+public record ImportCheckpoint(long offset, long linesRead, long fileSize, long lastModified) {
+
+	private static final Logger log = LoggerFactory.getLogger(ImportCheckpoint.class);
+
+	// Start of the file, as an import without a checkpoint begins
+	public static ImportCheckpoint start(Path csv) throws IOException {
+		return new ImportCheckpoint(0, 0, Files.size(csv), Files.getLastModifiedTime(csv).toMillis());
+	}
+
+	public static Path pathFor(Path csv) {
+		return csv.resolveSibling(csv.getFileName() + ".checkpoint");
+	}
+
+	// The saved checkpoint for csv, if there is one and the file has not changed since it was taken
+	public static Optional<ImportCheckpoint> load(Path csv) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(pathFor(csv))) {
+			properties.load(reader);
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
+		}
+
+		ImportCheckpoint saved;
+		try {
+			saved = new ImportCheckpoint(Long.parseLong(properties.getProperty("offset")),
+					Long.parseLong(properties.getProperty("linesRead")),
+					Long.parseLong(properties.getProperty("fileSize")),
+					Long.parseLong(properties.getProperty("lastModified")));
+		} catch (NumberFormatException e) {
+			log.warn("Ignoring unreadable checkpoint {}", pathFor(csv));
+			return Optional.empty();
+		}
+
+		ImportCheckpoint current = start(csv);
+		if (saved.fileSize() != current.fileSize() || saved.lastModified() != current.lastModified()) {
+			log.warn("Ignoring checkpoint {}, {} has changed since it was taken", pathFor(csv), csv);
+			return Optional.empty();
+		}
+		return Optional.of(saved);
+	}
+
+	public ImportCheckpoint at(long offset, long linesRead) {
+		return new ImportCheckpoint(offset, linesRead, fileSize, lastModified);
+	}
+
+	// Replace the saved checkpoint for csv, atomically so a crash never leaves half a file
+	public void save(Path csv) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("offset", Long.toString(offset));
+		properties.setProperty("linesRead", Long.toString(linesRead));
+		properties.setProperty("fileSize", Long.toString(fileSize));
+		properties.setProperty("lastModified", Long.toString(lastModified));
+
+		Path path = pathFor(csv);
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (Writer writer = Files.newBufferedWriter(temporary)) {
+			properties.store(writer, "Customer import checkpoint of " + csv.getFileName());
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static void delete(Path csv) throws IOException {
+		Files.deleteIfExists(pathFor(csv));
+	}
+
+}
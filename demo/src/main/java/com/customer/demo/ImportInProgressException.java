@@ -0,0 +1,9 @@
+package com.customer.demo;
+
+
+public class ImportInProgressException extends RuntimeException{
+
+    public ImportInProgressException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,140 @@
+package com.customer.demo;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Live, thread-safe progress of a single CSV import run
+public class ImportProgress {
+
+	// Only the first bad lines are kept so a badly broken file cannot exhaust the heap
+	static final int MAX_BAD_LINES = 100;
+
+	public enum Status { RUNNING, COMPLETED, FAILED }
+
+	private final Path path;
+	private final long startedAt = System.nanoTime();
+	private final AtomicLong rowsRead = new AtomicLong();
+	private final AtomicLong inserted = new AtomicLong();
+	private final AtomicLong updated = new AtomicLong();
+	private final AtomicLong unchanged = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong superseded = new AtomicLong();
+	private final List<Long> badLines = new ArrayList<>();
+	private final AtomicLong parseNanos = new AtomicLong();
+	private final AtomicLong readerBlockedNanos = new AtomicLong();
+	private final AtomicLong mapNanos = new AtomicLong();
+	private final AtomicLong writeNanos = new AtomicLong();
+	private final AtomicLong writerIdleNanos = new AtomicLong();
+	private volatile Status status = Status.RUNNING;
+	private volatile long finishedAt;
+	private volatile String error;
+	private volatile long resumedFromLine;
+	private volatile Path rejectedRowsFile;
+
+	public ImportProgress(Path path) {
+		this.path = path;
+	}
+
+	// Line of the checkpoint a resumed import started from
+	public void resumedFrom(long lineNumber) {
+		resumedFromLine = lineNumber;
+	}
+
+	// Side file the rejected rows are written to
+	public void rejectedRowsFile(Path file) {
+		rejectedRowsFile = file;
+	}
+
+	public long rowRead() {
+		return rowsRead.incrementAndGet();
+	}
+
+	public void written(BulkSaveResult result) {
+		inserted.addAndGet(result.getInserted());
+		updated.addAndGet(result.getUpdated());
+		unchanged.addAndGet(result.getUnchanged());
+	}
+
+	// Record a row overwritten before it was written by a later row with the same reference
+	public void superseded() {
+		superseded.incrementAndGet();
+	}
+
+	// Time spent reading and parsing the file on the reader thread
+	public void parsed(long nanos) {
+		parseNanos.addAndGet(nanos);
+	}
+
+	// Time the reader was blocked because the mapping workers were behind (backpressure)
+	public void readerBlocked(long nanos) {
+		readerBlockedNanos.addAndGet(nanos);
+	}
+
+	// Time spent validating and mapping rows, summed over all workers
+	public void mapped(long nanos) {
+		mapNanos.addAndGet(nanos);
+	}
+
+	// Time spent writing batches, summed over all writers
+	public void wrote(long nanos) {
+		writeNanos.addAndGet(nanos);
+	}
+
+	// Time the writers waited for a batch because the earlier stages were behind
+	public void writerIdle(long nanos) {
+		writerIdleNanos.addAndGet(nanos);
+	}
+
+	// Record a row that could not be parsed, validated or written
+	public void rejected(long lineNumber) {
+		rejected.incrementAndGet();
+		synchronized (badLines) {
+			if (badLines.size() < MAX_BAD_LINES) {
+				badLines.add(lineNumber);
+			}
+		}
+	}
+
+	public void completed() {
+		finish(Status.COMPLETED);
+	}
+
+	public void failed(Exception e) {
+		error = e.getMessage();
+		finish(Status.FAILED);
+	}
+
+	private void finish(Status finalStatus) {
+		finishedAt = System.nanoTime();
+		status = finalStatus;
+	}
+
+	public boolean isRunning() {
+		return status == Status.RUNNING;
+	}
+
+	public double rowsPerSecond() {
+		long elapsed = elapsedNanos();
+		return elapsed == 0 ? 0 : rowsRead.get() * 1_000_000_000d / elapsed;
+	}
+
+	private long elapsedNanos() {
+		return (status == Status.RUNNING ? System.nanoTime() : finishedAt) - startedAt;
+	}
+
+	// Take a consistent-enough snapshot for reporting while the import keeps running
+	public ImportReport toReport() {
+		List<Long> lines;
+		synchronized (badLines) {
+			lines = List.copyOf(badLines);
+		}
+		return new ImportReport(path.toString(), status, rowsRead.get(), inserted.get(), updated.get(),
+				unchanged.get(), rejected.get(), superseded.get(), lines, elapsedNanos() / 1_000_000, rowsPerSecond(), error,
+				new ImportReport.StageTimings(parseNanos.get() / 1_000_000, readerBlockedNanos.get() / 1_000_000,
+						mapNanos.get() / 1_000_000, writeNanos.get() / 1_000_000, writerIdleNanos.get() / 1_000_000),
+				resumedFromLine, rejected.get() > 0 && rejectedRowsFile != null ? rejectedRowsFile.toString() : null);
+	}
+
+}
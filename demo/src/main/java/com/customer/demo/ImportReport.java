@@ -0,0 +1,42 @@
+package com.customer.demo;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Snapshot of an import run returned by the import endpoints
+@Getter
+@AllArgsConstructor
+public class ImportReport {
+	private final String path;
+	private final ImportProgress.Status status;
+	private final long rowsRead;
+	private final long inserted;
+	private final long updated;
+	private final long unchanged;
+	private final long rejected;
+	// Rows overwritten by a later row with the same reference in the same batch, and never written
+	private final long superseded;
+	private final List<Long> badLines;
+	private final long elapsedMillis;
+	private final double rowsPerSecond;
+	private final String error;
+	private final StageTimings stages;
+	// First line read by an import resumed from a checkpoint, 0 when it started from the beginning
+	private final long resumedFromLine;
+	// Side file holding the rejected rows, when there are any
+	private final String rejectedRowsFile;
+
+	// Milliseconds spent in each stage of the import pipeline. Mapping and writing are summed
+	// over their threads, so they can exceed the elapsed time of the run.
+	@Getter
+	@AllArgsConstructor
+	public static class StageTimings {
+		private final long parseMillis;
+		private final long readerBlockedMillis;
+		private final long mapMillis;
+		private final long writeMillis;
+		private final long writerIdleMillis;
+	}
+}
@@ -0,0 +1,9 @@
+package com.customer.demo;
+
+
+public class InvalidRequestException extends RuntimeException{
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,106 @@
+package com.customer.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Consistent-hash ring assigning each customerRef to one of the members. Every member is placed on
+// the ring at virtualNodes points, hashed from its name, and a ref is owned by the member of the
+// first point at or after the ref's hash. Adding or removing a member only moves the refs between
+// its points and the ones before them, about 1/N of all refs, and the many points per member keep
+// the share of each close to even.
+//
+// The ring only depends on the member names and virtualNodes, so every instance, and any client,
+// configured with the same members computes the same owners.
+public final class PartitionRing {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final List<String> members;
+	// Points in ascending hash order, and the index in members of the member at each point
+	private final long[] points;
+	private final int[] owners;
+
+	public PartitionRing(Collection<String> members, int virtualNodes) {
+		if (members.isEmpty()) {
+			throw new IllegalArgumentException("A partition ring needs at least one member");
+		}
+		if (virtualNodes < 1) {
+			throw new IllegalArgumentException("virtualNodes must be at least 1");
+		}
+		this.members = List.copyOf(members);
+		if (this.members.stream().distinct().count() != this.members.size()) {
+			throw new IllegalArgumentException("Partition members must be distinct: " + members);
+		}
+
+		int size = this.members.size() * virtualNodes;
+		long[][] ring = new long[size][];
+		for (int member = 0; member < this.members.size(); member++) {
+			for (int node = 0; node < virtualNodes; node++) {
+				ring[member * virtualNodes + node] = new long[] { hash(this.members.get(member) + "#" + node), member };
+			}
+		}
+		// Ties, however unlikely, go to the member listed first on every instance
+		Arrays.sort(ring, (a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(a[1], b[1]));
+		this.points = new long[size];
+		this.owners = new int[size];
+		for (int i = 0; i < size; i++) {
+			points[i] = ring[i][0];
+			owners[i] = (int) ring[i][1];
+		}
+	}
+
+	public List<String> getMembers() {
+		return members;
+	}
+
+	public String ownerOf(String customerRef) {
+		return members.get(owners[pointFor(hash(customerRef))]);
+	}
+
+	// Group items by the member owning their ref, keeping the order of the items within each group
+	public <T> Map<String, List<T>> partition(Collection<T> items, Function<T, String> customerRef) {
+		Map<String, List<T>> partitions = new LinkedHashMap<>();
+		for (T item : items) {
+			partitions.computeIfAbsent(ownerOf(customerRef.apply(item)), owner -> new ArrayList<>()).add(item);
+		}
+		return partitions;
+	}
+
+	// Index of the first point at or after hash, wrapping round to the first point
+	private int pointFor(long hash) {
+		int low = 0;
+		int high = points.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (Long.compareUnsigned(points[mid], hash) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low == points.length ? 0 : low;
+	}
+
+	// FNV-1a over the chars, finished with MurmurHash3's fmix64 so that refs differing only in their
+	// last characters, such as sequential numbers, still spread over the whole ring
+	static long hash(String value) {
+		long hash = FNV_OFFSET;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb3fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
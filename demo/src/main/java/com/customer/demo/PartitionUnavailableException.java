@@ -0,0 +1,10 @@
+package com.customer.demo;
+
+// The instance owning a customer could not be reached, or did not answer in time, when a request was
+// forwarded to it
+public class PartitionUnavailableException extends RuntimeException {
+
+    public PartitionUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
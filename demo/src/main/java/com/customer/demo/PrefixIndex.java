@@ -0,0 +1,255 @@
+package com.customer.demo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+// Case-insensitive prefix index over one customer field, mapping values to customerRefs.
+//
+// The bulk of the index is a pair of parallel arrays sorted by value, so a completion is a binary
+// search followed by a short scan. Equal values share one String instance. Writes made since the
+// arrays were built go to a small concurrent overlay that is merged in at query time. A rebuild
+// creates fresh arrays while reads carry on against the old ones, then swaps them in.
+public class PrefixIndex {
+
+	// Sort order of the index: case-insensitive by value, then by ref
+	static final Comparator<Entry> ORDER = Comparator.comparing(Entry::value, String.CASE_INSENSITIVE_ORDER)
+			.thenComparing(Entry::ref);
+
+	// Approximate sizes in bytes on a 64-bit JVM with compressed oops
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+	private static final int STRING_OVERHEAD = 24 + ARRAY_HEADER;
+
+	public record Entry(String value, String ref) {
+	}
+
+	private volatile State state = new State(new String[0], new String[0], 0, 0, new Overlay(), null);
+
+	// Writers share the read lock, a rebuild takes the write lock only to start and to swap
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	public void add(String value, String ref) {
+		if (value == null || value.isBlank()) {
+			return;
+		}
+		Entry entry = new Entry(value, ref);
+		lock.readLock().lock();
+		try {
+			State current = state;
+			current.overlay.add(entry);
+			if (current.pending != null) {
+				current.pending.add(entry);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void remove(String value, String ref) {
+		if (value == null || value.isBlank()) {
+			return;
+		}
+		Entry entry = new Entry(value, ref);
+		lock.readLock().lock();
+		try {
+			State current = state;
+			current.overlay.remove(entry);
+			if (current.pending != null) {
+				current.pending.remove(entry);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Up to limit entries whose value starts with prefix, ignoring case, in index order
+	public List<Entry> complete(String prefix, int limit) {
+		State current = state;
+		String[] values = current.values;
+		String[] refs = current.refs;
+		List<Entry> result = new ArrayList<>(Math.min(limit, 16));
+
+		int i = lowerBound(values, prefix);
+		Iterator<Entry> added = current.overlay.added.tailSet(new Entry(prefix, ""), true).iterator();
+		Entry fromOverlay = added.hasNext() ? added.next() : null;
+
+		while (result.size() < limit) {
+			Entry fromArrays = null;
+			while (i < values.length && current.overlay.removed.contains(fromArrays = new Entry(values[i], refs[i]))) {
+				fromArrays = null;
+				i++;
+			}
+			if (i >= values.length) {
+				fromArrays = null;
+			}
+
+			Entry next;
+			if (fromArrays == null && fromOverlay == null) {
+				break;
+			} else if (fromOverlay == null || (fromArrays != null && ORDER.compare(fromArrays, fromOverlay) < 0)) {
+				next = fromArrays;
+				i++;
+			} else {
+				// An entry in both the arrays and the overlay is returned once
+				if (fromArrays != null && ORDER.compare(fromArrays, fromOverlay) == 0) {
+					i++;
+				}
+				next = fromOverlay;
+				fromOverlay = added.hasNext() ? added.next() : null;
+			}
+
+			// Matching values are contiguous, so the first one that does not match ends the scan
+			if (!next.value().regionMatches(true, 0, prefix, 0, prefix.length())) {
+				break;
+			}
+			result.add(next);
+		}
+		return result;
+	}
+
+	// Start collecting writes for the arrays about to be built
+	public void beginRebuild() {
+		lock.writeLock().lock();
+		try {
+			State current = state;
+			state = new State(current.values, current.refs, current.uniqueValueBytes, current.refBytes,
+					current.overlay, new Overlay());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Swap in arrays built from entries read after beginRebuild. Writes collected since then
+	// become the new overlay.
+	public void finishRebuild(List<Entry> entries) {
+		entries.sort(ORDER);
+		String[] values = new String[entries.size()];
+		String[] refs = new String[entries.size()];
+		Map<String, String> canonical = new HashMap<>();
+		long uniqueValueBytes = 0;
+		long refBytes = 0;
+		for (int i = 0; i < values.length; i++) {
+			Entry entry = entries.get(i);
+			String value = canonical.putIfAbsent(entry.value(), entry.value());
+			if (value == null) {
+				value = entry.value();
+				uniqueValueBytes += stringBytes(value);
+			}
+			values[i] = value;
+			refs[i] = entry.ref();
+			refBytes += stringBytes(entry.ref());
+		}
+
+		lock.writeLock().lock();
+		try {
+			Overlay pending = state.pending != null ? state.pending : new Overlay();
+			state = new State(values, refs, uniqueValueBytes, refBytes, pending, null);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Visit every entry of the index, the arrays and the writes made since they were built, in no
+	// particular order
+	public void forEach(BiConsumer<String, String> action) {
+		State current = state;
+		String[] values = current.values;
+		String[] refs = current.refs;
+		for (int i = 0; i < values.length; i++) {
+			if (!current.overlay.removed.contains(new Entry(values[i], refs[i]))) {
+				action.accept(values[i], refs[i]);
+			}
+		}
+		for (Entry entry : current.overlay.added) {
+			if (!contains(values, refs, entry)) {
+				action.accept(entry.value(), entry.ref());
+			}
+		}
+	}
+
+	public int size() {
+		return state.values.length;
+	}
+
+	public int overlaySize() {
+		Overlay overlay = state.overlay;
+		return overlay.added.size() + overlay.removed.size();
+	}
+
+	// Approximate heap held by the arrays and the distinct values, and optionally the refs. The
+	// refs are usually shared with another index over the same customers.
+	public long estimatedBytes(boolean includeRefs) {
+		State current = state;
+		long bytes = 2L * (ARRAY_HEADER + (long) REFERENCE * current.values.length) + current.uniqueValueBytes;
+		return includeRefs ? bytes + current.refBytes : bytes;
+	}
+
+	private static long stringBytes(String value) {
+		// Latin-1 compact strings take one byte per character, padded to 8 bytes
+		return STRING_OVERHEAD + ((value.length() + 7) & ~7);
+	}
+
+	// First position whose value is not below prefix, ignoring case
+	private static int lowerBound(String[] values, String prefix) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (String.CASE_INSENSITIVE_ORDER.compare(values[mid], prefix) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static boolean contains(String[] values, String[] refs, Entry entry) {
+		int low = 0;
+		int high = values.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int order = ORDER.compare(new Entry(values[mid], refs[mid]), entry);
+			if (order < 0) {
+				low = mid + 1;
+			} else if (order > 0) {
+				high = mid - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private record State(String[] values, String[] refs, long uniqueValueBytes, long refBytes,
+			Overlay overlay, Overlay pending) {
+	}
+
+	private static final class Overlay {
+
+		private final NavigableSet<Entry> added = new ConcurrentSkipListSet<>(ORDER);
+		private final Set<Entry> removed = ConcurrentHashMap.newKeySet();
+
+		void add(Entry entry) {
+			removed.remove(entry);
+			added.add(entry);
+		}
+
+		void remove(Entry entry) {
+			added.remove(entry);
+			removed.add(entry);
+		}
+	}
+
+}
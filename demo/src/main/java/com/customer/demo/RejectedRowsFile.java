@@ -0,0 +1,89 @@
+package com.customer.demo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvValidationException;
+
+// Side file <file>.rejected.csv collecting the rows an import could not use. Each row holds the
+// line number, the reason and the row's fields, so rejected rows can be fixed and imported again.
+// The file is only created once a row is rejected. A resumed import appends to it and skips rows
+// it already holds, which it may see again when they were rejected after the last checkpoint.
+public class RejectedRowsFile implements Closeable {
+
+	private final Path path;
+	private final Set<Long> alreadyWritten = new HashSet<>();
+	private CSVWriter writer;
+	private long written;
+
+	// Open the side file of csv, keeping its rows when resuming and discarding them otherwise
+	public RejectedRowsFile(Path csv, boolean resume) throws IOException {
+		this.path = csv.resolveSibling(csv.getFileName() + ".rejected.csv");
+		if (!resume) {
+			Files.deleteIfExists(path);
+		} else if (Files.exists(path)) {
+			try (CSVReader reader = new CSVReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+				String[] row;
+				while ((row = reader.readNext()) != null) {
+					alreadyWritten.add(Long.parseLong(row[0]));
+				}
+			} catch (CsvValidationException | NumberFormatException e) {
+				throw new IOException("Unreadable rejected rows file " + path, e);
+			}
+		}
+	}
+
+	public synchronized void write(long lineNumber, String reason, String[] fields) {
+		if (!alreadyWritten.add(lineNumber)) {
+			return;
+		}
+		String[] row = new String[fields.length + 2];
+		row[0] = Long.toString(lineNumber);
+		row[1] = reason;
+		System.arraycopy(fields, 0, row, 2, fields.length);
+		try {
+			if (writer == null) {
+				writer = new CSVWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+			}
+			writer.writeNext(row);
+			written++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Make the rows written so far durable, before a checkpoint moves past them
+	public synchronized void flush() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	// Rows written by this import, not counting those kept from before a resume
+	public synchronized long getWritten() {
+		return written;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+}
@@ -0,0 +1,4 @@
+package com.customer.demo;
+
+// What saving a single customer did to the stored row
+public enum SaveOutcome { INSERTED, UPDATED, UNCHANGED }
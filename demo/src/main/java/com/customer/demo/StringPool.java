@@ -0,0 +1,42 @@
+package com.customer.demo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Bounded pool of canonical String instances for low-cardinality values such as towns, counties
+// and countries. Equal values read from different rows then share one instance, so cached DTOs
+// and import batches hold each distinct value once. Unlike String.intern() the pool is bounded and
+// stays out of the JVM string table: once full, values are returned as they are.
+public final class StringPool {
+
+	// Longer values are unlikely to repeat and are not worth a lookup
+	private static final int MAX_VALUE_LENGTH = 64;
+
+	private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+	private final int maximumSize;
+
+	public StringPool(int maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	// The pooled instance equal to value, adding value to the pool if there is room
+	public String canonical(String value) {
+		if (value == null || value.length() > MAX_VALUE_LENGTH) {
+			return value;
+		}
+		String pooled = values.get(value);
+		if (pooled != null) {
+			return pooled;
+		}
+		if (values.size() >= maximumSize) {
+			return value;
+		}
+		pooled = values.putIfAbsent(value, value);
+		return pooled != null ? pooled : value;
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+}
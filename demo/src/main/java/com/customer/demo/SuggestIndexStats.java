@@ -0,0 +1,17 @@
+package com.customer.demo;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public class SuggestIndexStats {
+    private final boolean enabled;
+    private final boolean rebuilding;
+    private final int names;
+    private final int postcodes;
+    private final int pendingWrites;
+    private final long estimatedBytes;
+    private final long estimatedBytesPerMillionCustomers;
+    private final long lastRebuildMillis;
+}
@@ -0,0 +1,351 @@
+package com.customer.demo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Append-only log of records in numbered segment files wal-<first sequence>.log. Appending only
+// copies the record into a memory buffer; one sync thread writes the buffer to the current segment
+// and forces it to disk, and every record appended while the previous force ran goes out with the
+// next one (group commit). awaitDurable returns once a record is on disk.
+//
+// Each record is [length][CRC32C][sequence][payload]. A crash can leave a torn record at the end
+// of the last segment; replay stops at the first record that is incomplete or fails its checksum.
+// Once the records before a sequence number have been applied elsewhere, truncate saves that
+// number as the checkpoint, so that replay skips them, and deletes the segments holding only them.
+// Segments are rotated at segmentSize.
+public class WriteAheadLog implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+	private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+	private static final String PREFIX = "wal-";
+	private static final String SUFFIX = ".log";
+	private static final String CHECKPOINT = "checkpoint";
+
+	public record Entry(long sequence, byte[] payload) {
+	}
+
+	private final Path directory;
+	private final long segmentSize;
+
+	// Guarded by this: records appended but not yet handed to the sync thread
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+	private long nextSequence;
+	private boolean closed;
+	private IOException failure;
+
+	// Guarded by this: the durable sequence only moves on once the sync thread has forced the segment
+	private long durableSequence;
+
+	// Owned by the sync thread, and by truncate for the closed segments
+	private FileChannel segment;
+	private final Deque<Segment> closedSegments = new ArrayDeque<>();
+	private long segmentFirstSequence;
+
+	// Records before it have been applied and are skipped by read
+	private volatile long checkpoint;
+
+	private final Thread syncThread;
+	private final AtomicLong syncs = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+
+	private record Segment(Path path, long firstSequence) {
+	}
+
+	// Open the log in directory, appending after the records already in it. A torn or corrupt
+	// record left by a crash is cut off, with anything after it.
+	public WriteAheadLog(Path directory, long segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(directory);
+		this.checkpoint = readCheckpoint();
+
+		List<Entry> entries = new ArrayList<>();
+		boolean torn = false;
+		for (Path path : segments()) {
+			if (torn) {
+				log.warn("Deleting write-ahead log {} after a torn record", path);
+				Files.delete(path);
+				continue;
+			}
+			long valid = read(path, entries);
+			if (valid < Files.size(path)) {
+				log.warn("Write-ahead log {} ends with a torn or corrupt record at {}, cutting it off", path, valid);
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+					channel.truncate(valid);
+				}
+				torn = true;
+			}
+			closedSegments.addLast(new Segment(path, firstSequence(path)));
+		}
+		// Sequence numbers start at 1 and carry on after the last record, or the checkpoint
+		long last = Math.max(checkpoint - 1, 0);
+		if (!entries.isEmpty()) {
+			last = Math.max(last, entries.get(entries.size() - 1).sequence());
+		}
+		this.nextSequence = last + 1;
+		this.durableSequence = last;
+		openSegment(nextSequence);
+
+		this.syncThread = new Thread(this::sync, "customer-wal-sync");
+		syncThread.setDaemon(true);
+		syncThread.start();
+	}
+
+	// Every record in the log after the checkpoint, in sequence order
+	public List<Entry> read() throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		for (Path path : segments()) {
+			if (read(path, entries) < Files.size(path)) {
+				break;
+			}
+		}
+		entries.removeIf(entry -> entry.sequence() < checkpoint);
+		return entries;
+	}
+
+	// Add the records of a segment to entries, returning the length of its valid records
+	private static long read(Path path, List<Entry> entries) throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+		while (bytes.remaining() >= HEADER_SIZE) {
+			int start = bytes.position();
+			int length = bytes.getInt();
+			int checksum = bytes.getInt();
+			if (length < Long.BYTES || length > bytes.remaining()) {
+				return start;
+			}
+			byte[] record = new byte[length];
+			bytes.get(record);
+			CRC32C crc = new CRC32C();
+			crc.update(record);
+			if ((int) crc.getValue() != checksum) {
+				return start;
+			}
+			ByteBuffer body = ByteBuffer.wrap(record);
+			long sequence = body.getLong();
+			byte[] payload = new byte[body.remaining()];
+			body.get(payload);
+			entries.add(new Entry(sequence, payload));
+		}
+		return bytes.position();
+	}
+
+	// Append a record and return its sequence number. It is not durable until awaitDurable returns.
+	public synchronized long append(byte[] payload) throws IOException {
+		if (failure != null) {
+			throw new IOException("Write-ahead log failed", failure);
+		}
+		if (closed) {
+			throw new IOException("Write-ahead log is closed");
+		}
+		int length = Long.BYTES + payload.length;
+		if (pending.remaining() < Integer.BYTES * 2 + length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + Integer.BYTES * 2 + length));
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		long sequence = nextSequence++;
+		ByteBuffer record = ByteBuffer.allocate(length).putLong(sequence).put(payload);
+		CRC32C crc = new CRC32C();
+		crc.update(record.array());
+		pending.putInt(length).putInt((int) crc.getValue()).put(record.array());
+		notifyAll();
+		return sequence;
+	}
+
+	// Wait until the record with this sequence number has been forced to disk
+	public synchronized void awaitDurable(long sequence) throws IOException {
+		while (durableSequence < sequence) {
+			if (failure != null) {
+				throw new IOException("Write-ahead log failed", failure);
+			}
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the write-ahead log");
+			}
+		}
+	}
+
+	// Sequence number the next record will get
+	public synchronized long nextSequence() {
+		return nextSequence;
+	}
+
+	// Mark the records before sequence as applied, and delete the segments holding only them
+	public void truncate(long sequence) throws IOException {
+		if (sequence <= checkpoint) {
+			return;
+		}
+		writeCheckpoint(sequence);
+		checkpoint = sequence;
+		while (true) {
+			Segment oldest;
+			synchronized (closedSegments) {
+				oldest = closedSegments.peekFirst();
+				if (oldest == null) {
+					return;
+				}
+				// A segment ends just before the first record of the one after it
+				Segment next = closedSegments.stream().skip(1).findFirst().orElse(null);
+				long nextFirstSequence = next != null ? next.firstSequence() : segmentFirstSequence;
+				if (nextFirstSequence > sequence) {
+					return;
+				}
+				closedSegments.pollFirst();
+			}
+			Files.deleteIfExists(oldest.path());
+		}
+	}
+
+	// Times the log was forced to disk; appends divided by syncs is the group commit size
+	public long getSyncs() {
+		return syncs.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	// Write out the records appended so far and stop the sync thread
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			syncThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		segment.close();
+	}
+
+	private void sync() {
+		ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+		while (true) {
+			ByteBuffer batch;
+			long through;
+			synchronized (this) {
+				while (pending.position() == 0 && !closed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.position() == 0) {
+					return;
+				}
+				batch = pending;
+				through = nextSequence - 1;
+				spare.clear();
+				pending = spare;
+			}
+
+			try {
+				batch.flip();
+				int bytes = batch.remaining();
+				while (batch.hasRemaining()) {
+					segment.write(batch);
+				}
+				segment.force(false);
+				syncs.incrementAndGet();
+				bytesWritten.addAndGet(bytes);
+				if (segment.size() >= segmentSize) {
+					rotate(through + 1);
+				}
+			} catch (IOException e) {
+				log.error("Writing the write-ahead log in {} failed", directory, e);
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				return;
+			}
+
+			synchronized (this) {
+				durableSequence = through;
+				notifyAll();
+			}
+			spare = batch;
+		}
+	}
+
+	private void rotate(long firstSequence) throws IOException {
+		segment.close();
+		synchronized (closedSegments) {
+			closedSegments.addLast(new Segment(segmentPath(segmentFirstSequence), segmentFirstSequence));
+		}
+		openSegment(firstSequence);
+	}
+
+	private void openSegment(long firstSequence) throws IOException {
+		Path path = segmentPath(firstSequence);
+		segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		synchronized (closedSegments) {
+			segmentFirstSequence = firstSequence;
+			closedSegments.removeIf(closed -> closed.path().equals(path));
+		}
+	}
+
+	private long readCheckpoint() throws IOException {
+		Path path = directory.resolve(CHECKPOINT);
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		return Long.parseLong(Files.readString(path).trim());
+	}
+
+	// Written beside and then moved over the previous checkpoint, so a crash leaves one or the other
+	private void writeCheckpoint(long sequence) throws IOException {
+		Path path = directory.resolve(CHECKPOINT);
+		Path temporary = directory.resolve(CHECKPOINT + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			channel.write(ByteBuffer.wrap(Long.toString(sequence).getBytes(StandardCharsets.US_ASCII)));
+			channel.force(false);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Path segmentPath(long firstSequence) {
+		return directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+	}
+
+	private List<Path> segments() throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			paths.forEach(segments::add);
+		}
+		segments.sort(null);
+		return segments;
+	}
+
+	private static long firstSequence(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+@DataJpaTest
+@Import({ CustomerBatchWriter.class, CustomerCache.class, CustomerSuggestIndex.class })
+public class CustomerBatchWriterTest {
+
+    @Autowired
+    private CustomerBatchWriter customerBatchWriter;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    /**
+     * Test to verify that new rows are inserted and existing rows are updated in place.
+     */
+    @Test
+    public void testWrite_InsertsAndUpdates() {
+        customerRepository.saveAndFlush(Customer.builder().customerRef("1").customerName("Old Name").build());
+
+        BulkSaveResult result = customerBatchWriter.write(List.of(
+                Customer.builder().customerRef("1").customerName("New Name").build(),
+                Customer.builder().customerRef("2").customerName("Another").build()));
+
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals("New Name", customerRepository.findByCustomerRef("1").getCustomerName());
+        assertEquals("Another", customerRepository.findByCustomerRef("2").getCustomerName());
+    }
+
+    /**
+     * Test to verify that rows identical to the stored ones are counted as unchanged and not written.
+     */
+    @Test
+    public void testWrite_SkipsUnchanged() {
+        customerBatchWriter.write(List.of(
+                Customer.builder().customerRef("1").customerName("Same").town("Leeds").build(),
+                Customer.builder().customerRef("2").customerName("Old Name").build()));
+
+        BulkSaveResult result = customerBatchWriter.write(List.of(
+                Customer.builder().customerRef("1").customerName("Same").town("Leeds").build(),
+                Customer.builder().customerRef("2").customerName("New Name").build()));
+
+        assertEquals(0, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getUnchanged());
+        assertEquals("New Name", customerRepository.findByCustomerRef("2").getCustomerName());
+    }
+}
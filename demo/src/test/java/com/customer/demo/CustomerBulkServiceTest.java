@@ -0,0 +1,126 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CustomerBulkServiceTest {
+
+    @Mock
+    private CustomerBatchWriter customerBatchWriter;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CustomerBulkService customerBulkService;
+
+    private final List<List<String>> writtenChunks = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerBulkService = new CustomerBulkService(customerBatchWriter, new ObjectMapper(), transactionManager, 2, false);
+
+        // Record each chunk handed to the writer and report every row as inserted
+        when(customerBatchWriter.write(any())).thenAnswer(invocation -> {
+            Collection<Customer> chunk = invocation.getArgument(0);
+            writtenChunks.add(chunk.stream().map(Customer::getCustomerRef).toList());
+            return new BulkSaveResult(chunk.size(), 0, 0, 0, 0);
+        });
+    }
+
+    /**
+     * Test to verify that NDJSON input is split into chunks of the configured size.
+     */
+    @Test
+    public void testSaveCustomers_Ndjson_Chunked() throws Exception {
+        String body = "{\"customerRef\":\"1\"}\n{\"customerRef\":\"2\"}\n{\"customerRef\":\"3\"}\n";
+
+        BulkSaveResult result = customerBulkService.saveCustomers(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, result.getInserted());
+        assertEquals(List.of(List.of("1", "2"), List.of("3")), writtenChunks);
+        verify(customerBatchWriter, times(2)).write(any());
+    }
+
+    /**
+     * Test to verify that a JSON array is accepted and that rows without a reference are rejected.
+     */
+    @Test
+    public void testSaveCustomers_JsonArray_RejectsMissingRef() throws Exception {
+        String body = "[{\"customerRef\":\"1\"},{\"customerName\":\"No Ref\"},{\"customerRef\":\" \"}]";
+
+        BulkSaveResult result = customerBulkService.saveCustomers(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, result.getInserted());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of(List.of("1")), writtenChunks);
+    }
+
+    /**
+     * Test to verify that a reference repeated within a chunk is written once and that the earlier row is
+     * counted as superseded rather than updated.
+     */
+    @Test
+    public void testSaveCustomers_DuplicateRefInChunk() {
+        List<CustomerDTO> customers = List.of(
+                CustomerDTO.builder().customerRef("1").customerName("First").build(),
+                CustomerDTO.builder().customerRef("1").customerName("Second").build());
+
+        BulkSaveResult result = customerBulkService.saveCustomers(customers.iterator());
+
+        assertEquals(1, result.getInserted());
+        assertEquals(0, result.getUpdated());
+        assertEquals(1, result.getSuperseded());
+        assertEquals(List.of(List.of("1")), writtenChunks);
+    }
+
+    /**
+     * Test to verify that a chunk the database refuses is retried row by row, so that only the refused row
+     * is rejected and counted, and the rows around it in later chunks are still written.
+     */
+    @Test
+    public void testSaveCustomers_OversizedRowRejected() throws Exception {
+        // The column holds 255 characters
+        doAnswer(invocation -> {
+            Collection<Customer> chunk = invocation.getArgument(0);
+            if (chunk.stream().anyMatch(customer -> customer.getCustomerName().length() > 255)) {
+                throw new DataIntegrityViolationException("Value too long for column CUSTOMER_NAME");
+            }
+            writtenChunks.add(chunk.stream().map(Customer::getCustomerRef).toList());
+            return new BulkSaveResult(chunk.size(), 0, 0, 0, 0);
+        }).when(customerBatchWriter).write(any());
+        String body = "{\"customerRef\":\"1\",\"customerName\":\"One\"}\n"
+                + "{\"customerRef\":\"2\",\"customerName\":\"Two\"}\n"
+                + "{\"customerRef\":\"3\",\"customerName\":\"" + "x".repeat(300) + "\"}\n"
+                + "{\"customerRef\":\"4\",\"customerName\":\"Four\"}\n"
+                + "{\"customerRef\":\"5\",\"customerName\":\"Five\"}\n";
+
+        BulkSaveResult result = customerBulkService.saveCustomers(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(4, result.getInserted());
+        assertEquals(1, result.getRejected());
+        assertEquals(List.of(List.of("1", "2"), List.of("4"), List.of("5")), writtenChunks);
+    }
+}
@@ -7,10 +7,13 @@ import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.never;
+import static org.mockito.ArgumentMatchers.any;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -27,11 +30,22 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.InputStream;
+import java.util.List;
+
 public class CustomerControllerTest {
 
     @Mock
     private CustomerService customerService;
 
+    @Mock
+    private CustomerBulkService customerBulkService;
+
+    @Mock
+    private CustomerExporter customerExporter;
+
     @InjectMocks
     private CustomerController customerController;
     
@@ -40,11 +54,13 @@ public class CustomerControllerTest {
     
     private ObjectMapper objectMapper = new ObjectMapper();
 
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
         mockMvc = MockMvcBuilders.standaloneSetup(customerController)
-        		.setControllerAdvice(new GlobalExceptionHandler())
+        		.setControllerAdvice(new GlobalExceptionHandler(meterRegistry))
         		.build();
 
     }
@@ -152,5 +168,162 @@ public class CustomerControllerTest {
                 .andExpect(jsonPath("$.statusCode").value(HttpStatus.NOT_FOUND.value()))
                 .andExpect(jsonPath("$.message").value("Customer not found with id: " + customerRef));
     }
-}
 
+    /**
+     * Test to verify that a customer is returned with its ETag, and that sending the ETag back is answered
+     * 304 from the ETag index without loading the customer.
+     */
+    @Test
+    public void testGetCustomer_NotModified() throws Exception {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver").version(2L).build();
+        String etag = "\"" + CustomerETag.of(customerDTO) + "\"";
+        when(customerService.getCustomerDTOById("123")).thenReturn(customerDTO);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/customers/{customerRef}", "123"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag));
+
+        // Not yet indexed: loaded, but still not sent
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/customers/{customerRef}", "123").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        when(customerService.getCustomerETag("123")).thenReturn(CustomerETag.of(customerDTO));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/customers/{customerRef}", "123").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag));
+        verify(customerService, times(2)).getCustomerDTOById("123");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/customers/{customerRef}", "123").header("If-None-Match", "\"1-0\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.customerName").value("Carl Carver"));
+    }
+
+    /**
+     * Test to verify that polling many customers is answered 304 while their ETags are unchanged, and with
+     * the customers once one of them has changed.
+     */
+    @Test
+    public void testPollCustomers_NotModified() throws Exception {
+        List<String> customerRefs = List.of("123", "124");
+        when(customerService.getLookupETag(customerRefs)).thenReturn("abc");
+
+        mockMvc.perform(get("/api/customers/lookup").param("ref", "123", "124").header("If-None-Match", "\"abc\""))
+                .andExpect(status().isNotModified());
+        verify(customerService, never()).lookupCustomers(any());
+
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver").build();
+        CustomerLookupResponse response = new CustomerLookupResponse(List.of(customerDTO), List.of("124"));
+        when(customerService.getLookupETag(customerRefs)).thenReturn("def");
+        when(customerService.lookupCustomers(customerRefs)).thenReturn(response);
+
+        mockMvc.perform(get("/api/customers/lookup").param("ref", "123", "124").header("If-None-Match", "\"abc\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + CustomerETag.of(response) + "\""))
+                .andExpect(jsonPath("$.missing[0]").value("124"));
+    }
+
+    /**
+     * Test to verify that handled exceptions are counted by type and status.
+     */
+    @Test
+    public void testGetCustomer_NotFound_CountsException() throws Exception {
+        when(customerService.getCustomerDTOById("999")).thenThrow(new CustomerNotFoundException("Customer not found with id: 999"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/customers/{customerRef}", "999"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/customers/{customerRef}", "999"));
+
+        assertEquals(2, meterRegistry.get("customer.api.exceptions")
+                .tag("exception", "CustomerNotFoundException")
+                .tag("status", "404")
+                .counter().count());
+    }
+
+    /**
+     * Test to verify that the bulk endpoint accepts NDJSON and reports the counts from the service.
+     */
+    @Test
+    public void testSaveCustomers_Ndjson() throws Exception {
+        when(customerBulkService.saveCustomers(any(InputStream.class))).thenReturn(new BulkSaveResult(2, 1, 3, 1, 1));
+
+        String body = "{\"customerRef\":\"1\"}\n{\"customerRef\":\"2\"}\n";
+
+        mockMvc.perform(post("/api/customers/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted").value(2))
+                .andExpect(jsonPath("$.updated").value(1))
+                .andExpect(jsonPath("$.unchanged").value(3))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.superseded").value(1));
+
+        verify(customerBulkService, times(1)).saveCustomers(any(InputStream.class));
+    }
+
+    /**
+     * Test to verify that the lookup endpoint returns the customers found and the missing refs.
+     */
+    @Test
+    public void testLookupCustomers() throws Exception {
+        List<String> customerRefs = List.of("123", "999");
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver").build();
+        when(customerService.lookupCustomers(customerRefs))
+                .thenReturn(new CustomerLookupResponse(List.of(customerDTO), List.of("999")));
+
+        mockMvc.perform(post("/api/customers/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(customerRefs)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.customers[0].customerRef").value("123"))
+                .andExpect(jsonPath("$.customers[0].customerName").value("Carl Carver"))
+                .andExpect(jsonPath("$.missing[0]").value("999"));
+    }
+
+    /**
+     * Test to verify that cursor browsing passes the cursor to the service and returns the next one.
+     */
+    @Test
+    public void testBrowseCustomers_Cursor() throws Exception {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("124").customerName("Carl Carver").build();
+        when(customerService.browseCustomers("123", 1))
+                .thenReturn(new CustomerCursorResponse(List.of(customerDTO), "124"));
+
+        mockMvc.perform(get("/api/customers").param("after", "123").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].customerRef").value("124"))
+                .andExpect(jsonPath("$.nextCursor").value("124"));
+    }
+
+    /**
+     * Test to verify that page browsing clamps the page size to the maximum allowed.
+     */
+    @Test
+    public void testGetCustomerPage_ClampsSize() throws Exception {
+        when(customerService.getCustomerPage(2, 1000))
+                .thenReturn(new CustomerPageResponse(List.of(), 2, 1000, 0, 0));
+
+        mockMvc.perform(get("/api/customers").param("page", "2").param("size", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size").value(1000));
+
+        verify(customerService, times(1)).getCustomerPage(2, 1000);
+    }
+
+    /**
+     * Test to verify that a save based on an outdated version is answered with 409 Conflict.
+     */
+    @Test
+    public void testSaveCustomer_VersionConflict() throws Exception {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver").version(1L).build();
+        when(customerService.saveCustomer(any(CustomerDTO.class)))
+                .thenThrow(new CustomerVersionConflictException("Customer 123 is at version 2, not 1"));
+
+        mockMvc.perform(post("/api/customers/saveCustomer")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(customerDTO)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.statusCode").value(409))
+                .andExpect(jsonPath("$.message").value("Customer 123 is at version 2, not 1"));
+    }
+}
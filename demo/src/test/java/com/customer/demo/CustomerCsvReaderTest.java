@@ -0,0 +1,201 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvMalformedLineException;
+
+public class CustomerCsvReaderTest {
+
+    private static final String CSV = "1,Carl Carver,50 Spital lane\r\n"
+            + "2,\"Dalee, Ron\",\"123 Patrick Street\nBurton\"\n"
+            + "\n"
+            + "3,\"Smith \"\"JS\"\" Jane\",Café\n"
+            + "4,Last,No newline";
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Test to verify that records, including quoted fields spanning lines, are read as opencsv's CSVReader
+     * reads them, with the line number each record starts on.
+     */
+    @Test
+    public void testNext_MatchesCsvReader() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), CSV, StandardCharsets.UTF_8);
+
+        List<String[]> expected;
+        try (CSVReader reader = new CSVReader(new StringReader(CSV))) {
+            expected = reader.readAll();
+        }
+        List<CustomerCsvReader.Record> records = readAll(file, 0, 0);
+
+        assertEquals(expected.size(), records.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), records.get(i).fields());
+        }
+        assertEquals(List.of(1L, 2L, 4L, 5L, 6L), records.stream().map(CustomerCsvReader.Record::lineNumber).toList());
+    }
+
+    /**
+     * Test to verify that reading from the offset and line count after a record gives the records that follow it.
+     */
+    @Test
+    public void testNext_ResumesFromRecordEnd() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), CSV, StandardCharsets.UTF_8);
+        List<CustomerCsvReader.Record> all = readAll(file, 0, 0);
+        CustomerCsvReader.Record second = all.get(1);
+
+        List<CustomerCsvReader.Record> rest = readAll(file, second.endOffset(), second.linesRead());
+
+        assertEquals(all.size() - 2, rest.size());
+        for (int i = 0; i < rest.size(); i++) {
+            assertArrayEquals(all.get(i + 2).fields(), rest.get(i).fields());
+            assertEquals(all.get(i + 2).lineNumber(), rest.get(i).lineNumber());
+        }
+        assertEquals(Files.size(file), all.get(all.size() - 1).endOffset());
+    }
+
+    /**
+     * Test to verify that a quoted field left open at the end of the file is returned as a malformed record.
+     */
+    @Test
+    public void testNext_UnterminatedQuote() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), "1,ok\n2,\"open\nstill open\n");
+
+        List<CustomerCsvReader.Record> records = readAll(file, 0, 0);
+
+        assertEquals(2, records.size());
+        assertNull(records.get(1).fields());
+        assertEquals(2, records.get(1).lineNumber());
+        assertEquals("2,\"open\nstill open", records.get(1).text());
+    }
+
+    /**
+     * Test to verify that generated input full of quotes, escapes, line endings, whitespace and multi-byte
+     * characters is parsed exactly as opencsv's CSVReader parses it, including where each record ends.
+     */
+    @Test
+    public void testNext_MatchesCsvReaderOnGeneratedInput() throws Exception {
+        String[] pieces = { "a", "bc", ",", ",", "\"", "\"", "\"\"", "\\", " ", "\t", "\n", "\r", "\r\n", "é", "€", "\uD83D\uDE00" };
+        Random random = new Random(18);
+        for (int run = 0; run < 2000; run++) {
+            StringBuilder csv = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                csv.append(pieces[random.nextInt(pieces.length)]);
+            }
+            assertSameAsCsvReader(csv.toString());
+        }
+    }
+
+    /**
+     * Test to verify that a line may end with a bare carriage return, as BufferedReader reads lines.
+     */
+    @Test
+    public void testNext_CarriageReturnLineEndings() throws Exception {
+        assertSameAsCsvReader("1,a\r2,\"b\rc\"\r\r3,d\r");
+    }
+
+    /**
+     * Test to verify that a reader limited to part of the file reads the records starting in it, and that the
+     * chunks from split start lines and together give the records of the whole file.
+     */
+    @Test
+    public void testSplit_ChunksReadLikeWholeFile() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= 500; i++) {
+            csv.append(i).append(",Name ").append(i).append(",\"").append(i % 9 == 0 ? "two\nlines" : "one line")
+                    .append("\",Town\n");
+        }
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), csv);
+        List<CustomerCsvReader.Record> all = readAll(file, 0, 0);
+
+        List<Long> starts = CustomerCsvReader.split(file, 0, 1000);
+        assertTrue(starts.size() > 10);
+        List<CustomerCsvReader.Record> chunked = new ArrayList<>();
+        long offset = 0;
+        long linesRead = 0;
+        for (int i = 0; i < starts.size(); i++) {
+            long end = i + 1 < starts.size() ? starts.get(i + 1) : Long.MAX_VALUE;
+            assertEquals('\n', i == 0 ? '\n' : csv.charAt((int) (starts.get(i) - 1)));
+            // A chunk starting inside a record is read again from where that record ended
+            try (CustomerCsvReader reader = new CustomerCsvReader(file, offset, linesRead, end, Long.MAX_VALUE, 3)) {
+                CustomerCsvReader.Record record;
+                while ((record = reader.next()) != null) {
+                    chunked.add(record);
+                }
+                offset = reader.getOffset();
+                linesRead = reader.getLinesRead();
+            }
+        }
+
+        assertEquals(all.size(), chunked.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertArrayEquals(Arrays.copyOf(all.get(i).fields(), 3), chunked.get(i).fields());
+            assertEquals(all.get(i).lineNumber(), chunked.get(i).lineNumber());
+            assertEquals(all.get(i).endOffset(), chunked.get(i).endOffset());
+        }
+    }
+
+    /**
+     * Test to verify that a bounded reader stops at a record running past its limit, leaving the offset at
+     * the record's start.
+     */
+    @Test
+    public void testNext_StopsAtLimit() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), "1,a\n2,\"" + "x".repeat(1 << 17) + "\"\n3,c\n");
+
+        try (CustomerCsvReader reader = new CustomerCsvReader(file, 0, 0, 5, 10, 8)) {
+            assertArrayEquals(new String[] { "1", "a" }, reader.next().fields());
+            assertNull(reader.next());
+            assertEquals(4, reader.getOffset());
+        }
+    }
+
+    private void assertSameAsCsvReader(String csv) throws Exception {
+        Path file = Files.writeString(tempDir.resolve("generated.csv"), csv, StandardCharsets.UTF_8);
+        List<CustomerCsvReader.Record> records = readAll(file, 0, 0);
+
+        try (CSVReader reader = new CSVReader(new StringReader(csv))) {
+            for (CustomerCsvReader.Record record : records) {
+                String[] expected;
+                try {
+                    expected = reader.readNext();
+                } catch (CsvMalformedLineException e) {
+                    assertNull(record.fields(), csv);
+                    return;
+                }
+                assertArrayEquals(expected, record.fields(), csv);
+                assertEquals(reader.getLinesRead(), record.linesRead(), csv);
+            }
+            assertNull(reader.readNext(), csv);
+        }
+    }
+
+    private static List<CustomerCsvReader.Record> readAll(Path file, long offset, long linesRead) throws Exception {
+        List<CustomerCsvReader.Record> records = new ArrayList<>();
+        try (CustomerCsvReader reader = new CustomerCsvReader(file, offset, linesRead)) {
+            CustomerCsvReader.Record record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,52 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class CustomerETagTest {
+
+    /**
+     * Test to verify that the ETag is the version followed by the content hash, and only the hash without
+     * a version.
+     */
+    @Test
+    public void testOf_VersionAndHash() {
+        CustomerDTO customer = customer("1", "Carl Carver", "S410HJ");
+
+        String hash = CustomerETag.of(customer);
+        customer.setVersion(3L);
+
+        assertEquals(32, hash.length());
+        assertEquals("3-" + hash, CustomerETag.of(customer));
+    }
+
+    /**
+     * Test to verify that content whose String hash codes collide, fields that only differ in where one
+     * ends and the next begins, and a null field against an empty one all give different ETags.
+     */
+    @Test
+    public void testOf_DifferentContentDifferentETag() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(CustomerETag.of(customer("1", "Aa", "S410HJ")), CustomerETag.of(customer("1", "BB", "S410HJ")));
+        assertNotEquals(CustomerETag.of(customer("1", "Carl", "S41")), CustomerETag.of(customer("1", "Carl S", "41")));
+        assertNotEquals(CustomerETag.of(customer("1", "Carl Carver", null)), CustomerETag.of(customer("1", "Carl Carver", "")));
+    }
+
+    /**
+     * Test to verify that a lookup's ETag changes with the order of the customers and with the missing refs.
+     */
+    @Test
+    public void testCombine() {
+        assertEquals(CustomerETag.combine(List.of("a", "b"), List.of("9")), CustomerETag.combine(List.of("a", "b"), List.of("9")));
+        assertNotEquals(CustomerETag.combine(List.of("a", "b"), List.of()), CustomerETag.combine(List.of("b", "a"), List.of()));
+        assertNotEquals(CustomerETag.combine(List.of("a"), List.of("b")), CustomerETag.combine(List.of("a", "b"), List.of()));
+    }
+
+    private static CustomerDTO customer(String ref, String name, String postcode) {
+        return CustomerDTO.builder().customerRef(ref).customerName(name).town("Chesterfield").postcode(postcode).build();
+    }
+}
@@ -0,0 +1,76 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CustomerExporterTest {
+
+    @Mock
+    private CustomerService customerService;
+
+    private CustomerExporter customerExporter;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerExporter = new CustomerExporter(customerService, new ObjectMapper(), 2);
+
+        // Two full pages followed by a short last page
+        when(customerService.browseCustomers(null, 2)).thenReturn(new CustomerCursorResponse(
+                List.of(customer("1"), customer("2")), "2"));
+        when(customerService.browseCustomers("2", 2)).thenReturn(new CustomerCursorResponse(
+                List.of(customer("3")), null));
+    }
+
+    /**
+     * Test to verify that every page is exported as one JSON object per line.
+     */
+    @Test
+    public void testExport_Ndjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        customerExporter.export(ExportFormat.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("3", new ObjectMapper().readValue(lines[2], CustomerDTO.class).getCustomerRef());
+    }
+
+    /**
+     * Test to verify that CSV rows use the same column order as the CSV import.
+     */
+    @Test
+    public void testExport_Csv() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        customerExporter.export(ExportFormat.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("1,\"Carver, Carl\",50 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ", lines[0]);
+    }
+
+    private static CustomerDTO customer(String customerRef) {
+        return CustomerDTO.builder()
+                .customerRef(customerRef)
+                .customerName("Carver, Carl")
+                .addressLine1("50 Spital lane")
+                .addressLine2("Spital")
+                .town("Chesterfield")
+                .county("Derbyshire")
+                .country("England")
+                .postcode("S410HJ")
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+public class CustomerImportControllerTest {
+
+    @Mock
+    private CustomerImportService customerImportService;
+
+    @TempDir
+    Path tempDir;
+
+    private Path importDir;
+
+    private CustomerImportController customerImportController;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        MockitoAnnotations.openMocks(this);
+        importDir = Files.createDirectory(tempDir.resolve("imports"));
+        customerImportController = new CustomerImportController(customerImportService, importDir.toString());
+    }
+
+    /**
+     * Test to verify that a file name is resolved inside the import directory.
+     */
+    @Test
+    public void testStartImport_FileInImportDir() {
+        Path file = importDir.resolve("nested/customers.csv").toAbsolutePath();
+        ImportReport report = mock(ImportReport.class);
+        when(customerImportService.startImport(file, true)).thenReturn(report);
+
+        ResponseEntity<ImportReport> response = customerImportController.startImport("nested/../nested/customers.csv", false);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(report, response.getBody());
+    }
+
+    /**
+     * Test to verify that absolute paths, paths climbing out of the import directory and symbolic
+     * links leading out of it are rejected without starting an import.
+     */
+    @Test
+    public void testStartImport_PathOutsideImportDir() throws IOException {
+        Path outside = Files.writeString(tempDir.resolve("secret.csv"), "1,Name");
+        Files.createSymbolicLink(importDir.resolve("link.csv"), outside);
+
+        assertThrows(InvalidRequestException.class, () -> customerImportController.startImport(outside.toString(), false));
+        assertThrows(InvalidRequestException.class, () -> customerImportController.startImport("../secret.csv", false));
+        assertThrows(InvalidRequestException.class, () -> customerImportController.startImport("link.csv", false));
+        assertThrows(InvalidRequestException.class, () -> customerImportController.startImport(".", false));
+        verify(customerImportService, never()).startImport(ArgumentMatchers.any(), ArgumentMatchers.anyBoolean());
+    }
+}
@@ -0,0 +1,378 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import com.opencsv.CSVReader;
+
+public class CustomerImportServiceTest {
+
+    @Mock
+    private CustomerBatchWriter customerBatchWriter;
+
+    @TempDir
+    Path tempDir;
+
+    private CustomerImportService customerImportService;
+
+    private final List<String> writtenRefs = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerImportService = new CustomerImportService(customerBatchWriter, tempDir.resolve("customers.csv"), 2, 1000, 2, 2, 4, false, 100000, 1024, null);
+
+        when(customerBatchWriter.write(any())).thenAnswer(invocation -> {
+            Collection<Customer> batch = invocation.getArgument(0);
+            batch.forEach(customer -> writtenRefs.add(customer.getCustomerRef()));
+            return new BulkSaveResult(batch.size(), 0, 0, 0, 0);
+        });
+    }
+
+    /**
+     * Test to verify that valid rows are written in batches and that bad rows are reported by line number.
+     */
+    @Test
+    public void testImportFile_ReportsBadLines() throws Exception {
+        Path csv = Files.writeString(tempDir.resolve("customers.csv"), String.join("\n",
+                "1,Carl Carver,50 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ",
+                "2,Too Short,Somewhere",
+                "3,\"Smith, Jane\",1 High Street,,Sheffield,South Yorkshire,England,S11AA",
+                ",No Ref,1 Low Street,,Leeds,West Yorkshire,England,LS11AA",
+                "4,Ron Dalee,123 Patrick Street,Burton,Test Town,South Yorkshire,England,S410TH"));
+
+        ImportReport report = customerImportService.importFile(csv);
+
+        assertEquals(ImportProgress.Status.COMPLETED, report.getStatus());
+        assertEquals(5, report.getRowsRead());
+        assertEquals(3, report.getInserted());
+        assertEquals(2, report.getRejected());
+        assertEquals(List.of(2L, 4L), report.getBadLines().stream().sorted().toList());
+        assertEquals(List.of("1", "3", "4"), writtenRefs.stream().sorted().toList());
+    }
+
+    /**
+     * Test to verify that a ref repeated within a batch is written once, with its last row, and that the
+     * earlier row is counted as superseded rather than updated.
+     */
+    @Test
+    public void testImportFile_RepeatedRefSuperseded() throws Exception {
+        Path csv = Files.writeString(tempDir.resolve("customers.csv"), String.join("\n",
+                "1,Carl Carver,50 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ",
+                "1,Carl Carver,51 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ",
+                "2,Ron Dalee,123 Patrick Street,Burton,Test Town,South Yorkshire,England,S410TH"));
+        List<String> addresses = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            Collection<Customer> batch = invocation.getArgument(0);
+            batch.forEach(customer -> addresses.add(customer.getCustomerRef() + " " + customer.getAddressLine1()));
+            return new BulkSaveResult(batch.size(), 0, 0, 0, 0);
+        }).when(customerBatchWriter).write(any());
+
+        ImportReport report = customerImportService.importFile(csv);
+
+        assertEquals(3, report.getRowsRead());
+        assertEquals(2, report.getInserted());
+        assertEquals(0, report.getUpdated());
+        assertEquals(1, report.getSuperseded());
+        assertEquals(List.of("1 51 Spital lane", "2 123 Patrick Street"), addresses.stream().sorted().toList());
+    }
+
+    /**
+     * Test to verify that a ref repeated across batches ends up with its last row in the file, although the
+     * batches are written by two writers at once.
+     */
+    @Test
+    public void testImportFile_RepeatedRefLastRowWins() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            csv.append(i % 100).append(",Name ").append(i).append(",1 Street,,Town,County,Country,PC1\n");
+        }
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), csv);
+        Map<String, String> stored = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            Collection<Customer> batch = invocation.getArgument(0);
+            // Give the other writer a chance to overtake
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(100_000));
+            batch.forEach(customer -> stored.put(customer.getCustomerRef(), customer.getCustomerName()));
+            return new BulkSaveResult(batch.size(), 0, 0, 0, 0);
+        }).when(customerBatchWriter).write(any());
+
+        ImportReport report = customerImportService.importFile(file);
+
+        assertEquals(ImportProgress.Status.COMPLETED, report.getStatus());
+        assertEquals(100, stored.size());
+        for (int ref = 0; ref < 100; ref++) {
+            assertEquals("Name " + (3900 + ref), stored.get(String.valueOf(ref)));
+        }
+    }
+
+    /**
+     * Test to verify that a failing batch is retried row by row so only the bad row is rejected.
+     */
+    @Test
+    public void testImportFile_BatchFailureRejectsOnlyBadRow() throws Exception {
+        doThrow(new DataIntegrityViolationException("constraint violation")).when(customerBatchWriter)
+                .write(argThat(batch -> batch.stream().anyMatch(c -> "2".equals(c.getCustomerRef()))));
+
+        Path csv = Files.writeString(tempDir.resolve("customers.csv"), String.join("\n",
+                "1,Carl Carver,50 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ",
+                "2,Ron Dalee,123 Patrick Street,Burton,Test Town,South Yorkshire,England,S410TH"));
+
+        ImportReport report = customerImportService.importFile(csv);
+
+        assertEquals(1, report.getInserted());
+        assertEquals(1, report.getRejected());
+        assertEquals(List.of(2L), report.getBadLines());
+    }
+
+    /**
+     * Test to verify that a write failing for another reason than the data, such as the database being
+     * down, fails the import instead of rejecting every row after it.
+     */
+    @Test
+    public void testImportFile_DatabaseDownFailsImport() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= 2000; i++) {
+            csv.append(i).append(",Name ").append(i).append(",1 Street,,Town,County,Country,PC").append(i).append('\n');
+        }
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), csv);
+        doThrow(new CannotCreateTransactionException("database down")).when(customerBatchWriter)
+                .write(argThat(batch -> batch.stream().anyMatch(c -> "1500".equals(c.getCustomerRef()))));
+
+        ImportReport report = customerImportService.importFile(file);
+
+        assertEquals(ImportProgress.Status.FAILED, report.getStatus());
+        assertEquals(0, report.getRejected());
+        assertTrue(report.getInserted() < 2000);
+        assertTrue(Files.exists(ImportCheckpoint.pathFor(file)));
+    }
+
+    /**
+     * Test to verify that a missing file fails the import rather than throwing to the caller.
+     */
+    @Test
+    public void testImportFile_MissingFile() {
+        ImportReport report = customerImportService.importFile(tempDir.resolve("missing.csv"));
+
+        assertEquals(ImportProgress.Status.FAILED, report.getStatus());
+    }
+
+    /**
+     * Test to verify that a second import cannot start while one is running.
+     */
+    @Test
+    public void testStartImport_AlreadyRunning() throws Exception {
+        Path csv = Files.writeString(tempDir.resolve("customers.csv"),
+                "1,Carl Carver,50 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ");
+
+        // Block the writer until the second start has been attempted
+        Object lock = new Object();
+        doAnswer(invocation -> {
+            synchronized (lock) {
+                lock.wait(5000);
+            }
+            return new BulkSaveResult(1, 0, 0, 0, 0);
+        }).when(customerBatchWriter).write(any());
+
+        customerImportService.startImport(csv);
+        assertThrows(ImportInProgressException.class, () -> customerImportService.startImport(csv));
+
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Test to verify that every row makes it through the parallel pipeline and that stage timings are reported.
+     */
+    @Test
+    public void testImportFile_ParallelPipeline() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= 5000; i++) {
+            csv.append(i).append(",Name ").append(i).append(",1 Street,,Town,County,Country,PC").append(i).append('\n');
+        }
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), csv);
+
+        ImportReport report = customerImportService.importFile(file);
+
+        assertEquals(ImportProgress.Status.COMPLETED, report.getStatus());
+        assertEquals(5000, report.getRowsRead());
+        assertEquals(5000, report.getInserted());
+        assertEquals(5000, writtenRefs.stream().distinct().count());
+        assertNotNull(report.getStages());
+    }
+
+    /**
+     * Test to verify that the pipeline also completes with virtual threads requested, which fall back to
+     * platform threads on runtimes older than Java 21.
+     */
+    @Test
+    public void testImportFile_VirtualThreads() throws Exception {
+        CustomerImportService virtualThreadImport =
+                new CustomerImportService(customerBatchWriter, tempDir.resolve("customers.csv"), 2, 1000, 2, 16, 4, true, 100000, 4194304, null);
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            csv.append(i).append(",Name ").append(i).append(",1 Street,,Town,County,Country,PC").append(i).append('\n');
+        }
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), csv);
+
+        ImportReport report = virtualThreadImport.importFile(file);
+
+        assertEquals(ImportProgress.Status.COMPLETED, report.getStatus());
+        assertEquals(1000, report.getInserted());
+        assertEquals(1000, writtenRefs.stream().distinct().count());
+    }
+
+    /**
+     * Test to verify that an import that dies part way saves a checkpoint, and that importing the file again
+     * resumes from it rather than from the first line.
+     */
+    @Test
+    public void testImportFile_ResumesFromCheckpoint() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 1; i <= 2000; i++) {
+            csv.append(i).append(",Name ").append(i).append(",1 Street,,Town,County,Country,PC").append(i).append('\n');
+        }
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), csv);
+
+        // An Error is not retried row by row, it kills the writer and fails the import
+        doThrow(new OutOfMemoryError("simulated")).when(customerBatchWriter)
+                .write(argThat(batch -> batch.stream().anyMatch(c -> "1500".equals(c.getCustomerRef()))));
+
+        ImportReport failed = customerImportService.importFile(file);
+
+        assertEquals(ImportProgress.Status.FAILED, failed.getStatus());
+        assertTrue(Files.exists(ImportCheckpoint.pathFor(file)));
+
+        Set<String> writtenBefore = new HashSet<>(writtenRefs);
+        doAnswer(invocation -> {
+            Collection<Customer> batch = invocation.getArgument(0);
+            batch.forEach(customer -> writtenRefs.add(customer.getCustomerRef()));
+            return new BulkSaveResult(batch.size(), 0, 0, 0, 0);
+        }).when(customerBatchWriter).write(any());
+
+        ImportReport resumed = customerImportService.importFile(file);
+
+        assertEquals(ImportProgress.Status.COMPLETED, resumed.getStatus());
+        assertTrue(resumed.getResumedFromLine() > 1 && resumed.getResumedFromLine() <= 1500);
+        assertEquals(2000 - resumed.getResumedFromLine() + 1, resumed.getRowsRead());
+        for (long line = 1; line < resumed.getResumedFromLine(); line++) {
+            assertTrue(writtenBefore.contains(Long.toString(line)));
+        }
+        assertEquals(2000, writtenRefs.stream().distinct().count());
+        assertFalse(Files.exists(ImportCheckpoint.pathFor(file)));
+    }
+
+    /**
+     * Test to verify that restarting an import ignores its checkpoint.
+     */
+    @Test
+    public void testImportFile_RestartIgnoresCheckpoint() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), String.join("\n",
+                "1,Carl Carver,50 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ",
+                "2,Ron Dalee,123 Patrick Street,Burton,Test Town,South Yorkshire,England,S410TH"));
+        ImportCheckpoint.start(file).at(76, 1).save(file);
+
+        assertEquals(2, customerImportService.importFile(file).getResumedFromLine());
+        ImportCheckpoint.start(file).at(76, 1).save(file);
+
+        ImportReport restarted = customerImportService.importFile(file, false);
+
+        assertEquals(0, restarted.getResumedFromLine());
+        assertEquals(2, restarted.getRowsRead());
+    }
+
+    /**
+     * Test to verify that rejected rows are written to the side file with their line number and reason.
+     */
+    @Test
+    public void testImportFile_WritesRejectedRows() throws Exception {
+        doThrow(new DataIntegrityViolationException("constraint violation")).when(customerBatchWriter)
+                .write(argThat(batch -> batch.stream().anyMatch(c -> "3".equals(c.getCustomerRef()))));
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), String.join("\n",
+                "1,Carl Carver,50 Spital lane,Spital,Chesterfield,Derbyshire,England,S410HJ",
+                "2,Too Short,Somewhere",
+                "3,Ron Dalee,123 Patrick Street,Burton,Test Town,South Yorkshire,England,S410TH",
+                "4,\"Unterminated"));
+
+        ImportReport report = customerImportService.importFile(file);
+
+        assertEquals(3, report.getRejected());
+        Path rejected = Path.of(report.getRejectedRowsFile());
+        try (CSVReader reader = new CSVReader(Files.newBufferedReader(rejected))) {
+            List<String[]> rows = reader.readAll();
+            rows.sort(Comparator.comparing(row -> row[0]));
+            assertEquals(3, rows.size());
+            assertArrayEquals(new String[] { "2", "too few columns", "2", "Too Short", "Somewhere" }, rows.get(0));
+            assertEquals("3", rows.get(1)[0]);
+            assertEquals("write failed: constraint violation", rows.get(1)[1]);
+            assertEquals("Ron Dalee", rows.get(1)[3]);
+            assertArrayEquals(new String[] { "4", "malformed CSV", "4,\"Unterminated" }, rows.get(2));
+        }
+    }
+
+    /**
+     * Test to verify that rows are read in file order with the right line numbers when the file is parsed in
+     * chunks and quoted fields spanning lines cross the chunk boundaries.
+     */
+    @Test
+    public void testImportFile_QuotedFieldsAcrossChunks() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        List<Long> shortLines = new ArrayList<>();
+        long line = 1;
+        for (int i = 1; i <= 300; i++) {
+            if (i % 50 == 0) {
+                shortLines.add(line);
+                csv.append(i).append(",Too Short\n");
+                line++;
+            } else if (i % 7 == 0) {
+                csv.append(i).append(",\"Name, ").append(i).append("\",\"").append("x".repeat(400))
+                        .append("\nline two\r\nline \"\"three\"\"\",,Town,County,Country,PC").append(i).append("\r\n");
+                line += 3;
+            } else {
+                csv.append(i).append(",Name ").append(i).append(",1 Street,,Town,County,Country,PC").append(i).append('\n');
+                line++;
+            }
+        }
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), csv);
+
+        ImportReport report = customerImportService.importFile(file);
+
+        assertEquals(ImportProgress.Status.COMPLETED, report.getStatus());
+        assertEquals(300, report.getRowsRead());
+        assertEquals(294, report.getInserted());
+        assertEquals(shortLines, report.getBadLines().stream().sorted().toList());
+        assertEquals(294, writtenRefs.stream().distinct().count());
+    }
+}
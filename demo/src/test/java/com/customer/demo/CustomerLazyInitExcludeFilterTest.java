@@ -0,0 +1,27 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class CustomerLazyInitExcludeFilterTest {
+
+    private final CustomerLazyInitExcludeFilter filter = new CustomerLazyInitExcludeFilter();
+
+    /**
+     * Test to verify that the beans on the customer read and save path and lifecycle beans are created on
+     * startup, while admin beans are left lazy.
+     */
+    @Test
+    public void testIsExcluded_HotBeansOnly() {
+        assertTrue(filter.isExcluded("customerController", null, CustomerController.class));
+        assertTrue(filter.isExcluded("customerService", null, CustomerService.class));
+        assertTrue(filter.isExcluded("customerCache", null, CustomerCache.class));
+        assertTrue(filter.isExcluded("customerSnapshot", null, CustomerSnapshot.class));
+
+        assertFalse(filter.isExcluded("customerImportController", null, CustomerImportController.class));
+        assertFalse(filter.isExcluded("customerSuggestController", null, CustomerSuggestController.class));
+        assertFalse(filter.isExcluded("unknown", null, null));
+    }
+}
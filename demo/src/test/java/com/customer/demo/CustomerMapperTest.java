@@ -0,0 +1,159 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.Test;
+
+public class CustomerMapperTest {
+
+    // Every field holds a different value so a field copied into the wrong place is caught
+    private static CustomerDTO dto() {
+        return new CustomerDTO("ref", "name", "line1", "line2", "town", "county", "country", "POSTCODE", null);
+    }
+
+    private static Customer entity() {
+        return new Customer("ref", "name", "line1", "line2", "town", "county", "country", "POSTCODE", null);
+    }
+
+    /**
+     * Test to verify that every field of a CustomerDTO is mapped to the same field of the entity.
+     */
+    @Test
+    public void testToEntity_MapsEveryField() {
+        Customer customer = CustomerMapper.toEntity(dto());
+
+        assertEquals("ref", customer.getCustomerRef());
+        assertEquals("name", customer.getCustomerName());
+        assertEquals("line1", customer.getAddressLine1());
+        assertEquals("line2", customer.getAddressLine2());
+        assertEquals("town", customer.getTown());
+        assertEquals("county", customer.getCounty());
+        assertEquals("country", customer.getCountry());
+        assertEquals("POSTCODE", customer.getPostcode());
+    }
+
+    /**
+     * Test to verify that every field of the entity is mapped to the same field of a CustomerDTO.
+     */
+    @Test
+    public void testToDto_MapsEveryField() {
+        CustomerDTO customerDTO = CustomerMapper.toDto(entity());
+
+        assertEquals("ref", customerDTO.getCustomerRef());
+        assertEquals("name", customerDTO.getCustomerName());
+        assertEquals("line1", customerDTO.getAddressLine1());
+        assertEquals("line2", customerDTO.getAddressLine2());
+        assertEquals("town", customerDTO.getTown());
+        assertEquals("county", customerDTO.getCounty());
+        assertEquals("country", customerDTO.getCountry());
+        assertEquals("POSTCODE", customerDTO.getPostcode());
+    }
+
+    /**
+     * Test to verify that CSV columns are mapped in the order of the import file, and that the CSV row of
+     * an export maps back to the same customer.
+     */
+    @Test
+    public void testCsvRow_RoundTrip() {
+        String[] row = CustomerMapper.toCsvRow(dto());
+
+        assertArrayEquals(new String[] { "ref", "name", "line1", "line2", "town", "county", "country", "POSTCODE" }, row);
+        assertEquals(entity(), CustomerMapper.fromCsvRow(row));
+    }
+
+    /**
+     * Test to verify that names and towns are trimmed and postcodes normalized on the way in.
+     */
+    @Test
+    public void testToEntity_Normalizes() {
+        CustomerDTO customerDTO = dto();
+        customerDTO.setCustomerName(" name ");
+        customerDTO.setTown(" town ");
+        customerDTO.setPostcode("s41 0hj");
+
+        Customer customer = CustomerMapper.toEntity(customerDTO);
+
+        assertEquals("name", customer.getCustomerName());
+        assertEquals("town", customer.getTown());
+        assertEquals("S410HJ", customer.getPostcode());
+        assertEquals("S410HJ", CustomerMapper.fromCsvRow(CustomerMapper.toCsvRow(customerDTO)).getPostcode());
+    }
+
+    /**
+     * Test to verify that null fields stay null in every mapping.
+     */
+    @Test
+    public void testMappings_KeepNulls() {
+        CustomerDTO empty = CustomerDTO.builder().customerRef("ref").build();
+
+        assertEquals(new Customer("ref", null, null, null, null, null, null, null, null), CustomerMapper.toEntity(empty));
+        assertEquals(empty, CustomerMapper.toDto(CustomerMapper.toEntity(empty)));
+    }
+
+    /**
+     * Test to verify that copyInto copies every non-key field and leaves the key alone.
+     */
+    @Test
+    public void testCopyInto_CopiesEveryField() {
+        Customer target = new Customer("other", null, null, null, null, null, null, null, null);
+
+        CustomerMapper.copyInto(entity(), target);
+
+        assertEquals(new Customer("other", "name", "line1", "line2", "town", "county", "country", "POSTCODE", null), target);
+    }
+
+    /**
+     * Test to verify that a difference in any single non-key field is detected, and that the key is ignored.
+     */
+    @Test
+    public void testSameContent_ComparesEveryField() {
+        List<BiConsumer<Customer, String>> setters = List.of(Customer::setCustomerName, Customer::setAddressLine1,
+                Customer::setAddressLine2, Customer::setTown, Customer::setCounty, Customer::setCountry,
+                Customer::setPostcode);
+
+        for (BiConsumer<Customer, String> setter : setters) {
+            Customer changed = entity();
+            setter.accept(changed, "changed");
+            assertFalse(CustomerMapper.sameContent(entity(), changed));
+        }
+
+        Customer otherRef = entity();
+        otherRef.setCustomerRef("other");
+        assertTrue(CustomerMapper.sameContent(entity(), otherRef));
+    }
+
+    /**
+     * Test to verify that equal towns, counties and countries share one String instance.
+     */
+    @Test
+    public void testToDto_SharesCommonValues() {
+        CustomerDTO first = CustomerMapper.toDto(new Customer("1", null, null, null,
+                new String("Sheffield"), new String("South Yorkshire"), new String("England"), null, null));
+        CustomerDTO second = CustomerMapper.toDto(new Customer("2", null, null, null,
+                new String("Sheffield"), new String("South Yorkshire"), new String("England"), null, null));
+
+        assertSame(first.getTown(), second.getTown());
+        assertSame(first.getCounty(), second.getCounty());
+        assertSame(first.getCountry(), second.getCountry());
+    }
+
+    /**
+     * Test to verify that a postcode that is already normalized is returned without a copy.
+     */
+    @Test
+    public void testNormalizePostcode() {
+        String normalized = "S410HJ";
+
+        assertSame(normalized, CustomerMapper.normalizePostcode(normalized));
+        assertEquals("S410HJ", CustomerMapper.normalizePostcode(" s41\t0Hj "));
+        assertNull(CustomerMapper.normalizePostcode(null));
+    }
+}
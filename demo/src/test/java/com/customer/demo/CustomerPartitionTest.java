@@ -0,0 +1,218 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Three partitioned instances on localhost, each with its own in-memory database, every request sent
+ * to an instance that mostly does not own the customers.
+ */
+public class CustomerPartitionTest {
+
+    private static final int INSTANCES = 3;
+    private static final String SECRET = "partition-test-secret";
+
+    private static final HttpClient client = HttpClient.newHttpClient();
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+    private static final List<String> urls = new ArrayList<>();
+    private static PartitionRing ring;
+
+    @TempDir
+    static Path tempDir;
+
+    @BeforeAll
+    public static void startInstances() throws IOException {
+        for (int i = 0; i < INSTANCES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls.add("http://localhost:" + socket.getLocalPort());
+            }
+        }
+        String members = String.join(",", urls);
+        for (int i = 0; i < INSTANCES; i++) {
+            contexts.add(new SpringApplicationBuilder(DemoApplication.class).logStartupInfo(false).run(
+                    "--server.port=" + URI.create(urls.get(i)).getPort(),
+                    "--spring.datasource.url=jdbc:h2:mem:partition-" + i,
+                    "--spring.jmx.enabled=false",
+                    "--customer.import.on-startup=false",
+                    "--customer.partition.enabled=true",
+                    "--customer.partition.self=" + urls.get(i),
+                    "--customer.partition.members=" + members,
+                    "--customer.partition.secret=" + SECRET,
+                    "--logging.level.root=WARN"));
+        }
+        ring = contexts.get(0).getBean(CustomerPartitionRouter.class).getRing();
+    }
+
+    @AfterAll
+    public static void stopInstances() {
+        contexts.forEach(ConfigurableApplicationContext::close);
+    }
+
+    /**
+     * Test to verify that saves and reads sent to any instance are forwarded to the owner of the
+     * customer, which alone stores it, and that the owner's ETag answers a conditional read.
+     */
+    @Test
+    public void testSaveAndGet_ForwardedToOwner() throws Exception {
+        List<String> refs = refs("S", 30);
+        for (String ref : refs) {
+            HttpResponse<String> saved = post(urls.get(0), "/saveCustomer", "application/json", customerJson(ref, "Saved " + ref));
+            assertEquals(200, saved.statusCode(), saved.body());
+        }
+
+        for (String ref : refs) {
+            HttpResponse<String> read = get(urls.get(2), "/" + ref, null);
+            assertEquals(200, read.statusCode(), read.body());
+            assertEquals("Saved " + ref, objectMapper.readTree(read.body()).get("customerName").asText());
+            assertStoredOnlyByOwner(ref);
+
+            String etag = read.headers().firstValue("ETag").orElseThrow();
+            assertEquals(304, get(urls.get(1), "/" + ref, etag).statusCode());
+        }
+        assertEquals(404, get(urls.get(1), "/S-missing", null).statusCode());
+    }
+
+    /**
+     * Test to verify that a bulk save is scattered to the owners and a lookup gathers the customers
+     * back from them, in the order asked for, with the missing refs.
+     */
+    @Test
+    public void testBulkAndLookup_ScatteredToOwners() throws Exception {
+        List<String> refs = refs("B", 90);
+        String body = refs.stream().map(ref -> customerJson(ref, "Bulk " + ref)).collect(Collectors.joining("\n"));
+        HttpResponse<String> saved = post(urls.get(1), "/bulk", "application/x-ndjson", body);
+        assertEquals(200, saved.statusCode(), saved.body());
+        assertEquals(90, objectMapper.readTree(saved.body()).get("inserted").asLong());
+        refs.forEach(CustomerPartitionTest::assertStoredOnlyByOwner);
+
+        List<String> asked = new ArrayList<>(refs);
+        asked.add(1, "B-missing");
+        HttpResponse<String> lookup = post(urls.get(2), "/lookup", "application/json", objectMapper.writeValueAsString(asked));
+        assertEquals(200, lookup.statusCode(), lookup.body());
+        JsonNode response = objectMapper.readTree(lookup.body());
+        List<String> found = new ArrayList<>();
+        response.get("customers").forEach(customer -> found.add(customer.get("customerRef").asText()));
+        assertEquals(refs, found);
+        assertEquals("B-missing", response.get("missing").get(0).asText());
+    }
+
+    /**
+     * Test to verify that a CSV import on one instance sends every owner its share of the rows.
+     */
+    @Test
+    public void testImport_ScattersRowsToOwners() throws IOException {
+        List<String> refs = refs("I", 200);
+        Path file = tempDir.resolve("partitioned.csv");
+        Files.write(file, refs.stream().map(ref -> ref + ",Imported " + ref + ",1 High St,,Leeds,West Yorkshire,England,LS11AA").toList());
+
+        ImportReport report = contexts.get(0).getBean(CustomerImportService.class).importFile(file);
+
+        assertEquals(200, report.getInserted());
+        assertEquals(0, report.getRejected());
+        refs.forEach(CustomerPartitionTest::assertStoredOnlyByOwner);
+        for (String url : urls) {
+            assertTrue(refs.stream().anyMatch(ref -> ring.ownerOf(ref).equals(url)), "No rows owned by " + url);
+        }
+    }
+
+    /**
+     * Test to verify that a client claiming to forward a request as another member, without the shared
+     * secret, is routed to the owner like any other client instead of being handled where it lands.
+     */
+    @Test
+    public void testForwardedHeader_IgnoredWithoutSecret() throws Exception {
+        List<String> refs = refs("F", 30).stream().filter(ref -> !ring.ownerOf(ref).equals(urls.get(0))).toList();
+        for (String ref : refs) {
+            HttpResponse<String> saved = client.send(HttpRequest.newBuilder(URI.create(urls.get(0) + "/api/customers/saveCustomer"))
+                    .header("Content-Type", "application/json")
+                    .header(CustomerPartitionRouter.FORWARDED_HEADER, urls.get(1))
+                    .header(CustomerPartitionRouter.SECRET_HEADER, "wrong")
+                    .POST(HttpRequest.BodyPublishers.ofString(customerJson(ref, "Spoofed " + ref)))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, saved.statusCode(), saved.body());
+            assertStoredOnlyByOwner(ref);
+        }
+    }
+
+    /**
+     * Test to verify that without a shared secret, a request is only taken as forwarded by another member
+     * when it comes from that member's address.
+     */
+    @Test
+    public void testIsForwardedByMember_ByAddressWithoutSecret() {
+        CustomerPartitionRouter router = new CustomerPartitionRouter(null, null, objectMapper, new SimpleMeterRegistry(),
+                urls.get(0), urls, 16, Duration.ofSeconds(1), 500, "");
+
+        assertTrue(router.isForwardedByMember(urls.get(1), null, "127.0.0.1"));
+        assertTrue(router.isForwardedByMember(urls.get(2) + "/", null, "127.0.0.1"));
+        assertFalse(router.isForwardedByMember(urls.get(1), null, "192.0.2.1"));
+        assertFalse(router.isForwardedByMember(urls.get(0), null, "127.0.0.1"));
+        assertFalse(router.isForwardedByMember("http://localhost:1", null, "127.0.0.1"));
+        assertFalse(router.isForwardedByMember(urls.get(1), null, null));
+    }
+
+    private static void assertStoredOnlyByOwner(String ref) {
+        for (int i = 0; i < INSTANCES; i++) {
+            Customer stored = contexts.get(i).getBean(CustomerRepository.class).findByCustomerRef(ref);
+            if (ring.ownerOf(ref).equals(urls.get(i))) {
+                assertNotNull(stored, ref + " missing on its owner " + urls.get(i));
+            } else {
+                assertNull(stored, ref + " stored on " + urls.get(i) + " which does not own it");
+            }
+        }
+    }
+
+    private static List<String> refs(String prefix, int count) {
+        return IntStream.range(0, count).mapToObj(i -> prefix + i).toList();
+    }
+
+    private static String customerJson(String ref, String name) {
+        return "{\"customerRef\":\"" + ref + "\",\"customerName\":\"" + name + "\",\"town\":\"Leeds\",\"postcode\":\"LS11AA\"}";
+    }
+
+    private static HttpResponse<String> post(String url, String path, String contentType, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(url + "/api/customers" + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> get(String url, String path, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url + "/api/customers" + path)).GET();
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,141 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+public class CustomerReactiveHandlerTest {
+
+    @Mock
+    private CustomerService customerService;
+
+    private CustomerReactiveHandler customerReactiveHandler;
+
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerReactiveHandler = new CustomerReactiveHandler(customerService, 2, 2);
+        webTestClient = WebTestClient.bindToRouterFunction(customerReactiveHandler.routes()).build();
+
+        // Two full pages followed by a short last page
+        when(customerService.browseCustomers(null, 2)).thenReturn(new CustomerCursorResponse(
+                List.of(customer("1"), customer("2")), "2"));
+        when(customerService.browseCustomers("2", 2)).thenReturn(new CustomerCursorResponse(
+                List.of(customer("3")), null));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        customerReactiveHandler.shutdown();
+    }
+
+    /**
+     * Test to verify that a customer is returned by reference.
+     */
+    @Test
+    public void testGetCustomer_Success() {
+        when(customerService.getCustomerDTOById("1")).thenReturn(customer("1"));
+
+        webTestClient.get().uri("/reactive/customers/1").exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.customerRef").isEqualTo("1");
+    }
+
+    /**
+     * Test to verify that an unknown reference results in a 404 error.
+     */
+    @Test
+    public void testGetCustomer_NotFound() {
+        when(customerService.getCustomerDTOById("9")).thenThrow(new CustomerNotFoundException("Customer not found with id: 9"));
+
+        webTestClient.get().uri("/reactive/customers/9").exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.message").isEqualTo("Customer not found with id: 9");
+    }
+
+    /**
+     * Test to verify that many customers can be retrieved in one call.
+     */
+    @Test
+    public void testLookupCustomers() {
+        when(customerService.lookupCustomers(List.of("1", "9")))
+                .thenReturn(new CustomerLookupResponse(List.of(customer("1")), List.of("9")));
+
+        webTestClient.post().uri("/reactive/customers/lookup").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of("1", "9")).exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.customers[0].customerRef").isEqualTo("1")
+                .jsonPath("$.missing[0]").isEqualTo("9");
+    }
+
+    /**
+     * Test to verify that every page is streamed as NDJSON.
+     */
+    @Test
+    public void testStreamCustomers() {
+        List<CustomerDTO> customers = webTestClient.get().uri("/reactive/customers/stream").exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(CustomerDTO.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertEquals(List.of("1", "2", "3"), customers.stream().map(CustomerDTO::getCustomerRef).toList());
+    }
+
+    /**
+     * Test to verify that the next page is only read once the client has asked for more rows than the
+     * current page holds.
+     */
+    @Test
+    public void testStreamCustomers_ReadsPagesOnDemand() {
+        List<CustomerDTO> firstPage = customerReactiveHandler.pagesAfter(null).take(2).collectList().block();
+
+        assertEquals(2, firstPage.size());
+        verify(customerService, never()).browseCustomers("2", 2);
+    }
+
+    /**
+     * Test to verify that a stream of many pages reads each page once and delivers every row in order.
+     */
+    @Test
+    public void testStreamCustomers_ManyPages() {
+        int pages = 5_000;
+        when(customerService.browseCustomers(anyString(), eq(2))).thenAnswer(invocation -> {
+            int page = Integer.parseInt(invocation.getArgument(0));
+            return new CustomerCursorResponse(List.of(customer(page + "a"), customer(page + "b")),
+                    page + 1 < pages ? String.valueOf(page + 1) : null);
+        });
+        when(customerService.browseCustomers(null, 2)).thenReturn(new CustomerCursorResponse(
+                List.of(customer("0a"), customer("0b")), "1"));
+
+        List<String> refs = customerReactiveHandler.pagesAfter(null).map(CustomerDTO::getCustomerRef).collectList().block();
+
+        assertEquals(pages * 2, refs.size());
+        assertEquals("0a", refs.get(0));
+        assertEquals((pages - 1) + "b", refs.get(refs.size() - 1));
+        verify(customerService, times(pages - 1)).browseCustomers(anyString(), eq(2));
+    }
+
+    private static CustomerDTO customer(String customerRef) {
+        return CustomerDTO.builder().customerRef(customerRef).customerName("Name " + customerRef).build();
+    }
+}
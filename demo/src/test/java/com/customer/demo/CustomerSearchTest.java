@@ -0,0 +1,169 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.Session;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import jakarta.persistence.EntityManager;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.customer.demo.CustomerSearchTest$StatementRecorder")
+@Import({ CustomerService.class, CustomerCache.class, CustomerSuggestIndex.class })
+public class CustomerSearchTest {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    public void setUp() {
+        customerService.saveCustomer(customer("1", "Carl Carver", "Chesterfield", "s41 0hj"));
+        customerService.saveCustomer(customer("2", "Carla Smith", "Sheffield ", "S7 1AB"));
+        customerService.saveCustomer(customer("3", "Ron Dalee", "Sheffield", "S41 9ZZ"));
+        customerService.saveCustomer(customer("4", "Car_park Ltd", "Leeds", "LS1 1AA"));
+        customerRepository.flush();
+    }
+
+    /**
+     * Test to verify that postcodes are stored normalized and matched whatever the case and spacing of the query.
+     */
+    @Test
+    public void testSearch_PostcodeNormalized() {
+        assertEquals("S410HJ", customerRepository.findByCustomerRef("1").getPostcode());
+
+        CustomerPageResponse result = customerService.searchCustomers(" s41 ", null, null, 0, 10);
+
+        assertEquals(List.of("1", "3"), refs(result));
+        assertEquals(2, result.getTotalElements());
+    }
+
+    /**
+     * Test to verify that towns are matched exactly, ignoring surrounding whitespace.
+     */
+    @Test
+    public void testSearch_Town() {
+        assertEquals(List.of("2", "3"), refs(customerService.searchCustomers(null, "Sheffield", null, 0, 10)));
+    }
+
+    /**
+     * Test to verify that names are matched by prefix and that LIKE wildcards in the query match literally.
+     */
+    @Test
+    public void testSearch_NamePrefix() {
+        assertEquals(List.of("4", "1", "2"), refs(customerService.searchCustomers(null, null, "Car", 0, 10)));
+        assertEquals(List.of("4"), refs(customerService.searchCustomers(null, null, "Car_", 0, 10)));
+    }
+
+    /**
+     * Test to verify that criteria can be combined and that results are paginated.
+     */
+    @Test
+    public void testSearch_CombinedAndPaged() {
+        CustomerPageResponse result = customerService.searchCustomers("S", "Sheffield", null, 1, 1);
+
+        // Ordered by postcode: S419ZZ, then S71AB
+        assertEquals(List.of("2"), refs(result));
+        assertEquals(2, result.getTotalElements());
+        assertEquals(2, result.getTotalPages());
+    }
+
+    /**
+     * Test to verify that a search without any criteria is rejected.
+     */
+    @Test
+    public void testSearch_NoCriteria() {
+        assertThrows(InvalidRequestException.class, () -> customerService.searchCustomers(null, " ", null, 0, 10));
+    }
+
+    /**
+     * Test to verify that the database answers each statement a search sends, the page query with its
+     * LIKE ... ESCAPE and ORDER BY and the separate count query, with its index rather than a full
+     * table scan, which keeps query latency flat as the table grows.
+     */
+    @Test
+    public void testSearch_UsesIndexes() {
+        // Page 1 of 1 is full, so the total needs the count query
+        List<String> postcode = statementsOf(() -> customerService.searchCustomers("S41", null, null, 1, 1));
+        assertEquals(2, postcode.size());
+        assertTrue(postcode.get(0).contains("like ? escape"));
+        assertTrue(postcode.get(0).contains("order by c1_0.postcode,c1_0.customer_ref"));
+        assertTrue(explain(postcode.get(0), "S41%", 1, 1).contains("IDX_CUSTOMER_POSTCODE: POSTCODE >= 'S41'"));
+        assertTrue(postcode.get(1).startsWith("select count("));
+        assertTrue(explain(postcode.get(1), "S41%").contains("IDX_CUSTOMER_POSTCODE: POSTCODE >= 'S41'"));
+
+        List<String> town = statementsOf(() -> customerService.searchCustomers(null, "Sheffield", null, 0, 10));
+        assertEquals(1, town.size());
+        assertTrue(explain(town.get(0), "Sheffield", 0, 10).contains("IDX_CUSTOMER_TOWN: TOWN = "));
+
+        List<String> name = statementsOf(() -> customerService.searchCustomers(null, null, "Car", 0, 10));
+        assertEquals(1, name.size());
+        assertTrue(name.get(0).contains("like ? escape"));
+        assertTrue(explain(name.get(0), "Car%", 0, 10).contains("IDX_CUSTOMER_NAME: CUSTOMER_NAME >= 'CAR'"));
+    }
+
+    // The SQL statements Hibernate sends while the search runs
+    private static List<String> statementsOf(Runnable search) {
+        StatementRecorder.STATEMENTS.clear();
+        search.run();
+        return List.copyOf(StatementRecorder.STATEMENTS);
+    }
+
+    // The plan of a statement with its parameters bound, as H2 only turns a LIKE prefix into an index
+    // range once it knows the value
+    private String explain(String sql, Object... parameters) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                for (int i = 0; i < parameters.length; i++) {
+                    statement.setObject(i + 1, parameters[i]);
+                }
+                try (ResultSet plan = statement.executeQuery()) {
+                    plan.next();
+                    return plan.getString(1).toUpperCase();
+                }
+            }
+        });
+    }
+
+    // Records every statement Hibernate prepares; registered by class name, so it cannot hold a bean
+    public static class StatementRecorder implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    private static List<String> refs(CustomerPageResponse page) {
+        return page.getContent().stream().map(CustomerDTO::getCustomerRef).toList();
+    }
+
+    private static CustomerDTO customer(String customerRef, String name, String town, String postcode) {
+        return CustomerDTO.builder()
+                .customerRef(customerRef)
+                .customerName(name)
+                .town(town)
+                .postcode(postcode)
+                .build();
+    }
+}
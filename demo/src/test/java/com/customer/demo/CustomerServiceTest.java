@@ -2,29 +2,46 @@ package com.customer.demo;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.ArgumentMatchers.any;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 
 public class CustomerServiceTest {
 
     @Mock
     private CustomerRepository customerRepository;
 
-    @InjectMocks
+    @Spy
+    private CustomerCache customerCache = new CustomerCache(true, 100, Duration.ofMinutes(10), true, Duration.ofSeconds(30), 1000);
+
+    @Mock
+    private CustomerSuggestIndex customerSuggestIndex;
+
     private CustomerService customerService;
     
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        customerService = new CustomerService(customerRepository, customerCache, customerSuggestIndex, 2, null);
     }
 
     /**
@@ -55,6 +72,8 @@ public class CustomerServiceTest {
         assertNotNull(result);
         assertEquals(customerRef, result.getCustomerRef());
         assertEquals("Carl Carver", result.getCustomerName());
+        assertEquals("England", result.getCounty());
+        assertEquals("Derbyshire", result.getCountry());
     }
 
     /**
@@ -111,6 +130,123 @@ public class CustomerServiceTest {
         verify(customerRepository, times(1)).save(customer);
     }
 
+    /**
+     * Test to verify that saving a customer identical to the stored one skips the write and keeps the cached entry.
+     */
+    @Test
+    public void testSaveCustomer_Unchanged() {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver").postcode("S41 0HJ").build();
+        when(customerRepository.findById("123")).thenReturn(Optional.of(CustomerMapper.toEntity(customerDTO)));
+
+        assertEquals(SaveOutcome.UNCHANGED, customerService.saveCustomer(customerDTO));
+
+        verify(customerRepository, never()).save(any(Customer.class));
+        verify(customerCache, never()).invalidate("123");
+    }
+
+    /**
+     * Test to verify that saving a customer that differs from the stored one updates it.
+     */
+    @Test
+    public void testSaveCustomer_Updated() {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver Jr").build();
+        when(customerRepository.findById("123"))
+                .thenReturn(Optional.of(Customer.builder().customerRef("123").customerName("Carl Carver").build()));
+
+        assertEquals(SaveOutcome.UPDATED, customerService.saveCustomer(customerDTO));
+
+        verify(customerRepository, times(1)).save(CustomerMapper.toEntity(customerDTO));
+        verify(customerCache, times(1)).invalidate("123");
+    }
+
+    /**
+     * Test to verify that a save carrying an outdated version is rejected without writing.
+     */
+    @Test
+    public void testSaveCustomer_StaleVersion() {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver Jr").version(1L).build();
+        when(customerRepository.findById("123"))
+                .thenReturn(Optional.of(Customer.builder().customerRef("123").customerName("Carl Carver").version(2L).build()));
+
+        assertThrows(CustomerVersionConflictException.class, () -> customerService.saveCustomer(customerDTO));
+
+        verify(customerRepository, never()).save(any(Customer.class));
+        verify(customerCache, never()).invalidate("123");
+    }
+
+    /**
+     * Test to verify that a write failing its version check at flush is reported as a conflict.
+     */
+    @Test
+    public void testSaveCustomer_ConcurrentChange() {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver Jr").build();
+        when(customerRepository.findById("123"))
+                .thenReturn(Optional.of(Customer.builder().customerRef("123").customerName("Carl Carver").version(2L).build()));
+        doThrow(new ObjectOptimisticLockingFailureException(Customer.class, "123")).when(customerRepository).flush();
+
+        assertThrows(CustomerVersionConflictException.class, () -> customerService.saveCustomer(customerDTO));
+
+        verify(customerRepository, times(1)).save(CustomerMapper.toEntity(CustomerDTO.builder()
+                .customerRef("123").customerName("Carl Carver Jr").version(2L).build()));
+        verify(customerCache, never()).invalidate("123");
+    }
+
+    /**
+     * Test to verify that a save held by the write-behind buffer is read back before it reaches the table,
+     * and is flushed before a versioned save of the same customer checks its version.
+     */
+    @Test
+    public void testWriteBehind_ReadsAndFlushesPendingSave() {
+        CustomerWriteBehind writeBehind = mock(CustomerWriteBehind.class);
+        CustomerService service = new CustomerService(customerRepository, customerCache, customerSuggestIndex, 2, writeBehind);
+        CustomerDTO pending = CustomerDTO.builder().customerRef("123").customerName("Carl Carver Jr").build();
+        when(writeBehind.getPending("123")).thenReturn(pending);
+
+        assertEquals(pending, service.getCustomerDTOById("123"));
+        verify(customerRepository, never()).findByCustomerRef("123");
+
+        when(customerRepository.findById("123"))
+                .thenReturn(Optional.of(Customer.builder().customerRef("123").customerName("Carl Carver Jr").version(3L).build()));
+        service.saveCustomer(CustomerDTO.builder().customerRef("123").customerName("Carl Carver Jr").version(3L).build());
+        verify(writeBehind).flushNow("123");
+    }
+
+    /**
+     * Test to verify that a lookup returns a save held by write-behind, as a read does, so that its ETag is
+     * the one answered from the index.
+     */
+    @Test
+    public void testWriteBehind_LookupReturnsPendingSave() {
+        CustomerWriteBehind writeBehind = mock(CustomerWriteBehind.class);
+        CustomerService service = new CustomerService(customerRepository, customerCache, customerSuggestIndex, 2, writeBehind);
+        CustomerDTO pending = CustomerDTO.builder().customerRef("123").customerName("Carl Carver Jr").build();
+        when(writeBehind.getPending("123")).thenReturn(pending);
+        when(customerRepository.findByCustomerRefIn(List.of("124")))
+                .thenReturn(List.of(Customer.builder().customerRef("124").customerName("Dan Dare").version(1L).build()));
+
+        CustomerLookupResponse response = service.lookupCustomers(List.of("123", "124"));
+
+        assertEquals(List.of("Carl Carver Jr", "Dan Dare"), response.getCustomers().stream().map(CustomerDTO::getCustomerName).toList());
+        verify(customerRepository).findByCustomerRefIn(List.of("124"));
+        assertEquals(CustomerETag.of(response), service.getLookupETag(List.of("123", "124")));
+    }
+
+    /**
+     * Test to verify that a save without a customerRef is rejected as an invalid request, with write-behind
+     * enabled too, before the write-behind buffer is asked about it.
+     */
+    @Test
+    public void testSaveCustomer_MissingRef() {
+        CustomerWriteBehind writeBehind = mock(CustomerWriteBehind.class);
+        CustomerService service = new CustomerService(customerRepository, customerCache, customerSuggestIndex, 2, writeBehind);
+
+        assertThrows(InvalidRequestException.class, () -> service.saveCustomer(CustomerDTO.builder().customerName("No Ref").build()));
+        assertThrows(InvalidRequestException.class,
+                () -> service.saveCustomer(CustomerDTO.builder().customerRef(" ").customerName("Blank Ref").version(1L).build()));
+        verifyNoInteractions(writeBehind);
+        verify(customerRepository, never()).save(any(Customer.class));
+    }
+
     /**
      * Test to verify that a RuntimeException is thrown with an appropriate message
      * when saving a customer fails.
@@ -138,4 +274,119 @@ public class CustomerServiceTest {
 
         assertEquals("Failed to save customer: " + customerDTO.getCustomerRef(), exception.getMessage());
     }
+
+    /**
+     * Test to verify that a repeated lookup is served from the cache without querying the repository again.
+     */
+    @Test
+    public void testGetCustomerDTOById_Cached() {
+        String customerRef = "123";
+        when(customerRepository.findByCustomerRef(customerRef))
+                .thenReturn(Customer.builder().customerRef(customerRef).customerName("Carl Carver").build());
+
+        customerService.getCustomerDTOById(customerRef);
+        CustomerDTO result = customerService.getCustomerDTOById(customerRef);
+
+        assertEquals("Carl Carver", result.getCustomerName());
+        verify(customerRepository, times(1)).findByCustomerRef(customerRef);
+        assertEquals(1, customerCache.stats().getHitCount());
+    }
+
+    /**
+     * Test to verify that saving a customer invalidates its cached entry.
+     */
+    @Test
+    public void testSaveCustomer_InvalidatesCache() {
+        String customerRef = "123";
+        when(customerRepository.findByCustomerRef(customerRef))
+                .thenReturn(Customer.builder().customerRef(customerRef).customerName("Carl Carver").build())
+                .thenReturn(Customer.builder().customerRef(customerRef).customerName("Carl Carver Jr").build());
+
+        customerService.getCustomerDTOById(customerRef);
+        customerService.saveCustomer(CustomerDTO.builder().customerRef(customerRef).customerName("Carl Carver Jr").build());
+        CustomerDTO result = customerService.getCustomerDTOById(customerRef);
+
+        assertEquals("Carl Carver Jr", result.getCustomerName());
+        verify(customerRepository, times(2)).findByCustomerRef(customerRef);
+    }
+
+    /**
+     * Test to verify that a read indexes the customer's ETag, that a save drops it, and that an ETag loaded
+     * before a save is not indexed after it.
+     */
+    @Test
+    public void testGetCustomerETag_IndexedByReadAndDroppedBySave() {
+        String customerRef = "123";
+        when(customerRepository.findByCustomerRef(customerRef))
+                .thenReturn(Customer.builder().customerRef(customerRef).customerName("Carl Carver").version(4L).build());
+        assertNull(customerService.getCustomerETag(customerRef));
+
+        CustomerDTO customer = customerService.getCustomerDTOById(customerRef);
+        assertEquals(CustomerETag.of(customer), customerService.getCustomerETag(customerRef));
+        assertTrue(customerService.getCustomerETag(customerRef).startsWith("4-"));
+        assertEquals(CustomerETag.combine(List.of(CustomerETag.of(customer)), List.of()),
+                customerService.getLookupETag(List.of(customerRef, customerRef)));
+        assertNull(customerService.getLookupETag(List.of(customerRef, "999")));
+
+        customerService.saveCustomer(CustomerDTO.builder().customerRef(customerRef).customerName("Carl Carver Jr").build());
+        assertNull(customerService.getCustomerETag(customerRef));
+
+        long generation = customerCache.etagGeneration(customerRef);
+        customerCache.invalidate(customerRef);
+        customerCache.putETag(customerRef, CustomerETag.of(customer), generation);
+        assertNull(customerService.getCustomerETag(customerRef));
+    }
+
+    /**
+     * Test to verify that a missing customer is cached so a repeated lookup does not query the repository.
+     */
+    @Test
+    public void testGetCustomerDTOById_NegativeCached() {
+        String customerRef = "999";
+        when(customerRepository.findByCustomerRef(customerRef)).thenReturn(null);
+
+        assertThrows(CustomerNotFoundException.class, () -> customerService.getCustomerDTOById(customerRef));
+        assertThrows(CustomerNotFoundException.class, () -> customerService.getCustomerDTOById(customerRef));
+
+        verify(customerRepository, times(1)).findByCustomerRef(customerRef);
+        assertEquals(1, customerCache.stats().getNegativeHitCount());
+    }
+
+    /**
+     * Test to verify that missing customers are looked up every time when negative caching is disabled.
+     */
+    @Test
+    public void testGetCustomerDTOById_NegativeCachingDisabled() {
+        CustomerCache cache = new CustomerCache(true, 100, Duration.ofMinutes(10), false, Duration.ofSeconds(30), 1000);
+        CustomerService service = new CustomerService(customerRepository, cache, customerSuggestIndex, 2, null);
+        String customerRef = "999";
+
+        assertThrows(CustomerNotFoundException.class, () -> service.getCustomerDTOById(customerRef));
+        assertThrows(CustomerNotFoundException.class, () -> service.getCustomerDTOById(customerRef));
+
+        verify(customerRepository, times(2)).findByCustomerRef(customerRef);
+        verify(customerRepository, never()).save(org.mockito.ArgumentMatchers.any(Customer.class));
+    }
+
+    /**
+     * Test to verify that a multi-get resolves refs in chunks, serves cached refs and reports missing refs.
+     */
+    @Test
+    public void testLookupCustomers() {
+        when(customerRepository.findByCustomerRef("1"))
+                .thenReturn(Customer.builder().customerRef("1").customerName("Cached").build());
+        customerService.getCustomerDTOById("1");
+
+        when(customerRepository.findByCustomerRefIn(List.of("3", "2")))
+                .thenReturn(List.of(Customer.builder().customerRef("2").customerName("Two").build(),
+                        Customer.builder().customerRef("3").customerName("Three").build()));
+        when(customerRepository.findByCustomerRefIn(List.of("4")))
+                .thenReturn(List.of());
+
+        CustomerLookupResponse response = customerService.lookupCustomers(List.of("3", "1", "2", "4", "3"));
+
+        assertEquals(List.of("3", "1", "2"), response.getCustomers().stream().map(CustomerDTO::getCustomerRef).toList());
+        assertEquals(List.of("4"), response.getMissing());
+        verify(customerRepository, times(2)).findByCustomerRefIn(org.mockito.ArgumentMatchers.anyCollection());
+    }
 }
@@ -0,0 +1,113 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class CustomerSnapshotTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @TempDir
+    private Path directory;
+
+    private Path path;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        path = directory.resolve("snapshot.bin");
+    }
+
+    /**
+     * Test to verify that a snapshot written on stop restores the suggest index and the cached customers on
+     * the next start, and is deleted once read.
+     */
+    @Test
+    public void testStopThenStart_RestoresCacheAndSuggestIndex() {
+        CustomerCache cache = cache();
+        CustomerSuggestIndex suggestIndex = suggestIndex();
+        cache.putAll(List.of(dto("1", "Carl Carver")));
+        suggestIndex.update("1", null, null, "Carl Carver", "S410HJ");
+        suggestIndex.update("2", null, null, "Carla Smith", "S11AA");
+        when(customerRepository.count()).thenReturn(2L);
+
+        new CustomerSnapshot(customerRepository, cache, suggestIndex, path, 100, 500).stop();
+        assertTrue(Files.exists(path));
+
+        CustomerCache restoredCache = cache();
+        CustomerSuggestIndex restoredIndex = suggestIndex();
+        when(customerRepository.findByCustomerRefIn(List.of("1")))
+                .thenReturn(List.of(CustomerMapper.toEntity(dto("1", "Carl Carver"))));
+
+        new CustomerSnapshot(customerRepository, restoredCache, restoredIndex, path, 100, 500).start();
+
+        assertEquals(Optional.of(dto("1", "Carl Carver")), restoredCache.getAllPresent(List.of("1")).get("1"));
+        assertEquals(List.of("1", "2"), restoredIndex.suggest(CustomerSuggestIndex.Field.NAME, "carl", 10).stream()
+                .map(CustomerSuggestion::getCustomerRef).toList());
+        assertEquals(2, restoredIndex.stats().getNames());
+        assertFalse(Files.exists(path));
+    }
+
+    /**
+     * Test to verify that a snapshot written with a different number of customers than the table now holds is
+     * ignored and deleted.
+     */
+    @Test
+    public void testStart_IgnoresSnapshotOfOtherRowCount() {
+        CustomerSuggestIndex suggestIndex = suggestIndex();
+        suggestIndex.update("1", null, null, "Carl Carver", "S410HJ");
+        when(customerRepository.count()).thenReturn(1L);
+        new CustomerSnapshot(customerRepository, cache(), suggestIndex, path, 100, 500).stop();
+
+        when(customerRepository.count()).thenReturn(5L);
+        CustomerSuggestIndex restoredIndex = suggestIndex();
+        new CustomerSnapshot(customerRepository, cache(), restoredIndex, path, 100, 500).start();
+
+        assertEquals(0, restoredIndex.stats().getNames());
+        verify(customerRepository, never()).findByCustomerRefIn(any());
+        assertFalse(Files.exists(path));
+    }
+
+    /**
+     * Test to verify that a node without a snapshot starts cold.
+     */
+    @Test
+    public void testStart_WithoutSnapshot() {
+        CustomerSuggestIndex suggestIndex = suggestIndex();
+
+        new CustomerSnapshot(customerRepository, cache(), suggestIndex, path, 100, 500).start();
+
+        assertEquals(0, suggestIndex.stats().getNames());
+        verify(customerRepository, never()).count();
+    }
+
+    private static CustomerCache cache() {
+        return new CustomerCache(true, 100, Duration.ofMinutes(10), false, Duration.ofSeconds(30), 1000);
+    }
+
+    private CustomerSuggestIndex suggestIndex() {
+        return new CustomerSuggestIndex(customerRepository, true, 100, 1000);
+    }
+
+    private static CustomerDTO dto(String ref, String name) {
+        return new CustomerDTO(ref, name, "50 Spital lane", "Spital", "Chesterfield", "Derbyshire", "England", "S410HJ", null);
+    }
+}
@@ -0,0 +1,207 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mockingDetails;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityManager;
+
+@DataJpaTest
+@Import({ CustomerService.class, CustomerBatchWriter.class, CustomerCache.class, CustomerSuggestIndex.class })
+public class CustomerVersionTest {
+
+    @Autowired
+    private CustomerService customerService;
+
+    @SpyBean
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private CustomerBatchWriter customerBatchWriter;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void setUp() {
+        customerService.saveCustomer(customer("1", "Carl Carver", null));
+        entityManager.clear();
+    }
+
+    /**
+     * Test to verify that a new customer starts at version 0 and each update moves it on by one.
+     */
+    @Test
+    public void testSaveCustomer_IncrementsVersion() {
+        assertEquals(0L, customerService.getCustomerDTOById("1").getVersion());
+
+        assertEquals(SaveOutcome.UPDATED, customerService.saveCustomer(customer("1", "Carl Carver Jr", 0L)));
+        entityManager.clear();
+        assertEquals(1L, customerRepository.findByCustomerRef("1").getVersion());
+
+        assertEquals(SaveOutcome.UPDATED, customerService.saveCustomer(customer("1", "Carl Carver Sr", null)));
+        entityManager.clear();
+        assertEquals(2L, customerRepository.findByCustomerRef("1").getVersion());
+    }
+
+    /**
+     * Test to verify that a save based on an older version is rejected and leaves the customer as it was.
+     */
+    @Test
+    public void testSaveCustomer_StaleVersion() {
+        customerService.saveCustomer(customer("1", "Carl Carver Jr", 0L));
+        entityManager.clear();
+
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.saveCustomer(customer("1", "Lost Update", 0L)));
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.saveCustomer(customer("2", "Never Saved", 0L)));
+
+        entityManager.clear();
+        assertEquals("Carl Carver Jr", customerRepository.findByCustomerRef("1").getCustomerName());
+    }
+
+    /**
+     * Test to verify that a save is rejected rather than overwriting a change committed after it read the
+     * customer, even without a version.
+     */
+    @Test
+    public void testSaveCustomer_ConcurrentChange() {
+        // The customer as this save reads it, then changed by another writer behind its back
+        customerRepository.findById("1");
+        entityManager.createNativeQuery("update customer set customer_name = 'Other Writer', version = version + 1 where customer_ref = '1'")
+                .executeUpdate();
+
+        assertThrows(CustomerVersionConflictException.class,
+                () -> customerService.saveCustomer(customer("1", "Carl Carver Jr", null)));
+    }
+
+    /**
+     * Test to verify that when two saves in their own transactions both find a customer missing and
+     * insert it, one is stored and the other is rejected as a conflict rather than failing.
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testSaveCustomer_ConcurrentInsert() throws Exception {
+        // Both saves read the customer as missing before either inserts it. The spy of the
+        // repository proxy delegates to it through its default answer.
+        Answer<?> repository = mockingDetails(customerRepository).getMockCreationSettings().getDefaultAnswer();
+        CyclicBarrier bothRead = new CyclicBarrier(2);
+        doAnswer(invocation -> {
+            Object stored = repository.answer(invocation);
+            bothRead.await(10, TimeUnit.SECONDS);
+            return stored;
+        }).when(customerRepository).findById(eq("concurrent"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<SaveOutcome>> saves = new ArrayList<>();
+            for (String name : List.of("First Writer", "Second Writer")) {
+                saves.add(executor.submit(() -> customerService.saveCustomer(customer("concurrent", name, null))));
+            }
+
+            int inserted = 0;
+            int conflicts = 0;
+            for (Future<SaveOutcome> save : saves) {
+                try {
+                    assertEquals(SaveOutcome.INSERTED, save.get(30, TimeUnit.SECONDS));
+                    inserted++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof CustomerVersionConflictException, e.getCause().toString());
+                    conflicts++;
+                }
+            }
+            assertEquals(1, inserted);
+            assertEquals(1, conflicts);
+            assertEquals(0L, customerRepository.findByCustomerRef("concurrent").getVersion());
+        } finally {
+            executor.shutdown();
+            customerRepository.deleteAllById(List.of("1", "concurrent"));
+        }
+    }
+
+    /**
+     * Test to verify that an import with two writers, writing a customer repeated across its batches,
+     * completes when a save of that customer commits between the import reading and updating it, and
+     * leaves the customer with its last row in the file.
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testImport_RetriesAfterConcurrentSave() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("customers.csv"), String.join("\n",
+                "1,Import One,1 Street,,Chesterfield,Derbyshire,England,S410HJ",
+                "3,Import Two,1 Street,,Chesterfield,Derbyshire,England,S410HJ",
+                "2,Import Three,1 Street,,Chesterfield,Derbyshire,England,S410HJ",
+                "1,Import Four,1 Street,,Chesterfield,Derbyshire,England,S410HJ",
+                "5,Import Five,1 Street,,Chesterfield,Derbyshire,England,S410HJ",
+                "1,Import Six,1 Street,,Chesterfield,Derbyshire,England,S410HJ"));
+        CustomerImportService customerImportService = new CustomerImportService(customerBatchWriter, file, 2, 1000, 2, 2,
+                4, false, 0, 1024, null);
+
+        // Refs 1, 3 and 5 share a lane, so 1 is written in three batches of it. Once, after the import
+        // has read customer 1, a save commits a new version of it.
+        Answer<?> repository = mockingDetails(customerRepository).getMockCreationSettings().getDefaultAnswer();
+        AtomicBoolean raced = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        doAnswer(invocation -> {
+            Object stored = repository.answer(invocation);
+            Iterable<?> refs = invocation.getArgument(0);
+            if (refs.iterator().hasNext() && "1".equals(refs.iterator().next()) && raced.compareAndSet(false, true)) {
+                executor.submit(() -> customerService.saveCustomer(customer("1", "Racing Save", null))).get(10, TimeUnit.SECONDS);
+            }
+            return stored;
+        }).when(customerRepository).findAllById(any());
+
+        try {
+            ImportReport report = customerImportService.importFile(file);
+
+            assertTrue(raced.get());
+            assertEquals(ImportProgress.Status.COMPLETED, report.getStatus(), report.getError());
+            assertEquals(0, report.getRejected());
+            assertEquals("Import Six", customerRepository.findByCustomerRef("1").getCustomerName());
+        } finally {
+            executor.shutdown();
+            customerRepository.deleteAllById(List.of("1", "2", "3", "5"));
+        }
+    }
+
+    private static CustomerDTO customer(String ref, String name, Long version) {
+        return CustomerDTO.builder()
+                .customerRef(ref)
+                .customerName(name)
+                .town("Chesterfield")
+                .postcode("S410HJ")
+                .version(version)
+                .build();
+    }
+}
@@ -0,0 +1,172 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomerWriteBehindTest {
+
+    @Mock
+    private CustomerBatchWriter customerBatchWriter;
+
+    @TempDir
+    private Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CustomerWriteBehind customerWriteBehind;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(customerBatchWriter.write(any())).thenReturn(new BulkSaveResult());
+        customerWriteBehind = writeBehind(customerBatchWriter, meterRegistry);
+        customerWriteBehind.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (customerWriteBehind.isRunning()) {
+            customerWriteBehind.stop();
+        }
+    }
+
+    /**
+     * Test to verify that an acknowledged save is read back as stored before it is flushed, that only the
+     * latest save of a customer is written, and that the flush releases it.
+     */
+    @Test
+    public void testSaveCustomer_ReadableUntilFlushed() throws Exception {
+        customerWriteBehind.saveCustomer(customer("1", " Carl Carver ", "s41 0hj"));
+        customerWriteBehind.saveCustomer(customer("1", "Carla Carver", "s41 0hj"));
+        customerWriteBehind.saveCustomer(customer("2", "Dan Dare", "S1 1AA"));
+
+        CustomerDTO pending = customerWriteBehind.getPending("1");
+        assertEquals("Carla Carver", pending.getCustomerName());
+        assertEquals("S410HJ", pending.getPostcode());
+        assertEquals(2, customerWriteBehind.getPendingCount());
+        assertEquals(3.0, meterRegistry.get("customer.writes.behind.saves").counter().count());
+
+        assertEquals(2, customerWriteBehind.flush());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Customer>> written = ArgumentCaptor.forClass(Collection.class);
+        verify(customerBatchWriter).write(written.capture());
+        assertEquals(List.of("Carla Carver", "Dan Dare"),
+                written.getValue().stream().map(Customer::getCustomerName).toList());
+        assertNull(customerWriteBehind.getPending("1"));
+        assertEquals(0, customerWriteBehind.getPendingCount());
+        assertEquals(0.0, meterRegistry.get("customer.writes.behind.pending").gauge().value());
+    }
+
+    /**
+     * Test to verify that saves the database could not take are kept and replayed from the log on the next
+     * start, as after a crash, and written then.
+     */
+    @Test
+    public void testStart_ReplaysUnflushedSaves() throws Exception {
+        when(customerBatchWriter.write(any())).thenThrow(new CannotCreateTransactionException("database down"));
+        customerWriteBehind.saveCustomer(customer("1", "Carl Carver", "S410HJ"));
+        customerWriteBehind.saveCustomer(customer("2", "Dan Dare", "S11AA"));
+
+        assertThrows(IllegalStateException.class, customerWriteBehind::flush);
+        assertEquals(2, customerWriteBehind.getPendingCount());
+
+        // Restart without stopping, the buffer is lost and the log is all that is left
+        CustomerBatchWriter restartedWriter = mock(CustomerBatchWriter.class);
+        CustomerWriteBehind restarted = writeBehind(restartedWriter, new SimpleMeterRegistry());
+        restarted.start();
+        try {
+            verify(restartedWriter).write(argThat(customers -> customers.size() == 2));
+            assertEquals(0, restarted.getPendingCount());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    /**
+     * Test to verify that a customer the database refuses is dropped and counted, while the rest of its
+     * batch is written.
+     */
+    @Test
+    public void testFlush_DropsRefusedCustomer() throws Exception {
+        RuntimeException refused = new RuntimeException("could not execute batch",
+                new SQLIntegrityConstraintViolationException("value too long", "22001"));
+        when(customerBatchWriter.write(argThat(customers -> customers != null && customers.size() == 2))).thenThrow(refused);
+        when(customerBatchWriter.write(argThat(customers -> customers != null && customers.size() == 1
+                && customers.iterator().next().getCustomerRef().equals("bad")))).thenThrow(refused);
+
+        customerWriteBehind.saveCustomer(customer("good", "Carl Carver", "S410HJ"));
+        customerWriteBehind.saveCustomer(customer("bad", "Dan Dare", "S11AA"));
+
+        assertEquals(2, customerWriteBehind.flush());
+
+        verify(customerBatchWriter, times(3)).write(any());
+        assertEquals(0, customerWriteBehind.getPendingCount());
+        assertEquals(1.0, meterRegistry.get("customer.writes.behind.rejected").counter().count());
+    }
+
+    /**
+     * Test to verify that flushing for a versioned save fails while the customer's buffered save is still
+     * held, so the versioned save is not checked against a table the held save will overwrite.
+     */
+    @Test
+    public void testFlushNow_FailsWhileSaveHeld() {
+        customerWriteBehind.saveCustomer(customer("1", "Carl Carver", "S410HJ"));
+        when(customerBatchWriter.write(any())).thenThrow(new CannotCreateTransactionException("database down"));
+
+        assertThrows(IllegalStateException.class, () -> customerWriteBehind.flushNow("1"));
+        assertEquals("Carl Carver", customerWriteBehind.getPending("1").getCustomerName());
+
+        doReturn(new BulkSaveResult()).when(customerBatchWriter).write(any());
+        customerWriteBehind.flushNow("1");
+        assertNull(customerWriteBehind.getPending("1"));
+    }
+
+    /**
+     * Test to verify that a save without a customerRef is rejected before it reaches the log.
+     */
+    @Test
+    public void testSaveCustomer_MissingRef() {
+        assertThrows(InvalidRequestException.class, () -> customerWriteBehind.saveCustomer(new CustomerDTO()));
+        assertEquals(0, customerWriteBehind.getPendingCount());
+    }
+
+    // A flush interval long enough that only the tests flush
+    private CustomerWriteBehind writeBehind(CustomerBatchWriter batchWriter, SimpleMeterRegistry registry) {
+        return new CustomerWriteBehind(batchWriter, cache(), registry, directory, 1 << 20, 4, 100,
+                Duration.ofMinutes(10), 1000, Duration.ZERO);
+    }
+
+    private static CustomerCache cache() {
+        return new CustomerCache(true, 100, Duration.ofMinutes(10), false, Duration.ofSeconds(30), 1000);
+    }
+
+    private static CustomerDTO customer(String ref, String name, String postcode) {
+        return CustomerDTO.builder().customerRef(ref).customerName(name).town("Chesterfield").postcode(postcode).build();
+    }
+}
@@ -0,0 +1,111 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomerWriteCoalescerTest {
+
+    @Mock
+    private CustomerService customerService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CustomerWriteCoalescer customerWriteCoalescer;
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerWriteCoalescer = new CustomerWriteCoalescer(customerService, meterRegistry, Duration.ofMillis(500), 2);
+        when(customerService.saveCustomer(any(CustomerDTO.class))).thenReturn(SaveOutcome.UPDATED);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        callers.shutdownNow();
+        customerWriteCoalescer.destroy();
+    }
+
+    /**
+     * Test to verify that saves of one customer within the window are merged into a single write of the last
+     * one to arrive, and that every caller gets its outcome.
+     */
+    @Test
+    public void testSaveCustomer_MergesSavesInWindow() throws Exception {
+        List<Future<SaveOutcome>> outcomes = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Name " + i).build();
+            outcomes.add(callers.submit(() -> customerWriteCoalescer.saveCustomer(customerDTO)));
+            // Keep the arrival order, well inside the window
+            Thread.sleep(20);
+        }
+
+        for (Future<SaveOutcome> outcome : outcomes) {
+            assertEquals(SaveOutcome.UPDATED, outcome.get());
+        }
+        ArgumentCaptor<CustomerDTO> written = ArgumentCaptor.forClass(CustomerDTO.class);
+        verify(customerService, times(1)).saveCustomer(written.capture());
+        assertEquals("Name 5", written.getValue().getCustomerName());
+        assertEquals(5, meterRegistry.get("customer.writes.coalescing.requests").counter().count());
+        assertEquals(1, meterRegistry.get("customer.writes.coalescing.writes").counter().count());
+    }
+
+    /**
+     * Test to verify that saves carrying a version are written on their own, straight away.
+     */
+    @Test
+    public void testSaveCustomer_VersionedSaveBypasses() {
+        CustomerDTO customerDTO = CustomerDTO.builder().customerRef("123").customerName("Carl Carver").version(3L).build();
+
+        assertEquals(SaveOutcome.UPDATED, customerWriteCoalescer.saveCustomer(customerDTO));
+
+        verify(customerService, times(1)).saveCustomer(customerDTO);
+        assertEquals(0, meterRegistry.get("customer.writes.coalescing.requests").counter().count());
+    }
+
+    /**
+     * Test to verify that a failed merged write fails every save merged into it with the same exception.
+     */
+    @Test
+    public void testSaveCustomer_FailurePropagates() throws Exception {
+        when(customerService.saveCustomer(any(CustomerDTO.class)))
+                .thenThrow(new CustomerVersionConflictException("Customer 123 was changed by another save"));
+        CountDownLatch started = new CountDownLatch(2);
+        List<CompletableFuture<SaveOutcome>> outcomes = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            outcomes.add(CompletableFuture.supplyAsync(() -> {
+                started.countDown();
+                return customerWriteCoalescer.saveCustomer(CustomerDTO.builder().customerRef("123").build());
+            }, callers));
+        }
+        started.await();
+
+        for (CompletableFuture<SaveOutcome> outcome : outcomes) {
+            Exception failure = assertThrows(Exception.class, outcome::join);
+            assertEquals(CustomerVersionConflictException.class, failure.getCause().getClass());
+        }
+    }
+}
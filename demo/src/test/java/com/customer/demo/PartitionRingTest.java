@@ -0,0 +1,81 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class PartitionRingTest {
+
+    private static final List<String> MEMBERS = List.of("http://node-a:8080", "http://node-b:8080", "http://node-c:8080",
+            "http://node-d:8080");
+
+    private static final int REFS = 100_000;
+
+    /**
+     * Test to verify that every ring built from the same members assigns the same owners, and that
+     * sequential refs are spread close to evenly over the members.
+     */
+    @Test
+    public void testOwnerOf_SameOnEveryInstanceAndEven() {
+        PartitionRing ring = new PartitionRing(MEMBERS, 256);
+        PartitionRing other = new PartitionRing(List.copyOf(MEMBERS), 256);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < REFS; i++) {
+            String ref = String.valueOf(i);
+            assertEquals(ring.ownerOf(ref), other.ownerOf(ref));
+            counts.merge(ring.ownerOf(ref), 1, Integer::sum);
+        }
+
+        assertEquals(MEMBERS.size(), counts.size());
+        for (int count : counts.values()) {
+            assertTrue(Math.abs(count - REFS / MEMBERS.size()) < REFS / MEMBERS.size() * 0.1, "Uneven share: " + counts);
+        }
+    }
+
+    /**
+     * Test to verify that adding a member only moves refs to the new member, about its fair share of
+     * them, and leaves every other ref where it was.
+     */
+    @Test
+    public void testOwnerOf_AddingMemberMovesOnlyItsShare() {
+        PartitionRing ring = new PartitionRing(MEMBERS, 256);
+        PartitionRing grown = new PartitionRing(List.of(MEMBERS.get(0), MEMBERS.get(1), MEMBERS.get(2), MEMBERS.get(3),
+                "http://node-e:8080"), 256);
+
+        int moved = 0;
+        for (int i = 0; i < REFS; i++) {
+            String ref = "CUST" + i;
+            if (!ring.ownerOf(ref).equals(grown.ownerOf(ref))) {
+                assertEquals("http://node-e:8080", grown.ownerOf(ref));
+                moved++;
+            }
+        }
+        assertTrue(moved > REFS / 5 * 0.8 && moved < REFS / 5 * 1.2, "Moved " + moved);
+    }
+
+    /**
+     * Test to verify that partitioning groups items by owner, keeping their order within each group.
+     */
+    @Test
+    public void testPartition_GroupsByOwnerInOrder() {
+        PartitionRing ring = new PartitionRing(MEMBERS, 16);
+        List<String> refs = IntStream.range(0, 1000).mapToObj(String::valueOf).toList();
+
+        Map<String, List<String>> partitions = ring.partition(refs, ref -> ref);
+
+        assertEquals(refs.size(), partitions.values().stream().mapToInt(List::size).sum());
+        partitions.forEach((owner, part) -> {
+            part.forEach(ref -> assertEquals(owner, ring.ownerOf(ref)));
+            assertEquals(refs.stream().filter(part::contains).toList(), part);
+        });
+        assertThrows(IllegalArgumentException.class, () -> new PartitionRing(List.of("a", "a"), 16));
+    }
+}
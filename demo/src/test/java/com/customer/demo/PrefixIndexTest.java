@@ -0,0 +1,101 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PrefixIndexTest {
+
+    private PrefixIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new PrefixIndex();
+        index.beginRebuild();
+        index.finishRebuild(new ArrayList<>(List.of(
+                new PrefixIndex.Entry("Carla Smith", "2"),
+                new PrefixIndex.Entry("Carl Carver", "1"),
+                new PrefixIndex.Entry("Ron Dalee", "3"),
+                new PrefixIndex.Entry("carl carver", "4"))));
+    }
+
+    /**
+     * Test to verify that completions match the prefix ignoring case and come back in index order.
+     */
+    @Test
+    public void testComplete_CaseInsensitive() {
+        assertEquals(List.of("1", "4", "2"), refs(index.complete("CARL", 10)));
+        assertEquals(List.of("3"), refs(index.complete("ron d", 10)));
+        assertEquals(List.of(), refs(index.complete("Z", 10)));
+    }
+
+    /**
+     * Test to verify that no more than limit completions are returned.
+     */
+    @Test
+    public void testComplete_Limit() {
+        assertEquals(List.of("1", "4"), refs(index.complete("car", 2)));
+    }
+
+    /**
+     * Test to verify that writes made after the build are visible straight away and merged into order.
+     */
+    @Test
+    public void testComplete_OverlayAddAndRemove() {
+        index.add("Carlton Hotel", "5");
+        index.remove("Carla Smith", "2");
+        index.add("Carla Smith", "1");
+        index.remove("Carl Carver", "1");
+
+        assertEquals(List.of("4", "1", "5"), refs(index.complete("carl", 10)));
+        assertEquals("Carla Smith", index.complete("carla", 10).get(0).value());
+    }
+
+    /**
+     * Test to verify that an entry held by both the arrays and the overlay is returned once.
+     */
+    @Test
+    public void testComplete_NoDuplicates() {
+        index.add("Carl Carver", "1");
+
+        assertEquals(List.of("1", "4", "2"), refs(index.complete("carl", 10)));
+    }
+
+    /**
+     * Test to verify that writes made while a rebuild reads the repository are kept after the swap.
+     */
+    @Test
+    public void testRebuild_KeepsConcurrentWrites() {
+        index.beginRebuild();
+        index.add("Carlton Hotel", "5");
+        index.finishRebuild(new ArrayList<>(List.of(new PrefixIndex.Entry("Carl Carver", "1"))));
+
+        assertEquals(List.of("1", "5"), refs(index.complete("carl", 10)));
+        assertEquals(1, index.size());
+        assertEquals(1, index.overlaySize());
+    }
+
+    /**
+     * Test to verify that forEach visits the built entries and the overlay once each, without removed entries.
+     */
+    @Test
+    public void testForEach_MergesOverlay() {
+        index.add("Carl Carver", "1");
+        index.add("Carlton Hotel", "5");
+        index.remove("Ron Dalee", "3");
+
+        List<PrefixIndex.Entry> entries = new ArrayList<>();
+        index.forEach((value, ref) -> entries.add(new PrefixIndex.Entry(value, ref)));
+        entries.sort(PrefixIndex.ORDER);
+
+        assertEquals(List.of("1", "4", "2", "5"), refs(entries));
+    }
+
+    private static List<String> refs(List<PrefixIndex.Entry> entries) {
+        return entries.stream().map(PrefixIndex.Entry::ref).toList();
+    }
+}
@@ -0,0 +1,130 @@
+package com.customer.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WriteAheadLogTest {
+
+    @TempDir
+    private Path directory;
+
+    /**
+     * Test to verify that records appended from many threads are all durable once awaited and read back in
+     * sequence order after the log is reopened, with no more syncs than appends.
+     */
+    @Test
+    public void testAppend_ReadBackAfterReopen() throws Exception {
+        ExecutorService appenders = Executors.newFixedThreadPool(8);
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1 << 20)) {
+            List<Future<?>> appends = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String payload = "record " + i;
+                appends.add(appenders.submit(() -> {
+                    log.awaitDurable(log.append(payload.getBytes(StandardCharsets.UTF_8)));
+                    return null;
+                }));
+            }
+            for (Future<?> append : appends) {
+                append.get();
+            }
+            assertTrue(log.getSyncs() <= 200);
+        } finally {
+            appenders.shutdownNow();
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1 << 20)) {
+            List<WriteAheadLog.Entry> entries = log.read();
+            assertEquals(200, entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(i + 1, entries.get(i).sequence());
+            }
+            assertEquals(201, log.nextSequence());
+        }
+    }
+
+    /**
+     * Test to verify that a torn record at the end of the log, as a crash mid-write leaves it, is cut off on
+     * open and later records are appended after the last complete one.
+     */
+    @Test
+    public void testOpen_CutsOffTornRecord() throws IOException {
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1 << 20)) {
+            log.awaitDurable(log.append(bytes("first")));
+            log.awaitDurable(log.append(bytes("second")));
+        }
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1 << 20)) {
+            assertEquals(List.of("first"), payloads(log.read()));
+            log.awaitDurable(log.append(bytes("third")));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1 << 20)) {
+            assertEquals(List.of("first", "third"), payloads(log.read()));
+        }
+    }
+
+    /**
+     * Test to verify that truncating skips the records before the checkpoint on the next read, also after
+     * a restart, and deletes the rotated segments holding only them.
+     */
+    @Test
+    public void testTruncate_SkipsAppliedRecordsAndDeletesSegments() throws IOException {
+        long mark;
+        try (WriteAheadLog log = new WriteAheadLog(directory, 64)) {
+            for (int i = 0; i < 10; i++) {
+                log.awaitDurable(log.append(bytes("record " + i)));
+            }
+            assertTrue(segments().size() > 1);
+            mark = log.nextSequence();
+            log.awaitDurable(log.append(bytes("after")));
+
+            log.truncate(mark);
+            assertEquals(List.of("after"), payloads(log.read()));
+            // Only the open segment is left, holding the last record before the mark and the one after
+            assertEquals(1, segments().size());
+            assertEquals(mark - 1, firstSequence(segments().get(0)));
+        }
+        try (WriteAheadLog log = new WriteAheadLog(directory, 64)) {
+            assertEquals(List.of("after"), payloads(log.read()));
+            assertEquals(mark + 1, log.nextSequence());
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length()));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<WriteAheadLog.Entry> entries) {
+        return entries.stream().map(entry -> new String(entry.payload(), StandardCharsets.UTF_8)).toList();
+    }
+}
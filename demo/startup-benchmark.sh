@@ -0,0 +1,101 @@
+#!/usr/bin/env bash
+#
+# Startup time and memory of the default build against the fast-start build:
+#
+#   baseline  the executable jar as built by "mvn package", run with java -jar
+#   startup   built with -Pstartup (Spring AOT), extracted to a plain classpath, run from a Class Data
+#             Sharing archive recorded by a training run, with the "startup" Spring profile (lazy
+#             initialization, unused web auto-configuration excluded) and -Dspring.aot.enabled=true
+#
+# Each configuration is started RUNS times. A run measures the time from launching the JVM to the
+# first answered GET /api/customers/{customerRef}, the startup time Spring reports, and the resident
+# set size once the first request has been answered. Results go to target/startup-benchmark.
+#
+#   ./startup-benchmark.sh
+#   RUNS=10 PORT=8099 MVN=./mvnw ./startup-benchmark.sh
+#
+# Needs Linux (RSS is read from /proc) and curl. Both configurations run from this directory, so both
+# import customertest.csv on startup.
+set -euo pipefail
+
+cd "$(dirname "$0")"
+
+RUNS=${RUNS:-5}
+PORT=${PORT:-8099}
+MVN=${MVN:-mvn}
+JAVA=${JAVA:-java}
+OUT=target/startup-benchmark
+JAR=demo-0.0.1-SNAPSHOT.jar
+
+rm -rf "$OUT"
+mkdir -p "$OUT/baseline"
+
+echo "Building the baseline jar"
+$MVN -B -q -DskipTests package > "$OUT/build.log"
+cp "target/$JAR" "$OUT/baseline/$JAR"
+
+echo "Building the AOT-processed jar (-Pstartup)"
+# The AOT processing starts the application context, its log goes to build.log too
+$MVN -B -q -Pstartup -DskipTests package >> "$OUT/build.log"
+# CDS only archives classes loaded from plain jars on the class path, not from nested jars
+$JAVA -Djarmode=tools -jar "target/$JAR" extract --destination "$OUT/startup" > /dev/null
+
+STARTUP_OPTS=(-Dspring.aot.enabled=true)
+STARTUP_ARGS=(--spring.profiles.active=startup)
+
+echo "Training run to record the CDS archive"
+# spring.context.exit=onRefresh stops the JVM once the context is refreshed, before the web server
+# starts or the import runs; the classes loaded so far are written to the archive on exit
+$JAVA -XX:ArchiveClassesAtExit="$OUT/startup/app.jsa" -Dspring.context.exit=onRefresh "${STARTUP_OPTS[@]}" \
+  -jar "$OUT/startup/$JAR" "${STARTUP_ARGS[@]}" --server.port="$PORT" > "$OUT/training.log" 2>&1
+
+# Start a configuration and print "<ms to first response> <reported startup s> <RSS kB>"
+measure() {
+  local log=$1
+  shift
+  local start end pid
+  start=$(date +%s%N)
+  "$@" --server.port="$PORT" > "$log" 2>&1 &
+  pid=$!
+  until curl -s -o /dev/null "http://localhost:$PORT/api/customers/startup-probe"; do
+    if ! kill -0 "$pid" 2> /dev/null; then
+      echo "Application exited, see $log" >&2
+      exit 1
+    fi
+    sleep 0.02
+  done
+  end=$(date +%s%N)
+  local rss started
+  rss=$(awk '/^VmRSS:/ { print $2 }' "/proc/$pid/status")
+  kill "$pid"
+  wait "$pid" || true
+  started=$(sed -n 's/.*Started DemoApplication in \([0-9.]*\) seconds.*/\1/p' "$log")
+  echo "$(( (end - start) / 1000000 )) ${started:-?} $rss"
+}
+
+run() {
+  local name=$1
+  shift
+  for i in $(seq 1 "$RUNS"); do
+    read -r first started rss < <(measure "$OUT/$name-$i.log" "$@")
+    echo "$name,$i,$first,$started,$rss" >> "$OUT/results.csv"
+    printf '%-9s run %2d: first response %6d ms, started in %6s s, RSS %4d MB\n' \
+      "$name" "$i" "$first" "$started" $(( rss / 1024 ))
+  done
+}
+
+echo "configuration,run,first_response_ms,started_s,rss_kb" > "$OUT/results.csv"
+run baseline "$JAVA" -jar "$OUT/baseline/$JAR"
+run startup "$JAVA" -XX:SharedArchiveFile="$OUT/startup/app.jsa" "${STARTUP_OPTS[@]}" \
+  -jar "$OUT/startup/$JAR" "${STARTUP_ARGS[@]}"
+
+# Median of each column per configuration
+echo
+echo "Medians of $RUNS runs:"
+for name in baseline startup; do
+  for column in 3 4 5; do
+    grep "^$name," "$OUT/results.csv" | cut -d, -f"$column" | sort -n \
+      | awk '{ v[NR] = $1 } END { print (NR % 2 ? v[(NR + 1) / 2] : (v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+  done | paste -sd' ' | awk -v name="$name" \
+    '{ printf "%-9s first response %6d ms, started in %6.2f s, RSS %4d MB\n", name, $1, $2, $3 / 1024 }'
+done